@@ -0,0 +1,141 @@
+package com.neu.AdvBigDataIndexing.benchmark;
+
+import com.neu.AdvBigDataIndexing.model.OutboxEvent;
+import com.neu.AdvBigDataIndexing.model.PlanDocument;
+import com.neu.AdvBigDataIndexing.repository.PlanStore;
+import com.neu.AdvBigDataIndexing.service.ETagService;
+import com.neu.AdvBigDataIndexing.util.CanonicalJson;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stand-in for Redis that stores plans like BlobPlanStore does: serialized bytes plus
+ * the ETag computed when they were written. Outbox events are counted and dropped.
+ */
+class InMemoryPlanStore implements PlanStore {
+    private final Map<String, PlanDocument> plans = new ConcurrentHashMap<>();
+    private final ETagService eTagService;
+    long events;
+
+    InMemoryPlanStore(ETagService eTagService) {
+        this.eTagService = eTagService;
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return plans.containsKey(key);
+    }
+
+    @Override
+    public Set<String> existing(List<String> keys) {
+        Set<String> existing = new HashSet<>();
+        for (String key : keys) {
+            if (plans.containsKey(key))
+                existing.add(key);
+        }
+        return existing;
+    }
+
+    @Override
+    public String getETag(String key) {
+        PlanDocument document = plans.get(key);
+        return document == null ? null : document.getETag();
+    }
+
+    @Override
+    public PlanDocument read(String key, List<String> ifNoneMatch) {
+        PlanDocument document = plans.get(key);
+        if (document == null)
+            return null;
+        return ifNoneMatch.contains(document.getETag()) ? new PlanDocument(document.getETag(), null) : document;
+    }
+
+    @Override
+    public List<byte[]> readDocuments(List<String> keys) {
+        List<byte[]> documents = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            PlanDocument document = plans.get(key);
+            documents.add(document == null ? null : document.getBody());
+        }
+        return documents;
+    }
+
+    @Override
+    public JSONObject readPlan(String key) {
+        PlanDocument document = plans.get(key);
+        return document == null ? new JSONObject() : new JSONObject(new String(document.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public JSONObject readObject(String key, String objectId, Set<String> fields) {
+        JSONObject plan = readPlan(key);
+        return objectId.equals(plan.optString("objectId")) ? plan : null;
+    }
+
+    @Override
+    public String save(String key, JSONObject plan, OutboxEvent event) {
+        return store(key, CanonicalJson.toBytes(plan), event).getETag();
+    }
+
+    @Override
+    public List<String> saveAll(List<String> keys, List<JSONObject> plans, List<OutboxEvent> events) {
+        List<String> eTags = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            eTags.add(save(keys.get(i), plans.get(i), events.get(i)));
+        }
+        return eTags;
+    }
+
+    @Override
+    public String replace(String key, JSONObject plan, String expectedETag, OutboxEvent event) {
+        PlanDocument written = compareAndSet(key, CanonicalJson.toBytes(plan), expectedETag, event);
+        return written == null ? null : written.getETag();
+    }
+
+    @Override
+    public PlanDocument patch(String key, JSONObject patch, JSONObject merged, String expectedETag, OutboxEvent event) {
+        return compareAndSet(key, CanonicalJson.toBytes(merged), expectedETag, event);
+    }
+
+    private synchronized PlanDocument compareAndSet(String key, byte[] body, String expectedETag, OutboxEvent event) {
+        PlanDocument current = plans.get(key);
+        if (current == null || !current.getETag().equals(expectedETag))
+            return null;
+        return store(key, body, event);
+    }
+
+    private PlanDocument store(String key, byte[] body, OutboxEvent event) {
+        PlanDocument document = new PlanDocument(eTagService.getETag(body), body);
+        plans.put(key, document);
+        if (event != null)
+            events++;
+        return document;
+    }
+
+    @Override
+    public int recompress(List<String> keys) {
+        return 0;
+    }
+
+    @Override
+    public int upgrade(List<String> keys) {
+        return 0;
+    }
+
+    @Override
+    public boolean delete(String key, String expectedETag, OutboxEvent event) {
+        PlanDocument current = plans.get(key);
+        if (current == null || !current.getETag().equals(expectedETag) || !plans.remove(key, current))
+            return false;
+        if (event != null)
+            events++;
+        return true;
+    }
+}
@@ -0,0 +1,96 @@
+package com.neu.AdvBigDataIndexing.benchmark;
+
+import com.neu.AdvBigDataIndexing.service.ETagService;
+import com.neu.AdvBigDataIndexing.util.JsonMerger;
+import com.neu.AdvBigDataIndexing.util.JsonValidator;
+import com.neu.AdvBigDataIndexing.util.PlanFlattener;
+import com.neu.AdvBigDataIndexing.util.SchemaRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-request and per-message building blocks: schema validation, ETag hashing,
+ * PATCH merging and flattening into search documents.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlanBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int services;
+
+    private JsonValidator validator;
+    private ETagService eTagService;
+    private JSONObject plan;
+    private JSONObject merged;
+    private JSONObject patch;
+    private JSONArray mergedServices;
+    private JSONArray patchServices;
+
+    @Setup
+    public void setUp() throws Exception {
+        SchemaRegistry schemaRegistry = new SchemaRegistry(new ClassPathResource("JsonSchema.json"));
+        schemaRegistry.load();
+        validator = new JsonValidator(schemaRegistry, new SimpleMeterRegistry());
+        eTagService = new ETagService();
+
+        plan = PlanGenerator.plan("bench-plan", services);
+        patch = PlanGenerator.patch("bench-plan", services, 10);
+        // Merging is idempotent, so merging the same patch again measures the steady state
+        merged = new JSONObject(plan.toString());
+        JsonMerger.mergeJson(merged, patch);
+        mergedServices = merged.getJSONArray("linkedPlanServices");
+        patchServices = patch.getJSONArray("linkedPlanServices");
+    }
+
+    @Benchmark
+    public JSONObject validateJson() {
+        validator.validateJson(plan);
+        return plan;
+    }
+
+    @Benchmark
+    public String getETag() {
+        return eTagService.getETag(plan);
+    }
+
+    @Benchmark
+    public JSONObject mergeJson() {
+        JsonMerger.mergeJson(merged, patch);
+        return merged;
+    }
+
+    @Benchmark
+    public JSONArray mergeJsonArray() {
+        JsonMerger.mergeJsonArray(mergedServices, patchServices);
+        return mergedServices;
+    }
+
+    @Benchmark
+    public Map<String, Map<String, Object>> flattenAndCollectDocuments() {
+        Map<String, Map<String, Object>> documents = new HashMap<>();
+        PlanFlattener.flattenAndCollectDocuments(documents, plan, null, "plan", null);
+        return documents;
+    }
+}
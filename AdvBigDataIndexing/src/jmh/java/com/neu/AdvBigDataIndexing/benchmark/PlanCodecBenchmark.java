@@ -0,0 +1,70 @@
+package com.neu.AdvBigDataIndexing.benchmark;
+
+import com.neu.AdvBigDataIndexing.repository.PlanCodec;
+import com.neu.AdvBigDataIndexing.util.CanonicalJson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of encoding plans for storage and decoding them on reads: no compression,
+ * zstd, and zstd with a dictionary trained on other generated plans. The stored size
+ * of the plan under each codec is printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlanCodecBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int services;
+
+    @Param({"none", "zstd", "zstd-dictionary"})
+    public String codec;
+
+    private PlanCodec planCodec;
+    private byte[] json;
+    private byte[] stored;
+
+    @Setup
+    public void setUp() {
+        planCodec = new PlanCodec(null, codec.startsWith(PlanCodec.ZSTD) ? PlanCodec.ZSTD : PlanCodec.NONE, 3);
+        if (codec.equals("zstd-dictionary")) {
+            List<byte[]> samples = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                samples.add(CanonicalJson.toBytes(PlanGenerator.plan("sample-" + i, 1 + i % 20)));
+            }
+            planCodec.useDictionary(1, PlanCodec.train(samples, 16384));
+        }
+
+        json = CanonicalJson.toBytes(PlanGenerator.plan("bench-plan", services));
+        stored = planCodec.encode(json);
+        System.out.printf("%n%s, %d services: %d bytes stored for %d bytes of JSON (%.1f%%)%n",
+                codec, services, stored.length, json.length, 100.0 * stored.length / json.length);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return planCodec.encode(json);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return planCodec.decode(stored);
+    }
+}
@@ -0,0 +1,108 @@
+package com.neu.AdvBigDataIndexing.benchmark;
+
+import com.neu.AdvBigDataIndexing.controller.PlanController;
+import com.neu.AdvBigDataIndexing.service.ETagService;
+import com.neu.AdvBigDataIndexing.service.IndexingMessageCodec;
+import com.neu.AdvBigDataIndexing.service.PlanCache;
+import com.neu.AdvBigDataIndexing.service.PlanService;
+import com.neu.AdvBigDataIndexing.util.JsonValidator;
+import com.neu.AdvBigDataIndexing.util.SchemaRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controller handling end to end, from request body string to response entity, with
+ * Redis replaced by {@link InMemoryPlanStore}. Includes parsing, validation, hashing,
+ * diffing and encoding the indexing event, but no network or HTTP layer. The near
+ * cache holds nothing, so every read goes to the store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlanControllerBenchmark {
+    private static final String PLAN_ID = "bench-plan";
+
+    @Param({"1", "10", "100", "1000"})
+    public int services;
+
+    private PlanController controller;
+    private PlanService planService;
+    private String[] planBodies;
+    private int version;
+    private String otherPlanBody;
+    private String patchBody;
+    private HttpHeaders noHeaders;
+
+    @Setup
+    public void setUp() throws Exception {
+        SchemaRegistry schemaRegistry = new SchemaRegistry(new ClassPathResource("JsonSchema.json"));
+        schemaRegistry.load();
+        JsonValidator validator = new JsonValidator(schemaRegistry, new SimpleMeterRegistry());
+        ETagService eTagService = new ETagService();
+        PlanCache planCache = new PlanCache(null, new SimpleMeterRegistry(), 0, 0) {
+            @Override
+            public void invalidate(Collection<String> keys) {
+                evict(keys);
+            }
+        };
+        planService = new PlanService(new InMemoryPlanStore(eTagService), eTagService, new IndexingMessageCodec("cbor"), planCache, validator);
+        controller = new PlanController(validator, planService, eTagService);
+
+        JSONObject plan = PlanGenerator.plan(PLAN_ID, services);
+        planBodies = new String[]{plan.toString(), plan.put("planType", "outOfNetwork").toString()};
+        otherPlanBody = PlanGenerator.plan("bench-other", services).toString();
+        patchBody = PlanGenerator.patch(PLAN_ID, services, 10).toString();
+        noHeaders = new HttpHeaders();
+        controller.createPlan(planBodies[0]);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> get() throws Exception {
+        return controller.getPlan(PLAN_ID, null, noHeaders);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> createAndDelete() throws Exception {
+        ResponseEntity<?> created = controller.createPlan(otherPlanBody);
+        controller.deletePlan("bench-other");
+        return created;
+    }
+
+    /**
+     * Alternates between two versions so every PUT stores and indexes a real change.
+     */
+    @Benchmark
+    public ResponseEntity<?> put() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfMatch(planService.getETag("plan_" + PLAN_ID));
+        version ^= 1;
+        return controller.putPlan(planBodies[version], PLAN_ID, headers);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> patch() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfMatch(planService.getETag("plan_" + PLAN_ID));
+        return controller.patchPlan(patchBody, PLAN_ID, headers);
+    }
+}
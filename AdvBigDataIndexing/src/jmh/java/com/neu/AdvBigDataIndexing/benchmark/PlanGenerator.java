@@ -0,0 +1,73 @@
+package com.neu.AdvBigDataIndexing.benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Generates schema-valid plans shaped like the sample plan, with a given number of
+ * linked services.
+ */
+public final class PlanGenerator {
+
+    private PlanGenerator() {
+    }
+
+    public static JSONObject plan(String planId, int services) {
+        JSONArray linkedPlanServices = new JSONArray();
+        for (int i = 0; i < services; i++) {
+            linkedPlanServices.put(planService(planId, i, "Service " + i, i % 200));
+        }
+        return new JSONObject()
+                .put("planCostShares", costShare(planId + "-pcs", 2000, 23))
+                .put("linkedPlanServices", linkedPlanServices)
+                .put("_org", "example.com")
+                .put("objectId", planId)
+                .put("objectType", "plan")
+                .put("planType", "inNetwork")
+                .put("creationDate", "12-12-2017");
+    }
+
+    /**
+     * A PATCH body that changes the copay of every {@code step}-th service, renames
+     * one service and adds a new one.
+     */
+    public static JSONObject patch(String planId, int services, int step) {
+        JSONArray linkedPlanServices = new JSONArray();
+        for (int i = 0; i < services; i += step) {
+            linkedPlanServices.put(new JSONObject()
+                    .put("objectId", planId + "-ps-" + i)
+                    .put("objectType", "planservice")
+                    .put("planserviceCostShares", new JSONObject()
+                            .put("objectId", planId + "-pscs-" + i)
+                            .put("objectType", "membercostshare")
+                            .put("copay", 500)));
+        }
+        linkedPlanServices.put(planService(planId, services, "Added service", 5));
+        return new JSONObject()
+                .put("objectId", planId)
+                .put("objectType", "plan")
+                .put("linkedPlanServices", linkedPlanServices);
+    }
+
+    private static JSONObject planService(String planId, int index, String name, int copay) {
+        return new JSONObject()
+                .put("linkedService", new JSONObject()
+                        .put("_org", "example.com")
+                        .put("objectId", planId + "-s-" + index)
+                        .put("objectType", "service")
+                        .put("name", name))
+                .put("planserviceCostShares", costShare(planId + "-pscs-" + index, 10, copay))
+                .put("_org", "example.com")
+                .put("objectId", planId + "-ps-" + index)
+                .put("objectType", "planservice");
+    }
+
+    private static JSONObject costShare(String objectId, int deductible, int copay) {
+        return new JSONObject()
+                .put("deductible", deductible)
+                .put("_org", "example.com")
+                .put("copay", copay)
+                .put("objectId", objectId)
+                .put("objectType", "membercostshare");
+    }
+}
@@ -0,0 +1,185 @@
+package com.neu.AdvBigDataIndexing.benchmark;
+
+import com.neu.AdvBigDataIndexing.controller.PlanController;
+import com.neu.AdvBigDataIndexing.repository.BlobPlanStore;
+import com.neu.AdvBigDataIndexing.repository.Outbox;
+import com.neu.AdvBigDataIndexing.repository.PlanCodec;
+import com.neu.AdvBigDataIndexing.repository.PlanIndexes;
+import com.neu.AdvBigDataIndexing.repository.RedisRepository;
+import com.neu.AdvBigDataIndexing.service.ETagService;
+import com.neu.AdvBigDataIndexing.service.IndexingMessageCodec;
+import com.neu.AdvBigDataIndexing.service.PlanCache;
+import com.neu.AdvBigDataIndexing.service.PlanService;
+import com.neu.AdvBigDataIndexing.util.JsonValidator;
+import com.neu.AdvBigDataIndexing.util.SchemaRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.http.HttpHeaders;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Request capacity of the two threading modes under a burst of {@code requests}
+ * concurrent GETs of a plan, each going through {@link PlanController} and
+ * {@link RedisRepository}'s connection permits to a real Redis, with the near cache
+ * disabled. {@code platform} runs requests on a fixed pool of 200 threads like
+ * Tomcat's default; {@code virtual} runs each request on its own virtual thread.
+ * The score is the time to complete the whole burst, and {@code bytesPerRequest}
+ * the heap allocated per request by all threads ({@code -prof gc} only counts the
+ * benchmark thread, not the request threads). Needs Java 21 for {@code virtual}, and a
+ * Redis at {@code -Dredis.host}/{@code -Dredis.port} (localhost:6379), whose
+ * database 15 is flushed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+public class ThreadingBenchmark {
+    private static final String PLAN_ID = "bench-plan";
+    private static final int PLATFORM_THREADS = 200;
+    private static final int REDIS_CONNECTIONS = 64;
+    private static final int DATABASE = 15;
+
+    @Param({"platform", "virtual"})
+    public String threading;
+
+    @Param({"200", "1000", "5000"})
+    public int requests;
+
+    private Executor executor;
+    private ExecutorService platformPool;
+    private JedisPool jedisPool;
+    private PlanController controller;
+    private HttpHeaders noHeaders;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(REDIS_CONNECTIONS);
+        poolConfig.setMaxIdle(REDIS_CONNECTIONS);
+        poolConfig.setBlockWhenExhausted(false);
+        jedisPool = new JedisPool(poolConfig, System.getProperty("redis.host", "localhost"),
+                Integer.getInteger("redis.port", 6379), 2000, null, DATABASE);
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.flushDB();
+        }
+
+        SchemaRegistry schemaRegistry = new SchemaRegistry(new ClassPathResource("JsonSchema.json"));
+        schemaRegistry.load();
+        JsonValidator validator = new JsonValidator(schemaRegistry, new SimpleMeterRegistry());
+        RedisRepository redisRepository = new RedisRepository(jedisPool, new SimpleMeterRegistry(), REDIS_CONNECTIONS, 2000);
+        ETagService eTagService = new ETagService();
+        PlanIndexes planIndexes = new PlanIndexes(redisRepository);
+        BlobPlanStore planStore = new BlobPlanStore(redisRepository, eTagService, new Outbox(redisRepository),
+                new PlanCodec(redisRepository, PlanCodec.NONE, 3), planIndexes);
+        PlanCache planCache = new PlanCache(null, new SimpleMeterRegistry(), 0, 0) {
+            @Override
+            public void invalidate(Collection<String> keys) {
+                evict(keys);
+            }
+        };
+        PlanService planService = new PlanService(planStore, eTagService, new IndexingMessageCodec("cbor"), planCache, validator);
+        controller = new PlanController(validator, planService, eTagService);
+        noHeaders = new HttpHeaders();
+        controller.createPlan(PlanGenerator.plan(PLAN_ID, 10).toString());
+
+        if ("virtual".equals(threading)) {
+            executor = new VirtualThreadTaskExecutor("request-");
+        } else {
+            platformPool = Executors.newFixedThreadPool(PLATFORM_THREADS);
+            executor = platformPool;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (platformPool != null)
+            platformPool.shutdownNow();
+        jedisPool.close();
+    }
+
+    @Benchmark
+    public int burst(Allocation allocation) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(requests);
+        AtomicInteger failed = new AtomicInteger();
+        for (int i = 0; i < requests; i++) {
+            executor.execute(() -> {
+                try {
+                    if (!controller.getPlan(PLAN_ID, null, noHeaders).getStatusCode().is2xxSuccessful())
+                        failed.incrementAndGet();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        allocation.record(requests);
+        if (failed.get() > 0)
+            throw new IllegalStateException(failed.get() + " of " + requests + " requests failed");
+        return failed.get();
+    }
+
+    /**
+     * Heap allocated by all live threads per request in the iteration. Allocations
+     * of virtual threads are counted on their carrier threads.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Allocation {
+        private static final com.sun.management.ThreadMXBean THREADS =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        private long start;
+        private long requests;
+        public long bytesPerRequest;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            start = allocatedBytes();
+            requests = 0;
+            bytesPerRequest = 0;
+        }
+
+        private void record(int count) {
+            requests += count;
+            bytesPerRequest = (allocatedBytes() - start) / requests;
+        }
+
+        private static long allocatedBytes() {
+            long total = 0;
+            for (long bytes : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+                total += Math.max(bytes, 0);
+            }
+            return total;
+        }
+    }
+}
@@ -1,16 +1,23 @@
 package com.neu.AdvBigDataIndexing;
 
+import com.neu.AdvBigDataIndexing.cli.PlanExportCli;
 import org.springframework.amqp.rabbit.annotation.EnableRabbit;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.util.Arrays;
 
 @SpringBootApplication
 @EnableRabbit
+@EnableScheduling
 public class AdvBigDataIndexingApplication {
 
-    public static final String queueName = "indexing-queue";
-
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && "export".equals(args[0])) {
+            PlanExportCli.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         SpringApplication.run(AdvBigDataIndexingApplication.class, args);
     }
 
@@ -0,0 +1,74 @@
+package com.neu.AdvBigDataIndexing.cli;
+
+import com.neu.AdvBigDataIndexing.repository.BlobPlanStore;
+import com.neu.AdvBigDataIndexing.repository.GraphPlanStore;
+import com.neu.AdvBigDataIndexing.repository.PlanCodec;
+import com.neu.AdvBigDataIndexing.repository.PlanIndexes;
+import com.neu.AdvBigDataIndexing.repository.Outbox;
+import com.neu.AdvBigDataIndexing.repository.PlanStore;
+import com.neu.AdvBigDataIndexing.repository.RedisRepository;
+import com.neu.AdvBigDataIndexing.service.ETagService;
+import com.neu.AdvBigDataIndexing.service.PlanExporter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports all plans as NDJSON without starting the application:
+ * <pre>
+ * java -jar AdvBigDataIndexing.jar export [--host=localhost] [--port=6379] [--password=...]
+ *     [--database=0] [--mode=blob|graph] [--scan-count=500] [--out=plans.ndjson] [--gzip]
+ * </pre>
+ * Writes to standard output unless {@code --out} is given.
+ */
+public final class PlanExportCli {
+
+    private PlanExportCli() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--"))
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            int separator = arg.indexOf('=');
+            if (separator < 0)
+                options.put(arg.substring(2), "true");
+            else
+                options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        String password = options.get("password");
+        try (JedisPool pool = new JedisPool(new JedisPoolConfig(), options.getOrDefault("host", "localhost"),
+                Integer.parseInt(options.getOrDefault("port", "6379")), 2000, password,
+                Integer.parseInt(options.getOrDefault("database", "0")))) {
+            RedisRepository redisRepository = new RedisRepository(pool, new SimpleMeterRegistry(), 8, 2000);
+            ETagService eTagService = new ETagService();
+            Outbox outbox = new Outbox(redisRepository);
+            PlanIndexes planIndexes = new PlanIndexes(redisRepository);
+            PlanStore planStore = "graph".equals(options.get("mode"))
+                    ? new GraphPlanStore(redisRepository, eTagService, outbox, planIndexes)
+                    // Export only reads, and documents are decoded in any encoding
+                    : new BlobPlanStore(redisRepository, eTagService, outbox, new PlanCodec(redisRepository, PlanCodec.NONE, 3), planIndexes);
+            PlanExporter exporter = new PlanExporter(redisRepository, planStore,
+                    Integer.parseInt(options.getOrDefault("scan-count", "500")));
+
+            String file = options.get("out");
+            OutputStream out = new BufferedOutputStream(file == null ? System.out : new FileOutputStream(file), 64 * 1024);
+            if (options.containsKey("gzip"))
+                out = new GZIPOutputStream(out, 64 * 1024);
+            try (OutputStream target = out) {
+                long count = exporter.export(target);
+                System.err.println("Exported " + count + " plans");
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.neu.AdvBigDataIndexing.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers tokens that passed signature and claim validation until they expire, so a
+ * client reusing its token is only verified once. Tokens are keyed by their SHA-256
+ * hash rather than held as is, and at most {@code jwt.cache.max-entries} are kept,
+ * least recently used first out. Tokens without an expiry are never cached. Lookups
+ * are counted as {@code jwt.cache} with result hit or miss.
+ */
+public class CachingJwtDecoder implements JwtDecoder {
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final JwtDecoder delegate;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Jwt> tokens;
+
+    public CachingJwtDecoder(JwtDecoder delegate, int maxEntries, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.meterRegistry = meterRegistry;
+        this.tokens = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Jwt> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        String key = hash(token);
+        Instant now = Instant.now();
+        synchronized (tokens) {
+            Jwt jwt = tokens.get(key);
+            if (jwt != null) {
+                if (jwt.getExpiresAt().isAfter(now)) {
+                    meterRegistry.counter("jwt.cache", "result", "hit").increment();
+                    return jwt;
+                }
+                tokens.remove(key);
+            }
+        }
+
+        meterRegistry.counter("jwt.cache", "result", "miss").increment();
+        Jwt jwt = delegate.decode(token);
+        if (jwt.getExpiresAt() != null && jwt.getExpiresAt().isAfter(now)) {
+            synchronized (tokens) {
+                tokens.put(key, jwt);
+            }
+        }
+        return jwt;
+    }
+
+    private static String hash(String token) {
+        return Base64.getEncoder().encodeToString(SHA_256.get().digest(token.getBytes(StandardCharsets.UTF_8)));
+    }
+}
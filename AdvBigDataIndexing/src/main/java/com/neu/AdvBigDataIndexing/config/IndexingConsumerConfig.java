@@ -0,0 +1,31 @@
+package com.neu.AdvBigDataIndexing.config;
+
+import com.neu.AdvBigDataIndexing.service.IndexingListener;
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers one single-consumer listener container per indexing lane.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class IndexingConsumerConfig implements RabbitListenerConfigurer {
+    private final IndexingLanes indexingLanes;
+    private final IndexingListener indexingListener;
+    private final SimpleRabbitListenerContainerFactory indexingContainerFactory;
+
+    @Override
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        for (int lane = 0; lane < indexingLanes.getCount(); lane++) {
+            SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+            endpoint.setId("indexing-lane-" + lane);
+            endpoint.setQueueNames(indexingLanes.queueName(lane));
+            endpoint.setMessageListener(indexingListener);
+            registrar.registerEndpoint(endpoint, indexingContainerFactory);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.neu.AdvBigDataIndexing.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Partitions indexing messages by root plan id into {@code indexing.lanes} queues.
+ * Each lane queue has exactly one consumer, so operations on the same plan are
+ * applied in the order they were published while different plans are indexed in
+ * parallel. Publishers and consumers must use the same lane count. Failed messages
+ * wait in {@code <prefix>.retry.<n>} before their n-th retry, and in
+ * {@code <prefix>.dead} once they cannot be retried.
+ */
+@Component
+public class IndexingLanes {
+
+    private final String queuePrefix;
+    private final int count;
+
+    public IndexingLanes(@Value("${spring.rabbitmq.template.default-receive-queue}") String queuePrefix,
+                         @Value("${indexing.lanes}") int count) {
+        this.queuePrefix = queuePrefix;
+        this.count = count;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public String queueName(int lane) {
+        return queuePrefix + "." + lane;
+    }
+
+    public String retryQueueName(int retry) {
+        return queuePrefix + ".retry." + retry;
+    }
+
+    public String deadLetterQueueName() {
+        return queuePrefix + ".dead";
+    }
+
+    /**
+     * Routing key of the lane that owns the plan. Lane queues are bound with their own
+     * name as routing key.
+     */
+    public String routingKey(String planId) {
+        return queueName(Math.floorMod(planId.hashCode(), count));
+    }
+}
@@ -0,0 +1,142 @@
+package com.neu.AdvBigDataIndexing.config;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The public keys that bearer tokens are verified with, held in memory. The set is
+ * loaded from {@code jwt.jwk-set.location} (an http(s) JWK set URI, or a {@code file:}
+ * or {@code classpath:} JSON file) at startup and reloaded in the background every
+ * {@code jwt.jwk-set.refresh-ms}; requests never wait for the endpoint. A token signed
+ * with an unknown key id starts an early reload in the background, at most once per
+ * {@code jwt.jwk-set.min-refresh-ms}, to pick up rotated keys; that token is checked
+ * against the current keys. Failed reloads keep the current keys.
+ * <p>
+ * For development and tests, {@code jwt.jwk-set.fallback-location} (e.g. a local key
+ * file) is used when the location cannot be loaded and no keys are held yet. It is
+ * only accepted together with {@code jwt.jwk-set.allow-fallback=true}, so a deployment
+ * never trusts a local key by accident.
+ */
+@Component
+public class JwkSetSource implements JWKSource<SecurityContext> {
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    private static final int READ_TIMEOUT_MS = 2000;
+    private static final int SIZE_LIMIT = 512 * 1024;
+
+    private final ResourceLoader resourceLoader;
+    private final String location;
+    private final String fallbackLocation;
+    private final long minRefreshMs;
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jwk-set-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile JWKSet jwkSet = new JWKSet();
+    private volatile long refreshedAt;
+
+    public JwkSetSource(ResourceLoader resourceLoader,
+                        @Value("${jwt.jwk-set.location}") String location,
+                        @Value("${jwt.jwk-set.fallback-location:}") String fallbackLocation,
+                        @Value("${jwt.jwk-set.allow-fallback:false}") boolean allowFallback,
+                        @Value("${jwt.jwk-set.min-refresh-ms}") long minRefreshMs) {
+        if (!fallbackLocation.isEmpty() && !allowFallback)
+            throw new IllegalStateException("jwt.jwk-set.fallback-location is only for development and tests,"
+                    + " and requires jwt.jwk-set.allow-fallback=true");
+        this.resourceLoader = resourceLoader;
+        this.location = location;
+        this.fallbackLocation = fallbackLocation;
+        this.minRefreshMs = minRefreshMs;
+    }
+
+    @PostConstruct
+    public void init() {
+        refresh();
+    }
+
+    @Scheduled(initialDelayString = "${jwt.jwk-set.refresh-ms}", fixedDelayString = "${jwt.jwk-set.refresh-ms}")
+    public void refresh() {
+        refreshLock.lock();
+        try {
+            refreshedAt = System.currentTimeMillis();
+            try {
+                jwkSet = load(location);
+                return;
+            } catch (IOException | ParseException e) {
+                System.err.println("Failed to load JWK set from " + location + ": " + e.getMessage());
+            }
+            if (jwkSet.getKeys().isEmpty() && !fallbackLocation.isEmpty()) {
+                try {
+                    jwkSet = load(fallbackLocation);
+                    System.out.println("Using fallback JWK set from " + fallbackLocation);
+                } catch (IOException | ParseException e) {
+                    System.err.println("Failed to load fallback JWK set from " + fallbackLocation + ": " + e.getMessage());
+                }
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        refresher.shutdownNow();
+    }
+
+    @Override
+    public List<JWK> get(JWKSelector jwkSelector, SecurityContext context) {
+        List<JWK> keys = jwkSelector.select(jwkSet);
+        if (keys.isEmpty() && System.currentTimeMillis() - refreshedAt >= minRefreshMs && refreshing.compareAndSet(false, true)) {
+            try {
+                refresher.execute(() -> {
+                    try {
+                        if (System.currentTimeMillis() - refreshedAt >= minRefreshMs)
+                            refresh();
+                    } finally {
+                        refreshing.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                refreshing.set(false);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Only the public parts of the keys are kept, so a test key file may hold the
+     * whole key pair.
+     */
+    private JWKSet load(String location) throws IOException, ParseException {
+        Resource resource = resourceLoader.getResource(location);
+        if (location.startsWith("http:") || location.startsWith("https:"))
+            return JWKSet.load(resource.getURL(), CONNECT_TIMEOUT_MS, READ_TIMEOUT_MS, SIZE_LIMIT).toPublicJWKSet();
+        try (InputStream in = resource.getInputStream()) {
+            return JWKSet.load(in).toPublicJWKSet();
+        }
+    }
+}
@@ -1,23 +1,67 @@
 package com.neu.AdvBigDataIndexing.config;
 
-import org.springframework.amqp.core.Binding;
+import com.neu.AdvBigDataIndexing.service.IndexingRetrier;
+import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.HeadersExchange;
+import org.springframework.amqp.core.QueueBuilder;
 import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
 import org.springframework.amqp.core.Queue;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 public class RabbitMQConfig {
 
+    /**
+     * Durable lane queues, which dead-letter rejected messages to the dead-letter
+     * queue, and one retry queue per retry. A retry queue holds its messages for the
+     * retry's delay and then dead-letters them back to the lanes exchange, which routes
+     * them to their lane by their original routing key.
+     */
     @Bean
-    public Queue indexingQueue(@Value("${spring.rabbitmq.template.default-receive-queue}") String queueName) {
-        return new Queue(queueName, false);
+    public Declarables indexingQueues(IndexingLanes indexingLanes, IndexingRetrier indexingRetrier, TopicExchange topicExchange) {
+        List<Declarable> declarables = new ArrayList<>();
+        for (int lane = 0; lane < indexingLanes.getCount(); lane++) {
+            Queue queue = QueueBuilder.durable(indexingLanes.queueName(lane))
+                    .deadLetterExchange(indexingRetrier.deadLetterExchange())
+                    .build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(topicExchange).with(indexingLanes.queueName(lane)));
+        }
+
+        HeadersExchange retryExchange = new HeadersExchange(indexingRetrier.retryExchange());
+        declarables.add(retryExchange);
+        for (int retry = 1; retry <= indexingRetrier.getMaxRetries(); retry++) {
+            Queue queue = QueueBuilder.durable(indexingLanes.retryQueueName(retry))
+                    .ttl((int) indexingRetrier.delay(retry))
+                    .deadLetterExchange(topicExchange.getName())
+                    .build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(retryExchange).where(IndexingRetrier.RETRY_HEADER).matches(String.valueOf(retry)));
+        }
+
+        FanoutExchange deadLetterExchange = new FanoutExchange(indexingRetrier.deadLetterExchange());
+        Queue deadLetterQueue = QueueBuilder.durable(indexingLanes.deadLetterQueueName()).build();
+        declarables.add(deadLetterExchange);
+        declarables.add(deadLetterQueue);
+        declarables.add(BindingBuilder.bind(deadLetterQueue).to(deadLetterExchange));
+        return new Declarables(declarables);
     }
 
     @Bean
@@ -25,11 +69,6 @@ public class RabbitMQConfig {
         return new TopicExchange(exchangeName);
     }
 
-    @Bean
-    public Binding binding(Queue indexingQueue, TopicExchange indexingExchange) {
-        return BindingBuilder.bind(indexingQueue).to(indexingExchange).with("indexing-queue");
-    }
-
     @Bean
     public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
         RabbitTemplate template = new RabbitTemplate(connectionFactory);
@@ -37,6 +76,36 @@ public class RabbitMQConfig {
         return template;
     }
 
+    /**
+     * Batching, manually acknowledged container for the indexing lanes. A batch is
+     * handed over once it holds {@code indexing.batch.size} messages or no further
+     * message arrived within {@code indexing.batch.receive-timeout-ms}. Each container
+     * runs a single consumer so a lane is processed in order. Consumers run on
+     * virtual threads when {@code spring.threads.virtual.enabled} is set on Java 21+.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory indexingContainerFactory(ConnectionFactory connectionFactory,
+                                                                         MessageConverter messageConverter,
+                                                                         Environment environment,
+                                                                         @Value("${indexing.batch.size}") int batchSize,
+                                                                         @Value("${indexing.batch.receive-timeout-ms}") long receiveTimeout,
+                                                                         @Value("${indexing.prefetch}") int prefetch) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(messageConverter);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setPrefetchCount(prefetch);
+        factory.setConcurrentConsumers(1);
+        factory.setMaxConcurrentConsumers(1);
+        factory.setReceiveTimeout(receiveTimeout);
+        if (Threading.VIRTUAL.isActive(environment))
+            factory.setTaskExecutor(new VirtualThreadTaskExecutor("indexing-lane-"));
+        return factory;
+    }
+
     @Bean
     public MessageConverter messageConverter() {
         return new Jackson2JsonMessageConverter();
@@ -1,11 +1,14 @@
 package com.neu.AdvBigDataIndexing.config;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
-import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
 
 @Configuration
 public class RedisConfig {
@@ -21,15 +24,61 @@ public class RedisConfig {
         return template;
     }
 
+    /**
+     * Shared connection pool. Every request borrows its own connection, so Jedis
+     * instances are never used by two threads at the same time. Callers wait for a
+     * connection in {@link com.neu.AdvBigDataIndexing.repository.RedisRepository},
+     * whose permits never exceed {@code max-total}, so the pool itself never blocks;
+     * it holds {@code subscriptions} more connections for pub/sub subscriptions.
+     */
+    @Bean(destroyMethod = "close")
+    public JedisPool jedisPool(@Value("${redis.host}") String host,
+                               @Value("${redis.port}") int port,
+                               @Value("${redis.password:}") String password,
+                               @Value("${redis.database:0}") int database,
+                               @Value("${redis.timeout.connect-ms}") int connectTimeout,
+                               @Value("${redis.timeout.socket-ms}") int socketTimeout,
+                               @Value("${redis.pool.max-total}") int maxTotal,
+                               @Value("${redis.pool.max-idle}") int maxIdle,
+                               @Value("${redis.pool.min-idle}") int minIdle,
+                               @Value("${redis.pool.subscriptions}") int subscriptions) {
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(maxTotal + subscriptions);
+        poolConfig.setMaxIdle(maxIdle);
+        poolConfig.setMinIdle(minIdle);
+        poolConfig.setBlockWhenExhausted(false);
+        poolConfig.setJmxEnabled(false);
+
+        return new JedisPool(poolConfig, host, port, connectTimeout, socketTimeout,
+                password.isEmpty() ? null : password, database, "adv-big-data-indexing");
+    }
+
+    /**
+     * Exposes pool saturation (active/idle/waiting connections and borrow wait times)
+     * as redis.pool.* gauges.
+     */
     @Bean
-    public Jedis getJedis(){
-        Jedis jedisPool = null;  // Replace with your Redis server IP and port
-        try {
-            jedisPool = new JedisPool().getResource();
-            return jedisPool;
-        }finally {
-            assert jedisPool != null;
-            jedisPool.close();
-        }
+    public MeterBinder jedisPoolMetrics(JedisPool jedisPool,
+                                        @Value("${redis.pool.max-total}") int maxTotal) {
+        return registry -> {
+            Gauge.builder("redis.pool.active", jedisPool, JedisPool::getNumActive)
+                    .description("Connections currently borrowed from the pool")
+                    .register(registry);
+            Gauge.builder("redis.pool.idle", jedisPool, JedisPool::getNumIdle)
+                    .description("Idle connections in the pool")
+                    .register(registry);
+            Gauge.builder("redis.pool.waiters", jedisPool, JedisPool::getNumWaiters)
+                    .description("Threads blocked waiting for a connection")
+                    .register(registry);
+            Gauge.builder("redis.pool.max", () -> maxTotal)
+                    .description("Maximum pool size")
+                    .register(registry);
+            Gauge.builder("redis.pool.borrow.wait.mean", jedisPool, JedisPool::getMeanBorrowWaitTimeMillis)
+                    .baseUnit("milliseconds")
+                    .register(registry);
+            Gauge.builder("redis.pool.borrow.wait.max", jedisPool, JedisPool::getMaxBorrowWaitTimeMillis)
+                    .baseUnit("milliseconds")
+                    .register(registry);
+        };
     }
 }
@@ -0,0 +1,70 @@
+package com.neu.AdvBigDataIndexing.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Reports virtual threads that stay pinned to their carrier thread (blocking inside
+ * synchronized code or a native frame) for longer than
+ * {@code virtual-threads.pinned-threshold-ms}. A pinned virtual thread blocks its carrier,
+ * so pinning in a hot path caps concurrency at the number of carriers. Every event is
+ * counted as {@code jvm.threads.virtual.pinned} and logged with the top of its stack.
+ * Only active when virtual threads are enabled.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadDiagnostics {
+    private static final int LOGGED_FRAMES = 8;
+
+    private final MeterRegistry meterRegistry;
+    private final long thresholdMs;
+    private RecordingStream stream;
+
+    public VirtualThreadDiagnostics(MeterRegistry meterRegistry,
+                                    @Value("${virtual-threads.pinned-threshold-ms}") long thresholdMs) {
+        this.meterRegistry = meterRegistry;
+        this.thresholdMs = thresholdMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        stream = new RecordingStream();
+        stream.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ofMillis(thresholdMs)).withStackTrace();
+        stream.onEvent("jdk.VirtualThreadPinned", this::pinned);
+        stream.startAsync();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null)
+            stream.close();
+    }
+
+    private void pinned(RecordedEvent event) {
+        meterRegistry.counter("jvm.threads.virtual.pinned").increment();
+
+        StringBuilder message = new StringBuilder("Virtual thread pinned for ")
+                .append(event.getDuration().toMillis()).append(" ms");
+        if (event.getStackTrace() != null) {
+            List<RecordedFrame> frames = event.getStackTrace().getFrames();
+            for (int i = 0; i < Math.min(LOGGED_FRAMES, frames.size()); i++) {
+                RecordedFrame frame = frames.get(i);
+                message.append("\n\tat ").append(frame.getMethod().getType().getName())
+                        .append('.').append(frame.getMethod().getName())
+                        .append(':').append(frame.getLineNumber());
+            }
+        }
+        System.err.println(message);
+    }
+}
@@ -0,0 +1,35 @@
+package com.neu.AdvBigDataIndexing.controller;
+
+import com.neu.AdvBigDataIndexing.service.IndexingRetrier;
+import lombok.RequiredArgsConstructor;
+import org.apache.coyote.BadRequestException;
+import org.json.JSONObject;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RequiredArgsConstructor
+@RestController
+@RequestMapping(path = "/api/v1/indexing/dead-letters")
+public class DeadLetterController {
+    private final IndexingRetrier indexingRetrier;
+
+    /**
+     * Moves up to {@code limit} dead-lettered indexing messages back to their lanes, e.g.
+     * after Elasticsearch recovered or a mapping was fixed. The depth of the dead-letter
+     * queue is the {@code indexing.dead-letter.depth} metric.
+     */
+    @PostMapping(value = "/_replay", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> replay(@RequestParam(defaultValue = "1000") int limit) throws BadRequestException {
+        if (limit < 1)
+            throw new BadRequestException("limit must be positive");
+        int replayed = indexingRetrier.replay(limit);
+        return ResponseEntity.ok(new JSONObject()
+                .put("Message", "Replayed " + replayed + " messages")
+                .put("replayed", replayed)
+                .toString());
+    }
+}
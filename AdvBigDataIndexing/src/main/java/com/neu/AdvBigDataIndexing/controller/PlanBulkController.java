@@ -0,0 +1,33 @@
+package com.neu.AdvBigDataIndexing.controller;
+
+import com.neu.AdvBigDataIndexing.service.PlanBulkImporter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+@RequiredArgsConstructor
+@RestController
+@RequestMapping(path = "/api/v1/plan/_bulk")
+public class PlanBulkController {
+    private static final String NDJSON = "application/x-ndjson";
+
+    private final PlanBulkImporter planBulkImporter;
+
+    /**
+     * Creates the plans of an NDJSON body, one plan per line, and streams one NDJSON
+     * result per line back. The response status is always 200; each result carries
+     * the status of its own line.
+     */
+    @PostMapping(value = "", consumes = NDJSON, produces = NDJSON)
+    public void bulkCreatePlans(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding("UTF-8");
+        planBulkImporter.importPlans(request.getInputStream(), response.getOutputStream());
+    }
+}
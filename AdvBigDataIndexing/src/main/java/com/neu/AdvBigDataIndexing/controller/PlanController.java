@@ -1,5 +1,7 @@
 package com.neu.AdvBigDataIndexing.controller;
 
+import com.neu.AdvBigDataIndexing.model.PlanDocument;
+import com.neu.AdvBigDataIndexing.service.ETagService;
 import com.neu.AdvBigDataIndexing.service.PlanService;
 import com.neu.AdvBigDataIndexing.util.JsonValidator;
 import lombok.RequiredArgsConstructor;
@@ -7,33 +9,27 @@ import org.apache.coyote.BadRequestException;
 import org.everit.json.schema.ValidationException;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.io.IOException;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 
 @RequiredArgsConstructor
 @RestController
 @RequestMapping(path = "/api/v1/plan")
 public class PlanController {
+    private static final int PATCH_ATTEMPTS = 3;
+    private static final int DELETE_ATTEMPTS = 3;
+
     private final JsonValidator validator;
     private final PlanService planService;
-    private final RabbitTemplate template;
-
-    @Value("${spring.rabbitmq.topic.exchange}")
-    private String exchange;
+    private final ETagService eTagService;
 
-    @Value("${spring.rabbitmq.template.default-receive-queue}")
-    private String routingKey;
 
     @PostMapping(value = "", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> createPlan(@RequestBody(required = false) String planObject) throws JSONException, BadRequestException {
@@ -46,8 +42,6 @@ public class PlanController {
             validator.validateJson(json);
         } catch (ValidationException ex) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new JSONObject().put("Error", ex.getErrorMessage()).toString());
-        } catch (IOException e) {
-            throw new RuntimeException(e);
         }
 
         String key = json.get("objectType").toString() + "_" + json.get("objectId").toString();
@@ -55,40 +49,43 @@ public class PlanController {
             return ResponseEntity.status(HttpStatus.CONFLICT).body(new JSONObject().put("Message", "Plan already exist").toString());
         }
 
+        // The plan is queued for indexing in the same transaction
         String newEtag = planService.createPlan(json, key);
 
-        // Send a message to queue for indexing
-        sendToQueue("SAVE", planObject);
-
         return ResponseEntity.status(HttpStatus.CREATED).eTag(newEtag).body(new JSONObject().put("Message", "Created data with key: " + json.get("objectId")).toString());
     }
 
     @GetMapping(value = "/{objectId}", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> getPlan(@PathVariable String objectId,
+                                     @RequestParam(required = false) Set<String> fields,
                                      @RequestHeader HttpHeaders headers) throws JSONException, BadRequestException {
         String key = "plan_" + objectId;
-        if (!planService.isKeyPresent(key))
-            return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                    .body(new JSONObject().put("Message", "ObjectId does not exist").toString());
+        List<String> ifNoneMatch = getIfNoneMatch(headers);
 
-        // Check if the ETag provided is not corrupt
-        List<String> ifNoneMatch;
-        try {
-            ifNoneMatch = headers.get("if-none-match");
-        } catch (Exception e) {
-            throw new BadRequestException("ETag value invalid! Make sure the ETag value is a string!");
-        }
+        // Stored bytes are returned as-is, without parsing them, unless a projection is requested
+        PlanDocument document = fields == null || fields.isEmpty()
+                ? planService.getPlanDocument(key, ifNoneMatch)
+                : planService.getPlanObject(key, objectId, fields, ifNoneMatch);
+        return toResponse(document);
+    }
 
-        String eTag = planService.getETag(key);
+    @GetMapping(value = "/{objectId}/{childObjectId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getPlanObject(@PathVariable String objectId, @PathVariable String childObjectId,
+                                           @RequestParam(required = false) Set<String> fields,
+                                           @RequestHeader HttpHeaders headers) throws JSONException, BadRequestException {
+        String key = "plan_" + objectId;
+        List<String> ifNoneMatch = getIfNoneMatch(headers);
 
-        if (ifNoneMatch != null && ifNoneMatch.contains(eTag))
-            return new ResponseEntity<>(null, HttpStatus.NOT_MODIFIED);
-        else {
-            JSONObject objectToReturn = planService.getPlan(key);
-            return new ResponseEntity<>(objectToReturn.toString(), HttpStatus.OK);
-        }
+        PlanDocument document = planService.getPlanObject(key, childObjectId,
+                fields == null || fields.isEmpty() ? null : fields, ifNoneMatch);
+        return toResponse(document);
     }
 
+    /**
+     * Replaces the plan if it is still at one of the If-Match versions. The version
+     * check and the write are a single atomic compare-and-set, so a concurrent change
+     * made after the plan was read fails the request with 412 instead of being lost.
+     */
     @PutMapping(value = "/{objectId}", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> putPlan(@RequestBody String medicalPlan,
                                      @PathVariable String objectId, @RequestHeader HttpHeaders headers) throws Exception {
@@ -97,62 +94,61 @@ public class PlanController {
             throw new BadRequestException("Request body is missing!");
 
         String key = "plan_" + objectId;
-        if (!planService.isKeyPresent(key)) {
+        List<String> ifMatch = getIfMatch(headers);
+        if (ifMatch.isEmpty())
+            return preconditionFailed("Precondition failed, missing eTag");
+
+        PlanDocument current = getCurrent(key, ifMatch);
+        if (current == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(new JSONObject().put("Message", "ObjectId does not exist").toString());
         }
-
-        String eTag = planService.getETag(key);
-
-        List<String> ifMatch;
-        try {
-            ifMatch = headers.get("if-none-match");
-        } catch (Exception e) {
-            throw new Exception("ETag value invalid! Make sure the ETag value is a string!", e);
-        }
-
-        if (ifMatch.isEmpty())
-            throw new Exception("ETag is not provided with request!");
-        if (!ifMatch.contains(eTag))
-            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
-                .body(new JSONObject().put("Message", "Precondition failed, missing eTag").toString());
+        if (!matches(ifMatch, current.getETag()))
+            return preconditionFailed("Precondition failed, eTag does not match");
 
         JSONObject json = new JSONObject(medicalPlan);
         try {
             validator.validateJson(json);
         } catch (ValidationException ex) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new JSONObject().put("Error", ex.getErrorMessage()).toString());
-        } catch (IOException e) {
-            throw new RuntimeException(e);
         }
+        // The plan is stored, indexed and routed by the objectId of its body
+        if (!objectId.equals(json.getString("objectId")))
+            throw new BadRequestException("The objectId of the plan does not match the path!");
 
-        planService.deletePlan(key);
-        // Send message to queue for deleting previous indices for put
-        sendToQueue("DELETE", planService.getPlan(key).toString());
-
-        String newEtag = planService.createPlan(json, key);
-        // Send a message to queue for indexing
-        sendToQueue("SAVE", medicalPlan);
+        String newEtag = planService.replacePlan(key, json, current);
+        if (newEtag == null)
+            return preconditionFailed("Precondition failed, plan was modified concurrently");
 
         return ResponseEntity.status(HttpStatus.OK).eTag(newEtag).body(new JSONObject().put("Message", "Updated data for key: " + json.get("objectId")).toString());
     }
 
+    /**
+     * Deletes the plan at the version just read, so the indexing event names exactly
+     * the documents that are deleted. A delete that lost a race with a write is tried
+     * again with the new version, up to {@code DELETE_ATTEMPTS} times.
+     */
     @DeleteMapping("/{objectId}")
     public ResponseEntity<?> deletePlan(@PathVariable String objectId) {
         String key = "plan_" + objectId;
-        if (!planService.isKeyPresent(key))
-            return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                    .body(new JSONObject().put("Message", "ObjectId does not exist").toString());
-
-        JSONObject plan = planService.getPlan(key);
-
-        planService.deletePlan(key);
-
-        // Send message to queue for deleting indices
-        sendToQueue("DELETE", plan.toString());
-        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        for (int attempt = 0; attempt < DELETE_ATTEMPTS; attempt++) {
+            PlanDocument current = planService.getStoredPlanDocument(key);
+            if (current == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(new JSONObject().put("Message", "ObjectId does not exist").toString());
+            }
+            if (planService.deletePlan(key, current))
+                return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        }
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(new JSONObject().put("Message", "Plan was modified concurrently").toString());
     }
 
+    /**
+     * Merges the patch into the plan if it is at one of the If-Match versions, with
+     * the same compare-and-set as PUT. With {@code If-Match: *} a patch that lost a
+     * race is merged again into the new version, up to {@code PATCH_ATTEMPTS} times.
+     */
     @PatchMapping(path = "/{objectId}", produces = "application/json")
     public ResponseEntity<Object> patchPlan(@RequestBody String medicalPlan,
                                             @PathVariable String objectId, @RequestHeader HttpHeaders headers) throws BadRequestException {
@@ -162,49 +158,85 @@ public class PlanController {
 
         JSONObject planObject = new JSONObject(medicalPlan);
         try {
-            validator.validateJson(planObject);
+            validator.validateFragment(planObject);
         } catch (ValidationException ex) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new JSONObject().put("Error", ex.getErrorMessage()).toString());
-        } catch (IOException e) {
-            throw new RuntimeException(e);
         }
+        if (!objectId.equals(planObject.getString("objectId")))
+            throw new BadRequestException("The objectId of the patch does not match the plan!");
 
+        List<String> ifMatch = getIfMatch(headers);
+        if (ifMatch.isEmpty())
+            return preconditionFailed("Precondition failed, missing eTag");
 
-        List<String> ifNoneMatch;
+        String key = "plan_" + objectId;
+        for (int attempt = 0; attempt < PATCH_ATTEMPTS; attempt++) {
+            PlanDocument current = getCurrent(key, ifMatch);
+            if (current == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(new JSONObject().put("Message", "ObjectId does not exist").toString());
+            }
+            if (!matches(ifMatch, current.getETag()))
+                return preconditionFailed("Precondition failed, eTag does not match");
+
+            PlanDocument patched;
+            try {
+                patched = planService.patchPlan(key, planObject, current);
+            } catch (ValidationException ex) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new JSONObject().put("Error", ex.getErrorMessage()).toString());
+            }
+            if (patched != null)
+                return ResponseEntity.status(HttpStatus.OK).eTag(patched.getETag()).body(patched.getBody());
+        }
+        return preconditionFailed("Precondition failed, plan was modified concurrently");
+    }
+
+    private List<String> getIfMatch(HttpHeaders headers) throws BadRequestException {
         try {
-            ifNoneMatch = headers.get("if-match");
+            return eTagService.parseETags(headers.get("if-match"));
         } catch (Exception e) {
             throw new BadRequestException("ETag value invalid! Make sure the ETag value is a string!");
         }
+    }
 
-        if (!planService.isKeyPresent("plan_" + objectId)) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                    .body(new JSONObject().put("Message", "ObjectId does not exist").toString());
-        }
-
-        if (ifNoneMatch == null)
-            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
-                    .body(new JSONObject().put("Message", "Precondition failed, missing eTag").toString());
+    /**
+     * Reads the plan a conditional write is checked against. The near cache may still
+     * hold a version that was replaced on another instance, so an ETag that does not
+     * match is checked again against Redis before the request fails.
+     */
+    private PlanDocument getCurrent(String key, List<String> ifMatch) {
+        PlanDocument current = planService.getPlanDocument(key, List.of());
+        if (current != null && !matches(ifMatch, current.getETag()))
+            return planService.getStoredPlanDocument(key);
+        return current;
+    }
 
-        String newEtag = planService.patchPlan(planObject);
+    private static boolean matches(List<String> ifMatch, String eTag) {
+        return ifMatch.contains("*") || ifMatch.contains(eTag);
+    }
 
-        String key = "plan_" + objectId;
-        JSONObject objectToReturn = planService.getPlan(key);
+    private static ResponseEntity<Object> preconditionFailed(String message) {
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+                .body(new JSONObject().put("Message", message).toString());
+    }
 
-        // Send message to queue for index update
-        sendToQueue("SAVE", medicalPlan);
-        return ResponseEntity.status(HttpStatus.OK).eTag(newEtag).body(objectToReturn.toString());
+    private List<String> getIfNoneMatch(HttpHeaders headers) throws BadRequestException {
+        // Check if the ETag provided is not corrupt
+        try {
+            return eTagService.parseETags(headers.get("if-none-match"));
+        } catch (Exception e) {
+            throw new BadRequestException("ETag value invalid! Make sure the ETag value is a string!");
+        }
     }
 
-    private void sendToQueue(String operation, String body) {
-        Map<String, String> message = new HashMap<>();
-        message.put("operation", operation);
-        message.put("body", body);
+    private ResponseEntity<?> toResponse(PlanDocument document) {
+        if (document == null)
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new JSONObject().put("Message", "ObjectId does not exist").toString());
+
+        if (document.isNotModified())
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(document.getETag()).build();
 
-        System.out.println("Sending message: " + message);
-        template.convertAndSend(exchange, routingKey, message, m -> {
-            m.getMessageProperties().setContentType("application/json");
-            return m;
-        });
+        return ResponseEntity.ok().eTag(document.getETag()).body(document.getBody());
     }
 }
@@ -0,0 +1,50 @@
+package com.neu.AdvBigDataIndexing.controller;
+
+import com.neu.AdvBigDataIndexing.service.PlanExporter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+@RequiredArgsConstructor
+@RestController
+@RequestMapping(path = "/api/v1/plan/_export")
+public class PlanExportController {
+    private static final String NDJSON = "application/x-ndjson";
+
+    private final PlanExporter planExporter;
+
+    /**
+     * Streams every plan as one NDJSON line, chunked, gzip-compressed when the client
+     * accepts it.
+     */
+    @GetMapping(value = "", produces = NDJSON)
+    public void exportPlans(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip)
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+
+        OutputStream out = response.getOutputStream();
+        if (gzip) {
+            // Sync flush so every page is sent as it is written
+            try (GZIPOutputStream compressed = new GZIPOutputStream(out, 64 * 1024, true)) {
+                planExporter.export(compressed);
+            }
+        } else {
+            planExporter.export(out);
+        }
+    }
+}
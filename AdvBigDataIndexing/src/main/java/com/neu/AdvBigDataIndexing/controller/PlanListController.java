@@ -0,0 +1,67 @@
+package com.neu.AdvBigDataIndexing.controller;
+
+import com.neu.AdvBigDataIndexing.model.PlanListCriteria;
+import com.neu.AdvBigDataIndexing.repository.PlanIndexes;
+import com.neu.AdvBigDataIndexing.service.PlanListService;
+import lombok.RequiredArgsConstructor;
+import org.apache.coyote.BadRequestException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RequiredArgsConstructor
+@RestController
+@RequestMapping(path = "/api/v1/plan")
+public class PlanListController {
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final PlanListService planListService;
+
+    /**
+     * Lists plans by organization, creationDate range ({@code from}/{@code to}, as
+     * MM-dd-yyyy or yyyy-MM-dd), plan type and plan cost share ranges, straight from
+     * Redis. Pass the returned {@code next} cursor to get the following page.
+     */
+    @GetMapping(value = "", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> listPlans(@RequestParam(required = false) String org,
+                                       @RequestParam(required = false) String planType,
+                                       @RequestParam(required = false) String from,
+                                       @RequestParam(required = false) String to,
+                                       @RequestParam(required = false) Integer minCopay,
+                                       @RequestParam(required = false) Integer maxCopay,
+                                       @RequestParam(required = false) Integer minDeductible,
+                                       @RequestParam(required = false) Integer maxDeductible,
+                                       @RequestParam(defaultValue = "20") int size,
+                                       @RequestParam(required = false) String cursor) throws BadRequestException {
+        if (size < 1 || size > MAX_PAGE_SIZE)
+            throw new BadRequestException("size must be between 1 and " + MAX_PAGE_SIZE);
+
+        Map.Entry<Long, String> after = null;
+        if (cursor != null) {
+            try {
+                after = PlanListService.decodeCursor(cursor);
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Invalid cursor!");
+            }
+        }
+
+        PlanListCriteria criteria = new PlanListCriteria(org, planType, day("from", from), day("to", to),
+                minCopay, maxCopay, minDeductible, maxDeductible, size,
+                after == null ? null : after.getKey(), after == null ? null : after.getValue());
+        return ResponseEntity.ok(planListService.list(criteria));
+    }
+
+    private static Long day(String name, String date) throws BadRequestException {
+        if (date == null)
+            return null;
+        Long day = PlanIndexes.parseDate(date);
+        if (day == null)
+            throw new BadRequestException(name + " must be a date as MM-dd-yyyy or yyyy-MM-dd");
+        return day;
+    }
+}
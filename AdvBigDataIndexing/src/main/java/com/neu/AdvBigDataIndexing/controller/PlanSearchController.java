@@ -0,0 +1,55 @@
+package com.neu.AdvBigDataIndexing.controller;
+
+import com.neu.AdvBigDataIndexing.model.PlanSearchCriteria;
+import com.neu.AdvBigDataIndexing.service.PlanSearchService;
+import lombok.RequiredArgsConstructor;
+import org.apache.coyote.BadRequestException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.List;
+
+@RequiredArgsConstructor
+@RestController
+@RequestMapping(path = "/api/v1/plan/search")
+public class PlanSearchController {
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final PlanSearchService planSearchService;
+
+    /**
+     * Finds plans by organization, plan type, plan cost share ranges and linked service
+     * names. Pass the returned {@code next} cursor to get the following page.
+     */
+    @GetMapping(value = "", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> searchPlans(@RequestParam(required = false) String org,
+                                         @RequestParam(required = false) String planType,
+                                         @RequestParam(required = false) Integer minCopay,
+                                         @RequestParam(required = false) Integer maxCopay,
+                                         @RequestParam(required = false) Integer minDeductible,
+                                         @RequestParam(required = false) Integer maxDeductible,
+                                         @RequestParam(required = false) List<String> service,
+                                         @RequestParam(defaultValue = "20") int size,
+                                         @RequestParam(required = false) String cursor) throws IOException, BadRequestException {
+        if (size < 1 || size > MAX_PAGE_SIZE)
+            throw new BadRequestException("size must be between 1 and " + MAX_PAGE_SIZE);
+
+        String after = null;
+        if (cursor != null) {
+            try {
+                after = PlanSearchService.decodeCursor(cursor);
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Invalid cursor!");
+            }
+        }
+
+        PlanSearchCriteria criteria = new PlanSearchCriteria(org, planType, minCopay, maxCopay,
+                minDeductible, maxDeductible, service, size, after);
+        return ResponseEntity.ok(planSearchService.search(criteria));
+    }
+}
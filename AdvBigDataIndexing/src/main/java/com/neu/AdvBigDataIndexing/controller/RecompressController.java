@@ -0,0 +1,37 @@
+package com.neu.AdvBigDataIndexing.controller;
+
+import com.neu.AdvBigDataIndexing.repository.PlanCodec;
+import com.neu.AdvBigDataIndexing.service.PlanRecompressor;
+import lombok.RequiredArgsConstructor;
+import org.apache.coyote.BadRequestException;
+import org.json.JSONObject;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RequiredArgsConstructor
+@RestController
+@RequestMapping(path = "/api/v1/plan/_recompress")
+public class RecompressController {
+    private final PlanRecompressor planRecompressor;
+    private final PlanCodec planCodec;
+
+    /**
+     * Starts rewriting stored plans in the configured encoding, after training a new
+     * dictionary when {@code train} is set; progress is at /actuator/recompress.
+     */
+    @PostMapping(value = "", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> startRecompress(@RequestParam(defaultValue = "false") boolean train) throws BadRequestException {
+        if (train && !planCodec.isCompressing())
+            throw new BadRequestException("Dictionaries are only used with plan.codec=zstd");
+        if (!planRecompressor.start(train))
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new JSONObject().put("Message", "Recompression already running").toString());
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(new JSONObject().put("Message", "Recompression started").toString());
+    }
+}
@@ -0,0 +1,25 @@
+package com.neu.AdvBigDataIndexing.controller;
+
+import com.neu.AdvBigDataIndexing.service.PlanRecompressor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Progress of the last storage migration at {@code /actuator/recompress}. It is started
+ * through the authenticated {@code POST /api/v1/plan/_recompress}.
+ */
+@Component
+@Endpoint(id = "recompress")
+@RequiredArgsConstructor
+public class RecompressEndpoint {
+    private final PlanRecompressor planRecompressor;
+
+    @ReadOperation
+    public Map<String, Object> progress() {
+        return planRecompressor.getProgress();
+    }
+}
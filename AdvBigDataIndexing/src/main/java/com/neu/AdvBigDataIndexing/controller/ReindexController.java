@@ -0,0 +1,30 @@
+package com.neu.AdvBigDataIndexing.controller;
+
+import com.neu.AdvBigDataIndexing.service.PlanReindexer;
+import lombok.RequiredArgsConstructor;
+import org.json.JSONObject;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RequiredArgsConstructor
+@RestController
+@RequestMapping(path = "/api/v1/plan/_reindex")
+public class ReindexController {
+    private final PlanReindexer planReindexer;
+
+    /**
+     * Starts rebuilding the plan index from Redis; progress is at /actuator/reindex.
+     */
+    @PostMapping(value = "", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> startReindex() {
+        if (!planReindexer.start())
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new JSONObject().put("Message", "Reindex already running").toString());
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(new JSONObject().put("Message", "Reindex started").toString());
+    }
+}
@@ -0,0 +1,25 @@
+package com.neu.AdvBigDataIndexing.controller;
+
+import com.neu.AdvBigDataIndexing.service.PlanReindexer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Progress and throughput of the last reindex at {@code /actuator/reindex}. Reindexing
+ * is started through the authenticated {@code POST /api/v1/plan/_reindex}.
+ */
+@Component
+@Endpoint(id = "reindex")
+@RequiredArgsConstructor
+public class ReindexEndpoint {
+    private final PlanReindexer planReindexer;
+
+    @ReadOperation
+    public Map<String, Object> progress() {
+        return planReindexer.getProgress();
+    }
+}
@@ -0,0 +1,87 @@
+package com.neu.AdvBigDataIndexing.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexing message sent to the indexing lanes. The plan is already flattened into
+ * search documents: the consumer deletes {@code deletes} and then indexes
+ * {@code upserts} without parsing the plan again.
+ */
+public class IndexingMessage {
+    public static final int CURRENT_VERSION = 1;
+
+    private final int version;
+    private final String operation;
+    private final String planId;
+    private final List<Document> upserts;
+    private final List<Document> deletes;
+
+    @JsonCreator
+    public IndexingMessage(@JsonProperty("version") int version,
+                           @JsonProperty("operation") String operation,
+                           @JsonProperty("planId") String planId,
+                           @JsonProperty("upserts") List<Document> upserts,
+                           @JsonProperty("deletes") List<Document> deletes) {
+        this.version = version;
+        this.operation = operation;
+        this.planId = planId;
+        this.upserts = upserts == null ? List.of() : upserts;
+        this.deletes = deletes == null ? List.of() : deletes;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getPlanId() {
+        return planId;
+    }
+
+    public List<Document> getUpserts() {
+        return upserts;
+    }
+
+    public List<Document> getDeletes() {
+        return deletes;
+    }
+
+    /**
+     * A search document; the source is null for deletes.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Document {
+        private final String id;
+        private final String routing;
+        private final Map<String, Object> source;
+
+        @JsonCreator
+        public Document(@JsonProperty("id") String id,
+                        @JsonProperty("routing") String routing,
+                        @JsonProperty("source") Map<String, Object> source) {
+            this.id = id;
+            this.routing = routing;
+            this.source = source;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getRouting() {
+            return routing;
+        }
+
+        public Map<String, Object> getSource() {
+            return source;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.neu.AdvBigDataIndexing.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An encoded indexing message stored in the Redis outbox stream until it has been
+ * published. The id is the stream entry id and is null until the event has been read back.
+ * {@code writtenAt} is the epoch millisecond at which the change was made; it travels
+ * with the message so consumers can measure how long indexing lags behind writes.
+ * {@code planVersion} is assigned by the outbox when the event is appended, and is
+ * null for events appended before plans were versioned.
+ */
+public class OutboxEvent {
+    private static final String PLAN_ID_FIELD = "planId";
+    private static final String CONTENT_TYPE_FIELD = "contentType";
+    private static final String PAYLOAD_FIELD = "payload";
+    private static final String WRITTEN_AT_FIELD = "writtenAt";
+    private static final String PLAN_VERSION_FIELD = "planVersion";
+
+    private final String id;
+    private final String planId;
+    private final String contentType;
+    private final byte[] payload;
+    private final long writtenAt;
+    private final Long planVersion;
+
+    public OutboxEvent(String planId, String contentType, byte[] payload) {
+        this(null, planId, contentType, payload, System.currentTimeMillis(), null);
+    }
+
+    private OutboxEvent(String id, String planId, String contentType, byte[] payload, long writtenAt, Long planVersion) {
+        this.id = id;
+        this.planId = planId;
+        this.contentType = contentType;
+        this.payload = payload;
+        this.writtenAt = writtenAt;
+        this.planVersion = planVersion;
+    }
+
+    /**
+     * Events appended before {@code writtenAt} was stored fall back to the time part of
+     * the stream entry id, which Redis assigns when the entry is appended.
+     */
+    public static OutboxEvent fromFields(String id, Map<String, byte[]> fields) {
+        String writtenAt = string(fields.get(WRITTEN_AT_FIELD));
+        String planVersion = string(fields.get(PLAN_VERSION_FIELD));
+        return new OutboxEvent(id, string(fields.get(PLAN_ID_FIELD)), string(fields.get(CONTENT_TYPE_FIELD)), fields.get(PAYLOAD_FIELD),
+                writtenAt != null ? Long.parseLong(writtenAt) : Long.parseLong(id.substring(0, id.indexOf('-'))),
+                planVersion != null ? Long.valueOf(planVersion) : null);
+    }
+
+    public Map<byte[], byte[]> toFields() {
+        Map<byte[], byte[]> fields = new HashMap<>();
+        fields.put(bytes(PLAN_ID_FIELD), bytes(planId));
+        fields.put(bytes(CONTENT_TYPE_FIELD), bytes(contentType));
+        fields.put(bytes(PAYLOAD_FIELD), payload);
+        fields.put(bytes(WRITTEN_AT_FIELD), bytes(String.valueOf(writtenAt)));
+        return fields;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getPlanId() {
+        return planId;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public long getWrittenAt() {
+        return writtenAt;
+    }
+
+    public Long getPlanVersion() {
+        return planVersion;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,29 @@
+package com.neu.AdvBigDataIndexing.model;
+
+/**
+ * A stored plan as read from Redis: the serialized JSON bytes and the ETag that was
+ * computed when they were written. The body is null when the caller already holds
+ * the current version.
+ */
+public class PlanDocument {
+
+    private final String eTag;
+    private final byte[] body;
+
+    public PlanDocument(String eTag, byte[] body) {
+        this.eTag = eTag;
+        this.body = body;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public boolean isNotModified() {
+        return body == null;
+    }
+}
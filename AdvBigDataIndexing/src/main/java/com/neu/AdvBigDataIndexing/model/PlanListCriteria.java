@@ -0,0 +1,24 @@
+package com.neu.AdvBigDataIndexing.model;
+
+import lombok.Value;
+
+/**
+ * Filters of a plan listing answered from the Redis indexes. Null filters are not
+ * applied; dates are days since 1970-01-01 and cost share ranges apply to the plan's
+ * own cost shares. The page starts after the plan {@code afterId} created on
+ * {@code afterDay}, when set.
+ */
+@Value
+public class PlanListCriteria {
+    String org;
+    String planType;
+    Long fromDay;
+    Long toDay;
+    Integer minCopay;
+    Integer maxCopay;
+    Integer minDeductible;
+    Integer maxDeductible;
+    int size;
+    Long afterDay;
+    String afterId;
+}
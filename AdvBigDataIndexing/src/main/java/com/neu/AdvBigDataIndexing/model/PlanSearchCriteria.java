@@ -0,0 +1,23 @@
+package com.neu.AdvBigDataIndexing.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Filters of a plan search. Null filters are not applied; cost share ranges apply to
+ * the plan's own cost shares and every service name has to be linked to the plan.
+ * {@code after} is the objectId the page starts after. Also used as the result cache key.
+ */
+@Value
+public class PlanSearchCriteria {
+    String org;
+    String planType;
+    Integer minCopay;
+    Integer maxCopay;
+    Integer minDeductible;
+    Integer maxDeductible;
+    List<String> services;
+    int size;
+    String after;
+}
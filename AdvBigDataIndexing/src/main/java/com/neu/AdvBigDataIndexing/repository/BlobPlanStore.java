@@ -0,0 +1,329 @@
+package com.neu.AdvBigDataIndexing.repository;
+
+import com.neu.AdvBigDataIndexing.model.OutboxEvent;
+import com.neu.AdvBigDataIndexing.model.PlanDocument;
+import com.neu.AdvBigDataIndexing.service.ETagService;
+import com.neu.AdvBigDataIndexing.util.CanonicalJson;
+import lombok.RequiredArgsConstructor;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores each plan as one serialized document in a hash: {@code plan_<id> -> {doc, etag}}.
+ * The document is the canonical serialization, encoded by {@link PlanCodec}, and the
+ * ETag is hashed from the canonical bytes, so it does not change when a document is
+ * recompressed.
+ */
+@Repository
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "plan.storage.mode", havingValue = "blob", matchIfMissing = true)
+public class BlobPlanStore implements PlanStore {
+    private static final String DOC_FIELD = "doc";
+    private static final String ETAG_FIELD = "etag";
+
+    /**
+     * Returns {etag} when one of ARGV matches the stored ETag, {etag, doc} otherwise,
+     * and nil when the plan does not exist.
+     */
+    private static final LuaScript GET_IF_NONE_MATCH = LuaScript.of("""
+            local etag = redis.call('HGET', KEYS[1], 'etag')
+            if not etag then
+                return nil
+            end
+            for i = 1, #ARGV do
+                if ARGV[i] == etag then
+                    return {etag}
+                end
+            end
+            return {etag, redis.call('HGET', KEYS[1], 'doc')}
+            """);
+
+    /**
+     * Only when the stored ETag equals ARGV[1]: writes ARGV[2] as doc and ARGV[3] as
+     * etag, moves plan ARGV[4] (unless empty) to the ARGV[5] indexes in KEYS[5..], with
+     * their (z|s, score) pairs following in ARGV and KEYS[3] as its entries key, and
+     * appends the outbox event fields after them (if any) to KEYS[2], versioned in
+     * KEYS[4]. Returns 1 when written and 0 when the plan changed or no longer exists.
+     */
+    private static final LuaScript COMPARE_AND_SET = LuaScript.of(PlanIndexes.REINDEX_FUNCTION + Outbox.APPEND_FUNCTION + """
+            if redis.call('HGET', KEYS[1], 'etag') ~= ARGV[1] then
+                return 0
+            end
+            redis.call('HSET', KEYS[1], 'doc', ARGV[2], 'etag', ARGV[3])
+            local count = tonumber(ARGV[5])
+            if ARGV[4] ~= '' then
+                reindex(KEYS[3], ARGV[4], 5, 6, count)
+            end
+            local last = 5 + 2 * count
+            if #ARGV > last then
+                append(KEYS[2], KEYS[4], last + 1)
+            end
+            return 1
+            """);
+
+    private final RedisRepository redisRepository;
+    private final ETagService eTagService;
+    private final Outbox outbox;
+    private final PlanCodec planCodec;
+    private final PlanIndexes planIndexes;
+
+    @Override
+    public boolean exists(String key) {
+        return redisRepository.exists(key);
+    }
+
+    @Override
+    public Set<String> existing(List<String> keys) {
+        List<Object> replies = redisRepository.pipelined(p -> keys.forEach(p::exists));
+        Set<String> existing = new HashSet<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (Boolean.TRUE.equals(replies.get(i)))
+                existing.add(keys.get(i));
+        }
+        return existing;
+    }
+
+    @Override
+    public String getETag(String key) {
+        return redisRepository.hget(key, ETAG_FIELD);
+    }
+
+    @Override
+    public PlanDocument read(String key, List<String> ifNoneMatch) {
+        List<byte[]> args = new ArrayList<>(ifNoneMatch.size());
+        for (String eTag : ifNoneMatch) {
+            args.add(eTag.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Object reply = redisRepository.eval(GET_IF_NONE_MATCH, List.of(key.getBytes(StandardCharsets.UTF_8)), args);
+        if (!(reply instanceof List<?> values) || values.isEmpty())
+            return null;
+
+        String eTag = new String((byte[]) values.get(0), StandardCharsets.UTF_8);
+        byte[] body = values.size() > 1 ? planCodec.decode((byte[]) values.get(1)) : null;
+        return new PlanDocument(eTag, body);
+    }
+
+    /**
+     * Returns the canonical bytes of the stored documents, in one round trip.
+     */
+    @Override
+    public List<byte[]> readDocuments(List<String> keys) {
+        byte[] field = DOC_FIELD.getBytes(StandardCharsets.UTF_8);
+        List<Object> replies = redisRepository.pipelined(p -> keys.forEach(
+                key -> p.hget(key.getBytes(StandardCharsets.UTF_8), field)));
+        List<byte[]> documents = new ArrayList<>(replies.size());
+        replies.forEach(reply -> documents.add(planCodec.decode((byte[]) reply)));
+        return documents;
+    }
+
+    @Override
+    public JSONObject readPlan(String key) {
+        byte[] document = planCodec.decode(redisRepository.execute("hget", jedis -> jedis.hget(bytes(key), bytes(DOC_FIELD))));
+
+        // Convert the document back to a JSONObject
+        if (document != null && document.length > 0) {
+            return new JSONObject(new String(document, StandardCharsets.UTF_8));
+        }
+        // Return an empty JSONObject if the key does not exist
+        return new JSONObject();
+    }
+
+    @Override
+    public JSONObject readObject(String key, String objectId, Set<String> fields) {
+        JSONObject object = findObject(readPlan(key), objectId);
+        if (object == null || fields == null)
+            return object;
+
+        JSONObject projection = new JSONObject();
+        for (String property : object.keySet()) {
+            if (fields.contains(property) || "objectId".equals(property) || "objectType".equals(property))
+                projection.put(property, object.get(property));
+        }
+        return projection;
+    }
+
+    @Override
+    public String save(String key, JSONObject plan, OutboxEvent event) {
+        return save(key, plan, CanonicalJson.toBytes(plan), event).getETag();
+    }
+
+    @Override
+    public List<String> saveAll(List<String> keys, List<JSONObject> plans, List<OutboxEvent> events) {
+        List<String> eTags = new ArrayList<>(keys.size());
+        List<byte[]> documents = new ArrayList<>(keys.size());
+        for (JSONObject plan : plans) {
+            byte[] document = CanonicalJson.toBytes(plan);
+            documents.add(document);
+            eTags.add(eTagService.getETag(document));
+        }
+
+        redisRepository.transaction(t -> {
+            for (int i = 0; i < keys.size(); i++) {
+                // Also drops a plan still stored as a string
+                t.del(keys.get(i));
+                t.hset(bytes(keys.get(i)), fields(planCodec.encode(documents.get(i)), eTags.get(i)));
+                planIndexes.update(t, planId(keys.get(i)), plans.get(i));
+                outbox.append(t, events.get(i));
+            }
+        });
+        return eTags;
+    }
+
+    @Override
+    public String replace(String key, JSONObject plan, String expectedETag, OutboxEvent event) {
+        PlanDocument written = compareAndSet(key, plan, CanonicalJson.toBytes(plan), expectedETag, event);
+        return written == null ? null : written.getETag();
+    }
+
+    @Override
+    public PlanDocument patch(String key, JSONObject patch, JSONObject merged, String expectedETag, OutboxEvent event) {
+        return compareAndSet(key, merged, CanonicalJson.toBytes(merged), expectedETag, event);
+    }
+
+    /**
+     * Re-encodes the documents that are not in the configured encoding. Each one is
+     * written with its unchanged ETag and only if that still is the stored ETag, so a
+     * concurrent write is never overwritten and nothing is queued for indexing.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int recompress(List<String> keys) {
+        byte[] docField = bytes(DOC_FIELD);
+        byte[] eTagField = bytes(ETAG_FIELD);
+        List<Object> replies = redisRepository.pipelined(p -> keys.forEach(
+                key -> p.hmget(bytes(key), docField, eTagField)));
+
+        int rewritten = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            List<byte[]> values = (List<byte[]>) replies.get(i);
+            byte[] document = values.get(0);
+            byte[] eTag = values.get(1);
+            // An empty value is no plan, so there is nothing to recompress
+            if (document == null || document.length == 0 || eTag == null || planCodec.isCurrent(document))
+                continue;
+
+            byte[] encoded = planCodec.encode(planCodec.decode(document));
+            // Same content, so the indexes stay as they are
+            Object reply = redisRepository.eval(COMPARE_AND_SET, List.of(bytes(keys.get(i)), outbox.streamKey(), bytes(""), bytes("")),
+                    List.of(eTag, encoded, eTag, bytes(""), bytes("0")));
+            if (Long.valueOf(1).equals(reply))
+                rewritten++;
+        }
+        return rewritten;
+    }
+
+    @Override
+    public int upgrade(List<String> keys) {
+        List<Object> types = redisRepository.pipelined(p -> keys.forEach(p::type));
+        int upgraded = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            if (!"string".equals(types.get(i)))
+                continue;
+            String key = keys.get(i);
+            String value = redisRepository.get(key);
+            if (value == null)
+                continue;
+
+            byte[] document = CanonicalJson.toBytes(new JSONObject(value));
+            String eTag = eTagService.getETag(document);
+            List<Object> written = redisRepository.transactionIfString(key, value, t -> {
+                t.del(key);
+                t.hset(bytes(key), fields(planCodec.encode(document), eTag));
+            });
+            if (written != null)
+                upgraded++;
+        }
+        return upgraded;
+    }
+
+    @Override
+    public boolean delete(String key, String expectedETag, OutboxEvent event) {
+        return redisRepository.transactionIf(key, ETAG_FIELD, expectedETag, t -> {
+            t.del(key);
+            planIndexes.remove(t, planId(key));
+            outbox.append(t, event);
+        }) != null;
+    }
+
+    private JSONObject findObject(JSONObject object, String objectId) {
+        if (objectId.equals(object.optString("objectId")))
+            return object;
+        for (String property : object.keySet()) {
+            Object value = object.get(property);
+            if (value instanceof JSONObject child) {
+                JSONObject found = findObject(child, objectId);
+                if (found != null)
+                    return found;
+            } else if (value instanceof JSONArray array) {
+                for (Object item : array) {
+                    if (item instanceof JSONObject child) {
+                        JSONObject found = findObject(child, objectId);
+                        if (found != null)
+                            return found;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores the document together with its ETag so reads never have to re-hash it.
+     */
+    private PlanDocument save(String key, JSONObject plan, byte[] document, OutboxEvent event) {
+        String eTag = eTagService.getETag(document);
+        redisRepository.transaction(t -> {
+            t.del(key);
+            t.hset(bytes(key), fields(planCodec.encode(document), eTag));
+            planIndexes.update(t, planId(key), plan);
+            outbox.append(t, event);
+        });
+        return new PlanDocument(eTag, document);
+    }
+
+    /**
+     * Checks the ETag, writes the document, updates the indexes and appends the event
+     * in one round trip.
+     */
+    private PlanDocument compareAndSet(String key, JSONObject plan, byte[] document, String expectedETag, OutboxEvent event) {
+        String eTag = eTagService.getETag(document);
+        String planId = planId(key);
+        PlanIndexes.Entries entries = PlanIndexes.entries(plan);
+        List<byte[]> keys = new ArrayList<>(List.of(bytes(key), outbox.streamKey(),
+                PlanIndexes.entriesKey(planId), Outbox.versionKey(planId)));
+        keys.addAll(entries.getKeys());
+        List<byte[]> args = new ArrayList<>();
+        args.add(bytes(expectedETag));
+        args.add(planCodec.encode(document));
+        args.add(bytes(eTag));
+        args.add(bytes(planId));
+        args.add(bytes(String.valueOf(entries.size())));
+        args.addAll(entries.getArgs());
+        args.addAll(Outbox.fieldArgs(event));
+
+        Object reply = redisRepository.eval(COMPARE_AND_SET, keys, args);
+        return Long.valueOf(1).equals(reply) ? new PlanDocument(eTag, document) : null;
+    }
+
+    private static String planId(String key) {
+        return key.substring(key.indexOf('_') + 1);
+    }
+
+    private static Map<byte[], byte[]> fields(byte[] document, String eTag) {
+        return Map.of(bytes(DOC_FIELD), document, bytes(ETAG_FIELD), bytes(eTag));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,620 @@
+package com.neu.AdvBigDataIndexing.repository;
+
+import com.neu.AdvBigDataIndexing.model.OutboxEvent;
+import com.neu.AdvBigDataIndexing.model.PlanDocument;
+import com.neu.AdvBigDataIndexing.service.ETagService;
+import com.neu.AdvBigDataIndexing.util.CanonicalJson;
+import lombok.RequiredArgsConstructor;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores every object that has an objectId as its own hash, so a PATCH only rewrites
+ * the objects it touches:
+ * <ul>
+ *     <li>{@code plan_<id>} - {etag}</li>
+ *     <li>{@code node_<id>:<objectId>} - scalar properties as JSON literals, plus
+ *     {@code @<property> = object|array} for every property that holds child objects</li>
+ *     <li>{@code node_<id>:<objectId>:<property>} - sorted set of child objectIds,
+ *     scored by their position in the array</li>
+ *     <li>{@code nodes_<id>} - every node and edge key of the plan</li>
+ * </ul>
+ * Reads reassemble the tree one level at a time with pipelined commands. Writes that
+ * replace the nodes listed in {@code nodes_<id>} WATCH it while reading it. Node keys
+ * are built from objectIds alone, so a plan must not use an objectId twice.
+ */
+@Repository
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "plan.storage.mode", havingValue = "graph")
+public class GraphPlanStore implements PlanStore {
+    private static final String ETAG_FIELD = "etag";
+    private static final String EDGE_PREFIX = "@";
+    private static final String OBJECT_EDGE = "object";
+    private static final String ARRAY_EDGE = "array";
+    private static final int SAVE_ATTEMPTS = 5;
+
+    private final RedisRepository redisRepository;
+    private final ETagService eTagService;
+    private final Outbox outbox;
+    private final PlanIndexes planIndexes;
+
+    @Override
+    public boolean exists(String key) {
+        return redisRepository.exists(key);
+    }
+
+    @Override
+    public Set<String> existing(List<String> keys) {
+        List<Object> replies = redisRepository.pipelined(p -> keys.forEach(p::exists));
+        Set<String> existing = new HashSet<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (Boolean.TRUE.equals(replies.get(i)))
+                existing.add(keys.get(i));
+        }
+        return existing;
+    }
+
+    @Override
+    public String getETag(String key) {
+        return redisRepository.hget(key, ETAG_FIELD);
+    }
+
+    @Override
+    public PlanDocument read(String key, List<String> ifNoneMatch) {
+        String eTag = getETag(key);
+        if (eTag == null)
+            return null;
+        if (ifNoneMatch.contains(eTag))
+            return new PlanDocument(eTag, null);
+
+        return new PlanDocument(eTag, CanonicalJson.toBytes(readPlan(key)));
+    }
+
+    /**
+     * Each plan is reassembled on its own, one round trip per tree level.
+     */
+    @Override
+    public List<byte[]> readDocuments(List<String> keys) {
+        List<byte[]> documents = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            JSONObject plan = readPlan(key);
+            documents.add(plan.isEmpty() ? null : CanonicalJson.toBytes(plan));
+        }
+        return documents;
+    }
+
+    @Override
+    public JSONObject readPlan(String key) {
+        String planId = planId(key);
+        String rootKey = nodeKey(planId, planId);
+        Graph graph = load(planId, List.of(rootKey));
+        if (!graph.nodes.containsKey(rootKey))
+            return new JSONObject();
+        return toJson(planId, graph, rootKey);
+    }
+
+    /**
+     * Reads only the requested object and the subtrees of the requested properties.
+     */
+    @Override
+    public JSONObject readObject(String key, String objectId, Set<String> fields) {
+        String planId = planId(key);
+        String nodeKey = nodeKey(planId, objectId);
+        Map<String, String> node = redisRepository.execute("hgetall", jedis -> jedis.hgetAll(nodeKey));
+        if (node == null || node.isEmpty())
+            return null;
+
+        Map<String, String> selected = node;
+        if (fields != null) {
+            selected = new HashMap<>();
+            for (Map.Entry<String, String> field : node.entrySet()) {
+                String property = field.getKey().startsWith(EDGE_PREFIX)
+                        ? field.getKey().substring(EDGE_PREFIX.length()) : field.getKey();
+                if (fields.contains(property) || "objectId".equals(property) || "objectType".equals(property))
+                    selected.put(field.getKey(), field.getValue());
+            }
+        }
+
+        List<String> edgeKeys = new ArrayList<>();
+        for (String field : selected.keySet()) {
+            if (field.startsWith(EDGE_PREFIX))
+                edgeKeys.add(edgeKey(nodeKey, field.substring(EDGE_PREFIX.length())));
+        }
+
+        Graph graph = new Graph();
+        graph.nodes.put(nodeKey, selected);
+        if (!edgeKeys.isEmpty()) {
+            List<Object> edgeReplies = redisRepository.pipelined(p -> edgeKeys.forEach(k -> p.zrange(k, 0, -1)));
+            List<String> childKeys = new ArrayList<>();
+            for (int i = 0; i < edgeKeys.size(); i++) {
+                Set<String> childIds = castIds(edgeReplies.get(i));
+                graph.edges.put(edgeKeys.get(i), childIds);
+                childIds.forEach(childId -> childKeys.add(nodeKey(planId, childId)));
+            }
+            Graph children = load(planId, childKeys);
+            graph.nodes.putAll(children.nodes);
+            graph.edges.putAll(children.edges);
+        }
+        return toJson(planId, graph, nodeKey);
+    }
+
+    @Override
+    public String save(String key, JSONObject plan, OutboxEvent event) {
+        return saveAll(List.of(key), List.of(plan), Collections.singletonList(event)).get(0);
+    }
+
+    /**
+     * The previous nodes are read under WATCH, and read again when another write
+     * changed them before the plans were written.
+     */
+    @Override
+    public List<String> saveAll(List<String> keys, List<JSONObject> plans, List<OutboxEvent> events) {
+        List<String> eTags = new ArrayList<>(keys.size());
+        for (JSONObject plan : plans) {
+            requireUniqueObjectIds(plan);
+            eTags.add(eTagService.getETag(plan));
+        }
+
+        List<String> membersKeys = new ArrayList<>(keys.size());
+        keys.forEach(key -> membersKeys.add(membersKey(planId(key))));
+        for (int attempt = 0; attempt < SAVE_ATTEMPTS; attempt++) {
+            List<Object> written = redisRepository.transactionWatching(membersKeys, jedis -> {
+                Pipeline pipeline = jedis.pipelined();
+                membersKeys.forEach(pipeline::smembers);
+                return pipeline.syncAndReturnAll();
+            }, (t, previousKeys) -> {
+                for (int i = 0; i < keys.size(); i++) {
+                    writePlan(t, keys.get(i), castIds(previousKeys.get(i)), plans.get(i), eTags.get(i), events.get(i));
+                }
+            });
+            if (written != null)
+                return eTags;
+        }
+        throw new IllegalStateException("Plans kept changing while saving " + keys.size() + " plans");
+    }
+
+    /**
+     * The ETag is checked and the previous nodes are read under WATCH.
+     */
+    @Override
+    public String replace(String key, JSONObject plan, String expectedETag, OutboxEvent event) {
+        requireUniqueObjectIds(plan);
+        String eTag = eTagService.getETag(plan);
+        List<Object> written = redisRepository.transactionWatching(List.of(key, membersKey(planId(key))),
+                jedis -> previousKeys(jedis, key, expectedETag),
+                (t, previousKeys) -> writePlan(t, key, previousKeys, plan, eTag, event));
+        return written == null ? null : eTag;
+    }
+
+    @Override
+    public PlanDocument patch(String key, JSONObject patch, JSONObject merged, String expectedETag, OutboxEvent event) {
+        requireUniqueObjectIds(merged);
+        String planId = planId(key);
+
+        // Read the current fields and edges of every object the patch touches
+        List<JSONObject> patchObjects = new ArrayList<>();
+        collectObjects(patch, patchObjects);
+        List<Object> replies = redisRepository.pipelined(p -> {
+            p.hget(key, ETAG_FIELD);
+            for (JSONObject object : patchObjects) {
+                String nodeKey = nodeKey(planId, object.getString("objectId"));
+                p.hgetAll(nodeKey);
+                for (String property : object.keySet()) {
+                    p.zrange(edgeKey(nodeKey, property), 0, -1);
+                }
+            }
+        });
+
+        if (!expectedETag.equals(replies.get(0)))
+            return null;
+
+        Graph current = new Graph();
+        int reply = 1;
+        for (JSONObject object : patchObjects) {
+            String nodeKey = nodeKey(planId, object.getString("objectId"));
+            current.nodes.put(nodeKey, castFields(replies.get(reply++)));
+            for (String property : object.keySet()) {
+                current.edges.put(edgeKey(nodeKey, property), castIds(replies.get(reply++)));
+            }
+        }
+
+        // Children the patch replaces are removed together with their descendants
+        List<String> replacedNodes = new ArrayList<>();
+        findReplacedNodes(planId, patch, merged, current, replacedNodes);
+        Graph replaced = load(planId, replacedNodes);
+        List<String> obsoleteKeys = new ArrayList<>(replaced.nodes.keySet());
+        obsoleteKeys.addAll(replaced.edges.keySet());
+
+        // Same ETag as a full save of the merged plan
+        byte[] document = CanonicalJson.toBytes(merged);
+        String eTag = eTagService.getETag(document);
+        // Nodes read above belong to the expected version as long as the ETag is unchanged
+        List<Object> written = redisRepository.transactionIf(key, ETAG_FIELD, expectedETag, t -> {
+            if (!obsoleteKeys.isEmpty()) {
+                String[] keys = obsoleteKeys.toArray(new String[0]);
+                t.del(keys);
+                t.srem(membersKey(planId), keys);
+            }
+            mergeNode(t, planId, patch, merged, current);
+            t.hset(key, ETAG_FIELD, eTag);
+            planIndexes.update(t, planId, merged);
+            outbox.append(t, event);
+        });
+        return written == null ? null : new PlanDocument(eTag, document);
+    }
+
+    /**
+     * Nodes are small hashes of scalar fields and are stored uncompressed.
+     */
+    @Override
+    public int recompress(List<String> keys) {
+        return 0;
+    }
+
+    /**
+     * A plan stored as a string has no nodes yet; writing it replaces the string.
+     * Plans that use an objectId twice cannot be stored as nodes and stay strings.
+     */
+    @Override
+    public int upgrade(List<String> keys) {
+        List<Object> types = redisRepository.pipelined(p -> keys.forEach(p::type));
+        int upgraded = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            if (!"string".equals(types.get(i)))
+                continue;
+            String key = keys.get(i);
+            String value = redisRepository.get(key);
+            if (value == null)
+                continue;
+
+            JSONObject plan = new JSONObject(value);
+            if (!hasUniqueObjectIds(plan))
+                continue;
+            String eTag = eTagService.getETag(plan);
+            List<Object> written = redisRepository.transactionIfString(key, value,
+                    t -> writePlan(t, key, Set.of(), plan, eTag, null));
+            if (written != null)
+                upgraded++;
+        }
+        return upgraded;
+    }
+
+    @Override
+    public boolean delete(String key, String expectedETag, OutboxEvent event) {
+        String planId = planId(key);
+        return redisRepository.transactionWatching(List.of(key, membersKey(planId)),
+                jedis -> previousKeys(jedis, key, expectedETag), (t, previousKeys) -> {
+                    Set<String> keys = new HashSet<>(previousKeys);
+                    keys.add(membersKey(planId));
+                    keys.add(key);
+                    t.del(keys.toArray(new String[0]));
+                    planIndexes.remove(t, planId);
+                    outbox.append(t, event);
+                }) != null;
+    }
+
+    /**
+     * Returns the node and edge keys of the plan, or null when it is not at
+     * {@code expectedETag}.
+     */
+    private Set<String> previousKeys(Jedis jedis, String key, String expectedETag) {
+        if (!expectedETag.equals(jedis.hget(key, ETAG_FIELD)))
+            return null;
+        return jedis.smembers(membersKey(planId(key)));
+    }
+
+    private void requireUniqueObjectIds(JSONObject plan) {
+        String duplicate = findDuplicateObjectId(plan);
+        if (duplicate != null)
+            throw new IllegalArgumentException("Duplicate objectId " + duplicate);
+    }
+
+    private boolean hasUniqueObjectIds(JSONObject plan) {
+        return findDuplicateObjectId(plan) == null;
+    }
+
+    private String findDuplicateObjectId(JSONObject plan) {
+        List<JSONObject> objects = new ArrayList<>();
+        collectObjects(plan, objects);
+        Set<String> objectIds = new HashSet<>();
+        for (JSONObject object : objects) {
+            if (!objectIds.add(object.getString("objectId")))
+                return object.getString("objectId");
+        }
+        return null;
+    }
+
+    private void writePlan(Transaction t, String key, Set<String> previousKeys, JSONObject plan, String eTag, OutboxEvent event) {
+        String planId = planId(key);
+        if (!previousKeys.isEmpty())
+            t.del(previousKeys.toArray(new String[0]));
+        t.del(membersKey(planId), key);
+        writeNode(t, planId, plan);
+        t.hset(key, ETAG_FIELD, eTag);
+        planIndexes.update(t, planId, plan);
+        outbox.append(t, event);
+    }
+
+    private void writeNode(Transaction t, String planId, JSONObject object) {
+        String nodeKey = nodeKey(planId, object.getString("objectId"));
+        Map<String, String> fields = new HashMap<>();
+
+        for (String property : object.keySet()) {
+            Object value = object.get(property);
+            List<JSONObject> children = childObjects(value);
+            if (children == null) {
+                fields.put(property, JSONObject.valueToString(value));
+                continue;
+            }
+
+            String edgeKey = edgeKey(nodeKey, property);
+            fields.put(EDGE_PREFIX + property, value instanceof JSONArray ? ARRAY_EDGE : OBJECT_EDGE);
+            for (int i = 0; i < children.size(); i++) {
+                t.zadd(edgeKey, i, children.get(i).getString("objectId"));
+                writeNode(t, planId, children.get(i));
+            }
+            t.sadd(membersKey(planId), edgeKey);
+        }
+
+        t.hset(nodeKey, fields);
+        t.sadd(membersKey(planId), nodeKey);
+    }
+
+    /**
+     * Writes the fields and edges that the patch touches with their values in
+     * {@code merged}, the matching object of JsonMerger.mergeJson's result, so the
+     * stored nodes always match the merged plan the ETag is computed from. Subtrees
+     * the patch replaces are written from {@code merged} as a whole.
+     */
+    private void mergeNode(Transaction t, String planId, JSONObject object, JSONObject merged, Graph current) {
+        String nodeKey = nodeKey(planId, object.getString("objectId"));
+        Map<String, String> existing = current.nodes.get(nodeKey);
+        if (existing == null || existing.isEmpty()) {
+            writeNode(t, planId, merged);
+            return;
+        }
+
+        Map<String, String> fields = new HashMap<>();
+        for (String property : object.keySet()) {
+            Object value = merged.get(property);
+            List<JSONObject> children = childObjects(object.get(property));
+            List<JSONObject> mergedChildren = childObjects(value);
+            String edgeKey = edgeKey(nodeKey, property);
+            String existingKind = existing.get(EDGE_PREFIX + property);
+
+            if (mergedChildren == null) {
+                String literal = JSONObject.valueToString(value);
+                if (!literal.equals(existing.get(property)))
+                    fields.put(property, literal);
+                if (existingKind != null) {
+                    t.hdel(nodeKey, EDGE_PREFIX + property);
+                    t.del(edgeKey);
+                    t.srem(membersKey(planId), edgeKey);
+                }
+                continue;
+            }
+            // An empty array merges into the existing one without changing it
+            if (children == null)
+                continue;
+
+            String kind = value instanceof JSONArray ? ARRAY_EDGE : OBJECT_EDGE;
+            Set<String> currentIds = current.edges.getOrDefault(edgeKey, Set.of());
+            if (existing.containsKey(property))
+                t.hdel(nodeKey, property);
+            if (!kind.equals(existingKind))
+                fields.put(EDGE_PREFIX + property, kind);
+
+            if (isReplaced(kind, existingKind, mergedChildren, currentIds)) {
+                t.del(edgeKey);
+                for (int i = 0; i < mergedChildren.size(); i++) {
+                    t.zadd(edgeKey, i, mergedChildren.get(i).getString("objectId"));
+                    writeNode(t, planId, mergedChildren.get(i));
+                }
+            } else {
+                int position = currentIds.size();
+                for (JSONObject child : children) {
+                    String childId = child.getString("objectId");
+                    JSONObject mergedChild = findChild(mergedChildren, childId);
+                    if (currentIds.contains(childId)) {
+                        mergeNode(t, planId, child, mergedChild, current);
+                    } else {
+                        t.zadd(edgeKey, position++, childId);
+                        writeNode(t, planId, mergedChild);
+                    }
+                }
+            }
+            t.sadd(membersKey(planId), edgeKey);
+        }
+
+        if (!fields.isEmpty())
+            t.hset(nodeKey, fields);
+    }
+
+    private void findReplacedNodes(String planId, JSONObject object, JSONObject merged, Graph current, List<String> replacedNodes) {
+        String nodeKey = nodeKey(planId, object.getString("objectId"));
+        Map<String, String> existing = current.nodes.get(nodeKey);
+        if (existing == null || existing.isEmpty())
+            return;
+
+        for (String property : object.keySet()) {
+            String existingKind = existing.get(EDGE_PREFIX + property);
+            List<JSONObject> children = childObjects(object.get(property));
+            if (existingKind == null || (children == null && childObjects(merged.get(property)) != null))
+                continue;
+
+            Object value = merged.get(property);
+            List<JSONObject> mergedChildren = childObjects(value);
+            Set<String> currentIds = current.edges.getOrDefault(edgeKey(nodeKey, property), Set.of());
+            String kind = value instanceof JSONArray ? ARRAY_EDGE : OBJECT_EDGE;
+
+            if (mergedChildren == null || isReplaced(kind, existingKind, mergedChildren, currentIds)) {
+                for (String childId : currentIds) {
+                    replacedNodes.add(nodeKey(planId, childId));
+                }
+            } else {
+                for (JSONObject child : children) {
+                    findReplacedNodes(planId, child, findChild(mergedChildren, child.getString("objectId")),
+                            current, replacedNodes);
+                }
+            }
+        }
+    }
+
+    private static JSONObject findChild(List<JSONObject> children, String objectId) {
+        for (JSONObject child : children) {
+            if (objectId.equals(child.getString("objectId")))
+                return child;
+        }
+        throw new IllegalStateException("The merged plan has no object " + objectId);
+    }
+
+    /**
+     * Arrays are merged by objectId. A single child object that changed its objectId
+     * is stored under the new one: JsonMerger merges it into the previous child, so its
+     * node is written again from the merged object.
+     */
+    private boolean isReplaced(String kind, String existingKind, List<JSONObject> children, Set<String> currentIds) {
+        if (existingKind == null)
+            return false;
+        if (!kind.equals(existingKind))
+            return true;
+        return OBJECT_EDGE.equals(kind) && !currentIds.contains(children.get(0).getString("objectId"));
+    }
+
+    /**
+     * Loads the given nodes and all of their descendants, one tree level per round trip.
+     */
+    private Graph load(String planId, Collection<String> rootNodeKeys) {
+        Graph graph = new Graph();
+        List<String> level = new ArrayList<>(rootNodeKeys);
+
+        while (!level.isEmpty()) {
+            List<String> nodeKeys = level;
+            List<Object> nodeReplies = redisRepository.pipelined(p -> nodeKeys.forEach(p::hgetAll));
+
+            List<String> edgeKeys = new ArrayList<>();
+            for (int i = 0; i < nodeKeys.size(); i++) {
+                Map<String, String> fields = castFields(nodeReplies.get(i));
+                if (fields.isEmpty())
+                    continue;
+                graph.nodes.put(nodeKeys.get(i), fields);
+                for (String field : fields.keySet()) {
+                    if (field.startsWith(EDGE_PREFIX))
+                        edgeKeys.add(edgeKey(nodeKeys.get(i), field.substring(EDGE_PREFIX.length())));
+                }
+            }
+            if (edgeKeys.isEmpty())
+                break;
+
+            List<Object> edgeReplies = redisRepository.pipelined(p -> edgeKeys.forEach(k -> p.zrange(k, 0, -1)));
+            level = new ArrayList<>();
+            for (int i = 0; i < edgeKeys.size(); i++) {
+                Set<String> childIds = castIds(edgeReplies.get(i));
+                graph.edges.put(edgeKeys.get(i), childIds);
+                for (String childId : childIds) {
+                    level.add(nodeKey(planId, childId));
+                }
+            }
+        }
+        return graph;
+    }
+
+    private JSONObject toJson(String planId, Graph graph, String nodeKey) {
+        JSONObject object = new JSONObject();
+        for (Map.Entry<String, String> field : graph.nodes.get(nodeKey).entrySet()) {
+            String name = field.getKey();
+            if (!name.startsWith(EDGE_PREFIX)) {
+                object.put(name, new JSONTokener(field.getValue()).nextValue());
+                continue;
+            }
+
+            String property = name.substring(EDGE_PREFIX.length());
+            JSONArray children = new JSONArray();
+            for (String childId : graph.edges.getOrDefault(edgeKey(nodeKey, property), Set.of())) {
+                String childKey = nodeKey(planId, childId);
+                if (graph.nodes.containsKey(childKey))
+                    children.put(toJson(planId, graph, childKey));
+            }
+
+            if (ARRAY_EDGE.equals(field.getValue()))
+                object.put(property, children);
+            else if (!children.isEmpty())
+                object.put(property, children.get(0));
+        }
+        return object;
+    }
+
+    private void collectObjects(JSONObject object, List<JSONObject> objects) {
+        objects.add(object);
+        for (String property : object.keySet()) {
+            List<JSONObject> children = childObjects(object.get(property));
+            if (children != null)
+                children.forEach(child -> collectObjects(child, objects));
+        }
+    }
+
+    /**
+     * Returns the child objects held by a property value, or null when the value is
+     * stored as a literal field.
+     */
+    private List<JSONObject> childObjects(Object value) {
+        if (value instanceof JSONObject object)
+            return object.has("objectId") ? List.of(object) : null;
+        if (value instanceof JSONArray array && !array.isEmpty()) {
+            List<JSONObject> children = new ArrayList<>(array.length());
+            for (Object item : array) {
+                if (!(item instanceof JSONObject child) || !child.has("objectId"))
+                    return null;
+                children.add(child);
+            }
+            return children;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> castFields(Object reply) {
+        return reply == null ? Map.of() : (Map<String, String>) reply;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> castIds(Object reply) {
+        return reply == null ? Set.of() : (Set<String>) reply;
+    }
+
+    private String planId(String key) {
+        return key.substring(key.indexOf('_') + 1);
+    }
+
+    private String nodeKey(String planId, String objectId) {
+        return "node_" + planId + ":" + objectId;
+    }
+
+    private String edgeKey(String nodeKey, String property) {
+        return nodeKey + ":" + property;
+    }
+
+    private String membersKey(String planId) {
+        return "nodes_" + planId;
+    }
+
+    private static class Graph {
+        private final Map<String, Map<String, String>> nodes = new HashMap<>();
+        private final Map<String, Set<String>> edges = new HashMap<>();
+    }
+}
@@ -0,0 +1,50 @@
+package com.neu.AdvBigDataIndexing.repository;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * A Lua script invoked by its SHA1 digest. The script body is only sent to Redis
+ * when the server does not have it cached yet (NOSCRIPT).
+ */
+public final class LuaScript {
+    private final byte[] source;
+    private final byte[] sha1;
+
+    private LuaScript(String source) {
+        this.source = source.getBytes(StandardCharsets.UTF_8);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(this.source);
+            this.sha1 = HexFormat.of().formatHex(digest).getBytes(StandardCharsets.US_ASCII);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static LuaScript of(String source) {
+        return new LuaScript(source);
+    }
+
+    Object eval(Jedis jedis, List<byte[]> keys, List<byte[]> args) {
+        try {
+            return jedis.evalsha(sha1, keys, args);
+        } catch (JedisNoScriptException e) {
+            return jedis.eval(source, keys, args);
+        }
+    }
+
+    /**
+     * Queues the script in a MULTI block. The body is always sent, since a NOSCRIPT
+     * error could not be retried there without breaking atomicity.
+     */
+    void eval(Transaction transaction, List<byte[]> keys, List<byte[]> args) {
+        transaction.eval(source, keys, args);
+    }
+}
@@ -0,0 +1,176 @@
+package com.neu.AdvBigDataIndexing.repository;
+
+import com.neu.AdvBigDataIndexing.model.OutboxEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Repository;
+import redis.clients.jedis.Transaction;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Redis Stream of indexing events that still have to be published. Stores append
+ * events inside the MULTI block of the plan write, so a change is either stored
+ * together with its event or not at all.
+ * <p>
+ * Every append assigns the plan a new version, stored with the event. Versions are
+ * the Redis server time in microseconds, raised when needed to stay above the plan's
+ * previous version (kept in {@code plan-version:<id>}, also after a delete), so they
+ * only ever increase per plan and are above any version Elasticsearch assigned itself.
+ */
+@Repository
+@RequiredArgsConstructor
+public class Outbox {
+    private static final byte[] STREAM_KEY = bytes("indexing-outbox");
+    private static final String RELAY_LOCK_KEY = "indexing-outbox:relay";
+    private static final String VERSION_PREFIX = "plan-version:";
+
+    /**
+     * Lua function assigning the next version in {@code versionKey} and appending the
+     * event fields in ARGV[first..] with it to {@code streamKey}. Shared by every
+     * script that appends events.
+     */
+    public static final String APPEND_FUNCTION = """
+            local function append(streamKey, versionKey, first)
+                local now = redis.call('TIME')
+                local version = tonumber(now[1]) * 1000000 + tonumber(now[2])
+                local previous = tonumber(redis.call('GET', versionKey))
+                if previous and version <= previous then
+                    version = previous + 1
+                end
+                local encoded = string.format('%d', version)
+                redis.call('SET', versionKey, encoded)
+                redis.call('XADD', streamKey, '*', 'planVersion', encoded, unpack(ARGV, first))
+            end
+            """;
+
+    /**
+     * KEYS[1] stream, KEYS[2] version key, ARGV the event fields.
+     */
+    private static final LuaScript APPEND = LuaScript.of(APPEND_FUNCTION + """
+            append(KEYS[1], KEYS[2], 1)
+            return 1
+            """);
+
+    /**
+     * Takes or extends the relay lock when it is free or already held by ARGV[1].
+     */
+    private static final LuaScript ACQUIRE = LuaScript.of("""
+            local owner = redis.call('GET', KEYS[1])
+            if owner and owner ~= ARGV[1] then
+                return 0
+            end
+            redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])
+            return 1
+            """);
+
+    private static final LuaScript RELEASE = LuaScript.of("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """);
+
+    private final RedisRepository redisRepository;
+
+    /**
+     * Key of the stream, for scripts that append events themselves.
+     */
+    public byte[] streamKey() {
+        return STREAM_KEY;
+    }
+
+    /**
+     * Key holding the last version assigned to the plan.
+     */
+    public static byte[] versionKey(String planId) {
+        return bytes(VERSION_PREFIX + planId);
+    }
+
+    /**
+     * XADD field and value arguments of {@code event}; empty for a null event.
+     */
+    public static List<byte[]> fieldArgs(OutboxEvent event) {
+        List<byte[]> args = new ArrayList<>();
+        if (event != null) {
+            event.toFields().forEach((field, value) -> {
+                args.add(field);
+                args.add(value);
+            });
+        }
+        return args;
+    }
+
+    /**
+     * Queues the append of {@code event} in the transaction; a null event is ignored.
+     */
+    public void append(Transaction transaction, OutboxEvent event) {
+        if (event != null)
+            APPEND.eval(transaction, List.of(STREAM_KEY, versionKey(event.getPlanId())), fieldArgs(event));
+    }
+
+    /**
+     * Returns the current version of each plan, null for plans not written since
+     * versions were introduced, in one round trip.
+     */
+    public List<Long> versions(List<String> planIds) {
+        List<Object> replies = redisRepository.pipelined(p -> planIds.forEach(id -> p.get(versionKey(id))));
+        List<Long> versions = new ArrayList<>(replies.size());
+        replies.forEach(reply -> versions.add(reply == null ? null : Long.valueOf(new String((byte[]) reply, StandardCharsets.UTF_8))));
+        return versions;
+    }
+
+    /**
+     * Returns up to {@code count} of the oldest events, in the order they were written.
+     * Payloads are binary, so the raw XRANGE reply of {@code [id, [field, value, ...]]}
+     * entries is decoded here.
+     */
+    public List<OutboxEvent> read(int count) {
+        List<?> entries = redisRepository.execute("xrange", jedis -> jedis.xrange(STREAM_KEY, bytes("-"), bytes("+"), count));
+        List<OutboxEvent> events = new ArrayList<>(entries.size());
+        for (Object entry : entries) {
+            List<?> idAndFields = (List<?>) entry;
+            List<?> values = (List<?>) idAndFields.get(1);
+            Map<String, byte[]> fields = new HashMap<>();
+            for (int i = 0; i + 1 < values.size(); i += 2) {
+                fields.put(new String((byte[]) values.get(i), StandardCharsets.UTF_8), (byte[]) values.get(i + 1));
+            }
+            events.add(OutboxEvent.fromFields(new String((byte[]) idAndFields.get(0), StandardCharsets.UTF_8), fields));
+        }
+        return events;
+    }
+
+    /**
+     * Removes published events from the stream.
+     */
+    public void remove(List<OutboxEvent> events) {
+        if (events.isEmpty())
+            return;
+        byte[][] ids = events.stream().map(event -> bytes(event.getId())).toArray(byte[][]::new);
+        redisRepository.execute("xdel", jedis -> jedis.xdel(STREAM_KEY, ids));
+    }
+
+    public long size() {
+        return redisRepository.execute("xlen", jedis -> jedis.xlen(STREAM_KEY));
+    }
+
+    /**
+     * Makes {@code owner} the only relay for {@code ttlMs}. Returns false while
+     * another instance holds the lock.
+     */
+    public boolean acquireRelay(String owner, long ttlMs) {
+        Object reply = redisRepository.eval(ACQUIRE, List.of(bytes(RELAY_LOCK_KEY)), List.of(bytes(owner), bytes(String.valueOf(ttlMs))));
+        return Long.valueOf(1).equals(reply);
+    }
+
+    public void releaseRelay(String owner) {
+        redisRepository.eval(RELEASE, List.of(bytes(RELAY_LOCK_KEY)), List.of(bytes(owner)));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,212 @@
+package com.neu.AdvBigDataIndexing.repository;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encoding of the stored plan documents. A document is either the canonical JSON as
+ * it is (always starting with '{'), or a versioned header followed by a zstd frame:
+ * <pre>
+ *   0x00 | format (1 = zstd) | dictionary id (4 bytes, 0 = none) | frame
+ * </pre>
+ * so documents written before compression was enabled, or with an older dictionary,
+ * stay readable. Dictionaries are trained from stored plans, kept in Redis under
+ * {@code plan-codec:dictionary:<id>} and never removed; every instance switches to the
+ * current one within {@code plan.codec.dictionary.refresh-ms}.
+ */
+@Component
+public class PlanCodec {
+    public static final String NONE = "none";
+    public static final String ZSTD = "zstd";
+
+    private static final byte MARKER = 0;
+    private static final byte ZSTD_FORMAT = 1;
+    private static final int HEADER_LENGTH = 6;
+    private static final int NO_DICTIONARY = 0;
+    // Zstd.getFrameContentSize of a frame that does not record its content size
+    private static final long CONTENT_SIZE_UNKNOWN = -1;
+    private static final String DICTIONARY_PREFIX = "plan-codec:dictionary:";
+    private static final String CURRENT_DICTIONARY = DICTIONARY_PREFIX + "current";
+    private static final String DICTIONARY_IDS = DICTIONARY_PREFIX + "ids";
+
+    private final RedisRepository redisRepository;
+    private final boolean compress;
+    private final int level;
+    private final Map<Integer, Dictionary> dictionaries = new ConcurrentHashMap<>();
+    private volatile Dictionary current;
+    private volatile boolean refreshFailing;
+
+    public PlanCodec(RedisRepository redisRepository,
+                     @Value("${plan.codec}") String codec,
+                     @Value("${plan.codec.level}") int level) {
+        if (!NONE.equals(codec) && !ZSTD.equals(codec))
+            throw new IllegalArgumentException("Unknown plan.codec " + codec + ", expected none or zstd");
+        this.redisRepository = redisRepository;
+        this.compress = ZSTD.equals(codec);
+        this.level = level;
+    }
+
+    /**
+     * Encodes canonical JSON for storage with the configured codec.
+     */
+    public byte[] encode(byte[] json) {
+        if (!compress)
+            return json;
+
+        Dictionary dictionary = current;
+        byte[] frame = dictionary == null ? Zstd.compress(json, level) : Zstd.compress(json, dictionary.compress);
+        return ByteBuffer.allocate(HEADER_LENGTH + frame.length)
+                .put(MARKER)
+                .put(ZSTD_FORMAT)
+                .putInt(dictionary == null ? NO_DICTIONARY : dictionary.id)
+                .put(frame)
+                .array();
+    }
+
+    /**
+     * Returns the canonical JSON of a stored document in any encoding; null stays null.
+     * Frames that do not record their content size are decompressed as a stream.
+     */
+    public byte[] decode(byte[] stored) {
+        if (stored == null || stored.length == 0 || stored[0] != MARKER)
+            return stored;
+        if (stored.length < HEADER_LENGTH || stored[1] != ZSTD_FORMAT)
+            throw new IllegalStateException("Unknown plan encoding " + (stored.length > 1 ? stored[1] : -1));
+
+        int dictionaryId = ByteBuffer.wrap(stored, 2, 4).getInt();
+        byte[] frame = Arrays.copyOfRange(stored, HEADER_LENGTH, stored.length);
+        long size = Zstd.getFrameContentSize(frame);
+        if (size == CONTENT_SIZE_UNKNOWN)
+            return decompressStream(frame, dictionaryId);
+        if (Zstd.isError(size))
+            throw new IllegalStateException("Corrupt plan document: " + Zstd.getErrorName(size));
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalStateException("Plan document too large: " + size + " bytes");
+        return dictionaryId == NO_DICTIONARY
+                ? Zstd.decompress(frame, (int) size)
+                : Zstd.decompress(frame, dictionary(dictionaryId).decompress, (int) size);
+    }
+
+    private byte[] decompressStream(byte[] frame, int dictionaryId) {
+        try (ZstdInputStream in = new ZstdInputStream(new ByteArrayInputStream(frame))) {
+            if (dictionaryId != NO_DICTIONARY)
+                in.setDict(dictionary(dictionaryId).decompress);
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt plan document: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Whether the stored document is already in the configured encoding, with the
+     * current dictionary. An empty value is in no encoding.
+     */
+    public boolean isCurrent(byte[] stored) {
+        if (stored.length == 0)
+            return false;
+        if (!compress)
+            return stored[0] != MARKER;
+        Dictionary dictionary = current;
+        return stored.length >= HEADER_LENGTH && stored[0] == MARKER && stored[1] == ZSTD_FORMAT
+                && ByteBuffer.wrap(stored, 2, 4).getInt() == (dictionary == null ? NO_DICTIONARY : dictionary.id);
+    }
+
+    public boolean isCompressing() {
+        return compress;
+    }
+
+    /**
+     * Trains a dictionary of at most {@code dictionarySize} bytes from sample documents
+     * (canonical JSON).
+     */
+    public static byte[] train(List<byte[]> samples, int dictionarySize) {
+        int sampleBytes = samples.stream().mapToInt(sample -> sample.length).sum();
+        ZstdDictTrainer trainer = new ZstdDictTrainer(sampleBytes, dictionarySize);
+        samples.forEach(trainer::addSample);
+        return trainer.trainSamples();
+    }
+
+    /**
+     * Stores a new dictionary in Redis, makes it the current one for every instance
+     * and returns its id.
+     */
+    public int publishDictionary(byte[] dictionary) {
+        int id = redisRepository.execute("incr", jedis -> jedis.incr(DICTIONARY_IDS)).intValue();
+        redisRepository.execute("set", jedis -> jedis.set(bytes(DICTIONARY_PREFIX + id), dictionary));
+        redisRepository.set(CURRENT_DICTIONARY, String.valueOf(id));
+        useDictionary(id, dictionary);
+        return id;
+    }
+
+    /**
+     * Compresses with the given dictionary from now on.
+     */
+    public void useDictionary(int id, byte[] dictionary) {
+        current = dictionaries.computeIfAbsent(id, ignored -> new Dictionary(id, dictionary, level));
+    }
+
+    /**
+     * Picks up a dictionary published by another instance. A failing refresh is
+     * reported once, not on every run, until it succeeds again.
+     */
+    @Scheduled(fixedDelayString = "${plan.codec.dictionary.refresh-ms}")
+    public void refreshDictionary() {
+        if (!compress)
+            return;
+        try {
+            String id = redisRepository.get(CURRENT_DICTIONARY);
+            Dictionary dictionary = current;
+            if (id != null && (dictionary == null || dictionary.id != Integer.parseInt(id)))
+                current = dictionary(Integer.parseInt(id));
+            if (refreshFailing) {
+                refreshFailing = false;
+                System.out.println("Refreshing the plan compression dictionary works again");
+            }
+        } catch (Exception e) {
+            if (!refreshFailing) {
+                refreshFailing = true;
+                System.err.println("Could not refresh the plan compression dictionary: " + e.getMessage());
+            }
+        }
+    }
+
+    private Dictionary dictionary(int id) {
+        return dictionaries.computeIfAbsent(id, ignored -> {
+            byte[] dictionary = redisRepository.execute("get", jedis -> jedis.get(bytes(DICTIONARY_PREFIX + id)));
+            if (dictionary == null)
+                throw new IllegalStateException("Plan compression dictionary " + id + " is missing");
+            return new Dictionary(id, dictionary, level);
+        });
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class Dictionary {
+        private final int id;
+        private final ZstdDictCompress compress;
+        private final ZstdDictDecompress decompress;
+
+        private Dictionary(int id, byte[] dictionary, int level) {
+            this.id = id;
+            this.compress = new ZstdDictCompress(dictionary, level);
+            this.decompress = new ZstdDictDecompress(dictionary);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.neu.AdvBigDataIndexing.repository;
+
+import com.neu.AdvBigDataIndexing.model.PlanListCriteria;
+import lombok.RequiredArgsConstructor;
+import org.json.JSONObject;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.Transaction;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Secondary indexes of the plans in Redis, written in the same transaction or script
+ * as the plan itself, so listings never lag behind writes:
+ * <ul>
+ *     <li>{@code plan-index:created} - sorted set of all plan ids, scored by creationDate
+ *     as days since 1970-01-01 (0 when the date cannot be parsed)</li>
+ *     <li>{@code plan-index:org:<_org>} - the same, per organization</li>
+ *     <li>{@code plan-index:planType:<planType>} - set of plan ids</li>
+ *     <li>{@code plan-index:copay}, {@code plan-index:deductible} - sorted sets of plan
+ *     ids scored by the plan's own cost shares</li>
+ *     <li>{@code plan-index:entries:<id>} - the index keys a plan is in, so an update or
+ *     delete can remove it without knowing the previous version</li>
+ * </ul>
+ */
+@Component
+@RequiredArgsConstructor
+public class PlanIndexes {
+    public static final String VERSION = "1";
+
+    private static final String PREFIX = "plan-index:";
+    private static final String CREATED = PREFIX + "created";
+    private static final String ORG = PREFIX + "org:";
+    private static final String PLAN_TYPE = PREFIX + "planType:";
+    private static final String COPAY = PREFIX + "copay";
+    private static final String DEDUCTIBLE = PREFIX + "deductible";
+    private static final String ENTRIES = PREFIX + "entries:";
+    private static final String SORTED = "z";
+    private static final String SET = "s";
+    private static final int LIST_BATCH = 100;
+    private static final List<DateTimeFormatter> DATE_FORMATS = List.of(
+            DateTimeFormatter.ofPattern("MM-dd-uuuu"), DateTimeFormatter.ISO_LOCAL_DATE);
+
+    /**
+     * Lua function moving plan {@code id} from the indexes recorded in
+     * {@code entriesKey} to the {@code count} index keys in KEYS[firstKey..], each
+     * with a (z|s, score) pair in ARGV[firstArg..]. Shared by every script that
+     * writes plans. The indexes a plan leaves are only known from its entries set.
+     */
+    public static final String REINDEX_FUNCTION = """
+            local function reindex(entriesKey, id, firstKey, firstArg, count)
+                for _, entry in ipairs(redis.call('SMEMBERS', entriesKey)) do
+                    local index = string.sub(entry, 3)
+                    if string.sub(entry, 1, 1) == 'z' then
+                        redis.call('ZREM', index, id)
+                    else
+                        redis.call('SREM', index, id)
+                    end
+                end
+                redis.call('DEL', entriesKey)
+                for i = 0, count - 1 do
+                    local index, kind = KEYS[firstKey + i], ARGV[firstArg + 2 * i]
+                    if kind == 'z' then
+                        redis.call('ZADD', index, ARGV[firstArg + 2 * i + 1], id)
+                    else
+                        redis.call('SADD', index, id)
+                    end
+                    redis.call('SADD', entriesKey, kind .. ':' .. index)
+                end
+            end
+            """;
+
+    /**
+     * KEYS[1] entries key, KEYS[2..] index keys, ARGV[1] plan id, ARGV[2..] index entries.
+     */
+    private static final LuaScript UPDATE = LuaScript.of(REINDEX_FUNCTION + """
+            reindex(KEYS[1], ARGV[1], 2, 2, #KEYS - 1)
+            return 1
+            """);
+
+    /**
+     * Like UPDATE, with the plan key in KEYS[2] and KEYS and ARGV shifted by one: only
+     * applied when the plan's stored ETag still is ARGV[1]. Returns 1 when applied.
+     */
+    private static final LuaScript UPDATE_IF_CURRENT = LuaScript.of(REINDEX_FUNCTION + """
+            if redis.call('HGET', KEYS[2], 'etag') ~= ARGV[1] then
+                return 0
+            end
+            reindex(KEYS[1], ARGV[2], 3, 3, #KEYS - 2)
+            return 1
+            """);
+
+    /**
+     * Walks KEYS[1] in (score, id) order from score ARGV[1] to ARGV[2], starting right
+     * after the position (ARGV[3] score, ARGV[4] id) when ARGV[3] is not empty, and
+     * returns {next score, next id, ids...} of up to ARGV[5] plans that are in set
+     * KEYS[2] (when ARGV[6] is 1) and whose KEYS[3] copay and KEYS[4] deductible lie
+     * within ARGV[7..8] and ARGV[9..10] (empty for unbounded). The start is found by
+     * rank, so plans before it are not examined; at most ARGV[11] plans after it are.
+     * The next position is the last plan examined, always after the given one, and
+     * empty once the range is exhausted.
+     */
+    private static final LuaScript LIST = LuaScript.of("""
+            local function within(key, id, min, max)
+                if min == '' and max == '' then
+                    return true
+                end
+                local score = redis.call('ZSCORE', key, id)
+                if not score then
+                    return false
+                end
+                score = tonumber(score)
+                return (min == '' or score >= tonumber(min)) and (max == '' or score <= tonumber(max))
+            end
+
+            -- Rank of the first plan after (day, id), also when that plan is gone or moved
+            local function after(day, id)
+                local score = redis.call('ZSCORE', KEYS[1], id)
+                if score and tonumber(score) == tonumber(day) then
+                    return redis.call('ZRANK', KEYS[1], id) + 1
+                end
+                local low = redis.call('ZCOUNT', KEYS[1], '-inf', '(' .. day)
+                local high = low + redis.call('ZCOUNT', KEYS[1], day, day)
+                while low < high do
+                    local middle = math.floor((low + high) / 2)
+                    if redis.call('ZRANGE', KEYS[1], middle, middle)[1] <= id then
+                        low = middle + 1
+                    else
+                        high = middle
+                    end
+                end
+                return low
+            end
+
+            local size = tonumber(ARGV[5])
+            local budget = math.max(tonumber(ARGV[11]), 1)
+            local position = 0
+            if ARGV[1] ~= '-inf' then
+                position = redis.call('ZCOUNT', KEYS[1], '-inf', '(' .. ARGV[1])
+            end
+            if ARGV[3] ~= '' then
+                position = math.max(position, after(ARGV[3], ARGV[4]))
+            end
+            local ids = {}
+            local lastScore, lastId = '', ''
+            while budget > 0 do
+                local batch = redis.call('ZRANGE', KEYS[1], position, position + math.min(budget, %d) - 1, 'WITHSCORES')
+                if #batch == 0 then
+                    return {'', '', unpack(ids)}
+                end
+                for i = 1, #batch, 2 do
+                    local id, score = batch[i], batch[i + 1]
+                    if ARGV[2] ~= '+inf' and tonumber(score) > tonumber(ARGV[2]) then
+                        return {'', '', unpack(ids)}
+                    end
+                    budget = budget - 1
+                    lastScore, lastId = score, id
+                    if (ARGV[6] ~= '1' or redis.call('SISMEMBER', KEYS[2], id) == 1)
+                            and within(KEYS[3], id, ARGV[7], ARGV[8])
+                            and within(KEYS[4], id, ARGV[9], ARGV[10]) then
+                        ids[#ids + 1] = id
+                        if #ids == size then
+                            return {score, id, unpack(ids)}
+                        end
+                    end
+                end
+                position = position + #batch / 2
+            end
+            return {lastScore, lastId, unpack(ids)}
+            """.formatted(LIST_BATCH));
+
+    private final RedisRepository redisRepository;
+
+    /**
+     * The indexes of a plan: their keys, and a (z|s, score) pair per key, the layout
+     * of {@link #REINDEX_FUNCTION}.
+     */
+    public static Entries entries(JSONObject plan) {
+        Entries entries = new Entries(new ArrayList<>(), new ArrayList<>());
+        long created = dateScore(plan.optString("creationDate"));
+        entries.add(SORTED, CREATED, created);
+        if (plan.has("_org"))
+            entries.add(SORTED, ORG + plan.get("_org"), created);
+        if (plan.has("planType"))
+            entries.add(SET, PLAN_TYPE + plan.get("planType"), 0);
+
+        JSONObject costShares = plan.optJSONObject("planCostShares");
+        if (costShares != null) {
+            if (costShares.opt("copay") instanceof Number copay)
+                entries.add(SORTED, COPAY, copay);
+            if (costShares.opt("deductible") instanceof Number deductible)
+                entries.add(SORTED, DEDUCTIBLE, deductible);
+        }
+        return entries;
+    }
+
+    public static byte[] entriesKey(String planId) {
+        return bytes(ENTRIES + planId);
+    }
+
+    /**
+     * Queues the index update of a created or changed plan in the transaction.
+     */
+    public void update(Transaction transaction, String planId, JSONObject plan) {
+        Entries entries = entries(plan);
+        List<byte[]> keys = new ArrayList<>();
+        keys.add(entriesKey(planId));
+        keys.addAll(entries.getKeys());
+        List<byte[]> args = new ArrayList<>();
+        args.add(bytes(planId));
+        args.addAll(entries.getArgs());
+        UPDATE.eval(transaction, keys, args);
+    }
+
+    /**
+     * Queues removing a deleted plan from every index in the transaction.
+     */
+    public void remove(Transaction transaction, String planId) {
+        UPDATE.eval(transaction, List.of(entriesKey(planId)), List.of(bytes(planId)));
+    }
+
+    /**
+     * Indexes a plan read outside a write, unless it was changed since it was read
+     * at {@code eTag}. Returns false when it was.
+     */
+    public boolean updateIfCurrent(String key, String planId, String eTag, JSONObject plan) {
+        Entries entries = entries(plan);
+        List<byte[]> keys = new ArrayList<>();
+        keys.add(entriesKey(planId));
+        keys.add(bytes(key));
+        keys.addAll(entries.getKeys());
+        List<byte[]> args = new ArrayList<>();
+        args.add(bytes(eTag));
+        args.add(bytes(planId));
+        args.addAll(entries.getArgs());
+        return Long.valueOf(1).equals(redisRepository.eval(UPDATE_IF_CURRENT, keys, args));
+    }
+
+    /**
+     * Returns the ids of up to {@code criteria.size} matching plans in creationDate
+     * order, examining at most {@code maxExamined} plans, and the position to continue
+     * from. A page may hold fewer plans, or none, while there are more to come; the
+     * position is null once the listing is exhausted.
+     */
+    public Page list(PlanListCriteria criteria, int maxExamined) {
+        String org = criteria.getOrg();
+        String planType = criteria.getPlanType();
+        boolean after = criteria.getAfterDay() != null;
+        List<byte[]> keys = List.of(bytes(org == null ? CREATED : ORG + org),
+                bytes(PLAN_TYPE + (planType == null ? "" : planType)), bytes(COPAY), bytes(DEDUCTIBLE));
+        List<byte[]> args = List.of(
+                bytes(criteria.getFromDay() == null ? "-inf" : criteria.getFromDay().toString()),
+                bytes(criteria.getToDay() == null ? "+inf" : criteria.getToDay().toString()),
+                bytes(after ? criteria.getAfterDay().toString() : ""),
+                bytes(after ? criteria.getAfterId() : ""),
+                bytes(String.valueOf(criteria.getSize())),
+                bytes(planType == null ? "0" : "1"),
+                bound(criteria.getMinCopay()), bound(criteria.getMaxCopay()),
+                bound(criteria.getMinDeductible()), bound(criteria.getMaxDeductible()),
+                bytes(String.valueOf(maxExamined)));
+
+        List<?> reply = (List<?>) redisRepository.eval(LIST, keys, args);
+        String nextDay = string(reply.get(0));
+        List<String> ids = new ArrayList<>(reply.size() - 2);
+        for (int i = 2; i < reply.size(); i++) {
+            ids.add(string(reply.get(i)));
+        }
+        return nextDay.isEmpty()
+                ? new Page(ids, null, null)
+                : new Page(ids, (long) Double.parseDouble(nextDay), string(reply.get(1)));
+    }
+
+    /**
+     * Days since 1970-01-01 of a date in the creationDate format (MM-dd-yyyy) or
+     * ISO format, or null when it is neither.
+     */
+    public static Long parseDate(String date) {
+        for (DateTimeFormatter format : DATE_FORMATS) {
+            try {
+                return LocalDate.parse(date, format).toEpochDay();
+            } catch (DateTimeParseException e) {
+                // try the next format
+            }
+        }
+        return null;
+    }
+
+    private static long dateScore(String date) {
+        Long day = parseDate(date);
+        return day == null ? 0 : day;
+    }
+
+    private static byte[] bound(Integer value) {
+        return bytes(value == null ? "" : value.toString());
+    }
+
+    private static String string(Object reply) {
+        return new String((byte[]) reply, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Index keys of a plan, and the (z|s, score) pair of each.
+     */
+    @lombok.Value
+    public static class Entries {
+        List<byte[]> keys;
+        List<byte[]> args;
+
+        public int size() {
+            return keys.size();
+        }
+
+        private void add(String kind, String index, Number score) {
+            keys.add(bytes(index));
+            args.add(bytes(kind));
+            args.add(bytes(score.toString()));
+        }
+    }
+
+    /**
+     * Plan ids of a listing page and the position of the last plan examined, which the
+     * next page starts after (null when there are no more).
+     */
+    @lombok.Value
+    public static class Page {
+        List<String> ids;
+        Long nextDay;
+        String nextId;
+    }
+}
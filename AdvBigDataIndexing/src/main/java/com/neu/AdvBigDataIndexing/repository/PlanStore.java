@@ -0,0 +1,102 @@
+package com.neu.AdvBigDataIndexing.repository;
+
+import com.neu.AdvBigDataIndexing.model.OutboxEvent;
+import com.neu.AdvBigDataIndexing.model.PlanDocument;
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Storage for plans in Redis. Keys are the plan keys used by the API
+ * ({@code plan_<objectId>}); every write returns the ETag of the stored version and
+ * appends its indexing event (when not null) to the {@link Outbox} in the same transaction.
+ * The implementation is selected with {@code plan.storage.mode}.
+ */
+public interface PlanStore {
+
+    boolean exists(String key);
+
+    /**
+     * Returns which of the keys exist, in one round trip.
+     */
+    Set<String> existing(List<String> keys);
+
+    String getETag(String key);
+
+    /**
+     * Returns the stored version, with a null body when its ETag is one of
+     * {@code ifNoneMatch}, or null when the plan does not exist.
+     */
+    PlanDocument read(String key, List<String> ifNoneMatch);
+
+    /**
+     * Returns the serialized plans in the order of {@code keys}, with null for keys
+     * that do not exist.
+     */
+    List<byte[]> readDocuments(List<String> keys);
+
+    /**
+     * Returns the stored plan, or an empty object when it does not exist.
+     */
+    JSONObject readPlan(String key);
+
+    /**
+     * Returns the object with the given objectId inside the plan (the plan itself
+     * when it is the plan's objectId), limited to the given top-level properties
+     * plus objectId and objectType when {@code fields} is not null. Returns null when
+     * no such object exists.
+     */
+    JSONObject readObject(String key, String objectId, Set<String> fields);
+
+    /**
+     * Creates the plan or replaces it entirely.
+     */
+    String save(String key, JSONObject plan, OutboxEvent event);
+
+    /**
+     * Creates or replaces several plans in one transaction and returns their ETags in
+     * the same order. {@code events} may contain nulls.
+     */
+    List<String> saveAll(List<String> keys, List<JSONObject> plans, List<OutboxEvent> events);
+
+    /**
+     * Replaces the plan only if its stored ETag still is {@code expectedETag}, checked
+     * and written atomically. Returns the new ETag, or null when the plan was changed
+     * or deleted in the meantime.
+     */
+    String replace(String key, JSONObject plan, String expectedETag, OutboxEvent event);
+
+    /**
+     * Merges {@code patch} into the stored plan if its stored ETag still is
+     * {@code expectedETag}: objects are matched by objectId, new array elements are
+     * appended and scalar properties are overwritten. {@code merged} is the resulting
+     * plan as computed by the caller, for stores that rewrite the whole plan anyway.
+     * Returns the new ETag with the canonical serialization of {@code merged}, or null
+     * when the plan was changed or deleted in the meantime.
+     */
+    PlanDocument patch(String key, JSONObject patch, JSONObject merged, String expectedETag, OutboxEvent event);
+
+    /**
+     * Rewrites the stored documents of the given plans that are not in the encoding
+     * configured with {@code plan.codec}, without changing their content or ETag.
+     * Returns how many were rewritten.
+     */
+    int recompress(List<String> keys);
+
+    /**
+     * Converts the plans among {@code keys} that are still stored as plain JSON
+     * strings, as they were before plans were stored with their ETag, to this store's
+     * layout. A plan is only converted if it is unchanged since it was read, and
+     * nothing is queued for indexing. Plans the store cannot hold are left as they
+     * are. Returns how many were converted.
+     */
+    int upgrade(List<String> keys);
+
+    /**
+     * Deletes the plan only if its stored ETag still is {@code expectedETag}, checked
+     * and deleted atomically, so {@code event} names the documents of the deleted
+     * version. Returns false when the plan was changed or deleted in the meantime.
+     */
+    boolean delete(String key, String expectedETag, OutboxEvent event);
+}
@@ -0,0 +1,216 @@
+package com.neu.AdvBigDataIndexing.repository;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisExhaustedPoolException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe access to Redis. Each call borrows a connection from the pool and
+ * returns it when done; callers never hold on to a {@link Jedis} instance. Every call
+ * is timed as {@code redis.command}, tagged with the command name ({@code pipeline}
+ * and {@code multi} for batches), including the wait for a pooled connection.
+ * <p>
+ * Callers queue for a connection on a fair semaphore with one permit per pooled
+ * connection, so the number of concurrent Redis calls is bounded by the pool size
+ * rather than by the number of request threads. With virtual threads there can be
+ * thousands of callers; they wait in FIFO order for at most
+ * {@code redis.pool.max-wait-ms}, and the queue length is exported as
+ * {@code redis.pool.queued}. The permits are the only limit: a permit always finds
+ * a connection in the pool, which does not wait on its own.
+ * <p>
+ * Subscriptions hold their connection for as long as they last, so they take no
+ * permit; the pool keeps {@code redis.pool.subscriptions} connections for them on
+ * top of the permitted ones.
+ */
+@Repository
+public class RedisRepository {
+    private final JedisPool jedisPool;
+    private final MeterRegistry meterRegistry;
+    private final Semaphore permits;
+    private final long maxWait;
+
+    public RedisRepository(JedisPool jedisPool, MeterRegistry meterRegistry,
+                           @Value("${redis.pool.max-total}") int maxTotal,
+                           @Value("${redis.pool.max-wait-ms}") long maxWait) {
+        this.jedisPool = jedisPool;
+        this.meterRegistry = meterRegistry;
+        this.permits = new Semaphore(maxTotal, true);
+        this.maxWait = maxWait;
+        Gauge.builder("redis.pool.queued", permits, Semaphore::getQueueLength)
+                .description("Callers waiting for a Redis connection permit")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs a single command; {@code command} names it in the metrics.
+     */
+    public <T> T execute(String command, Function<Jedis, T> action) {
+        return timed(command, () -> withConnection(action));
+    }
+
+    /**
+     * Runs several commands in one round trip and returns their replies in order.
+     */
+    public List<Object> pipelined(Consumer<Pipeline> commands) {
+        return timed("pipeline", () -> withConnection(jedis -> {
+            Pipeline pipeline = jedis.pipelined();
+            commands.accept(pipeline);
+            return pipeline.syncAndReturnAll();
+        }));
+    }
+
+    /**
+     * Runs the commands atomically in a MULTI/EXEC block and returns their replies.
+     */
+    public List<Object> transaction(Consumer<Transaction> commands) {
+        return timed("multi", () -> withConnection(jedis -> {
+            Transaction transaction = jedis.multi();
+            commands.accept(transaction);
+            return transaction.exec();
+        }));
+    }
+
+    /**
+     * Runs the commands atomically only if hash field {@code field} of {@code key}
+     * still holds {@code expected}. The key is WATCHed while the field is checked, so
+     * a change made in between aborts the transaction. Returns null when the check
+     * failed or the transaction was aborted.
+     */
+    public List<Object> transactionIf(String key, String field, String expected, Consumer<Transaction> commands) {
+        return transactionWatching(List.of(key), jedis -> expected.equals(jedis.hget(key, field)) ? key : null,
+                (transaction, checked) -> commands.accept(transaction));
+    }
+
+    /**
+     * Runs the commands atomically only if {@code key} still is a string holding
+     * {@code expected}, checked under WATCH like {@link #transactionIf}. Returns null
+     * when the check failed or the transaction was aborted.
+     */
+    public List<Object> transactionIfString(String key, String expected, Consumer<Transaction> commands) {
+        return transactionWatching(List.of(key),
+                jedis -> "string".equals(jedis.type(key)) && expected.equals(jedis.get(key)) ? key : null,
+                (transaction, checked) -> commands.accept(transaction));
+    }
+
+    /**
+     * WATCHes {@code keys}, reads what the transaction depends on with {@code read}
+     * and runs the commands built from it atomically, so a change to one of the keys
+     * after it was read aborts the transaction. Returns null when {@code read}
+     * returned null or the transaction was aborted.
+     */
+    public <T> List<Object> transactionWatching(List<String> keys, Function<Jedis, T> read,
+                                                BiConsumer<Transaction, T> commands) {
+        return timed("watch-multi", () -> withConnection(jedis -> {
+            jedis.watch(keys.toArray(new String[0]));
+            T value = read.apply(jedis);
+            if (value == null) {
+                jedis.unwatch();
+                return null;
+            }
+            Transaction transaction = jedis.multi();
+            commands.accept(transaction, value);
+            return transaction.exec();
+        }));
+    }
+
+    public Object eval(LuaScript script, List<byte[]> keys, List<byte[]> args) {
+        return execute("evalsha", jedis -> script.eval(jedis, keys, args));
+    }
+
+    public void publish(String channel, String message) {
+        execute("publish", jedis -> jedis.publish(channel, message));
+    }
+
+    /**
+     * Blocks the calling thread and delivers messages to {@code pubSub} until it
+     * unsubscribes or the connection fails. The connection is one of the pool's
+     * reserved subscription connections, outside the permits of the other calls.
+     */
+    public void subscribe(JedisPubSub pubSub, String... channels) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.subscribe(pubSub, channels);
+        }
+    }
+
+    public String get(String key) {
+        return execute("get", jedis -> jedis.get(key));
+    }
+
+    public void set(String key, String value) {
+        execute("set", jedis -> jedis.set(key, value));
+    }
+
+    public boolean exists(String key) {
+        return execute("exists", jedis -> jedis.exists(key));
+    }
+
+    public String hget(String key, String field) {
+        return execute("hget", jedis -> jedis.hget(key, field));
+    }
+
+    public void hset(String key, Map<String, String> fields) {
+        execute("hset", jedis -> jedis.hset(key, fields));
+    }
+
+    public Set<String> smembers(String key) {
+        return execute("smembers", jedis -> jedis.smembers(key));
+    }
+
+    public void delete(String... keys) {
+        execute("del", jedis -> jedis.del(keys));
+    }
+
+    /**
+     * Takes a permit, then a pooled connection, and returns both when the action is
+     * done. Throws when no permit became free within {@code redis.pool.max-wait-ms}.
+     */
+    private <T> T withConnection(Function<Jedis, T> action) {
+        try {
+            if (!permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS))
+                throw new JedisExhaustedPoolException("No Redis connection available within " + maxWait + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JedisExhaustedPoolException("Interrupted while waiting for a Redis connection");
+        }
+        try (Jedis jedis = jedisPool.getResource()) {
+            return action.apply(jedis);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private <T> T timed(String command, Supplier<T> call) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            outcome = "error";
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("redis.command")
+                    .description("Redis command latency")
+                    .tag("command", command)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.VersionType;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends index and delete operations to Elasticsearch through the _bulk API, split
+ * into requests of at most {@code indexing.bulk.max-actions} operations and roughly
+ * {@code indexing.bulk.max-bytes} of documents. Each request is recorded as
+ * {@code elasticsearch.bulk} (latency) and {@code elasticsearch.bulk.operations} /
+ * {@code elasticsearch.bulk.bytes} (size, bytes estimated).
+ */
+@Component
+public class BulkIndexer {
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final int maxActions;
+    private final long maxBytes;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary requestOperations;
+    private final DistributionSummary requestBytes;
+
+    public BulkIndexer(ElasticsearchClient elasticsearchClient,
+                       @Value("${indexing.bulk.max-actions}") int maxActions,
+                       @Value("${indexing.bulk.max-bytes}") long maxBytes,
+                       MeterRegistry meterRegistry) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.maxActions = maxActions;
+        this.maxBytes = maxBytes;
+        this.meterRegistry = meterRegistry;
+        this.requestOperations = DistributionSummary.builder("elasticsearch.bulk.operations")
+                .description("Operations per _bulk request")
+                .register(meterRegistry);
+        this.requestBytes = DistributionSummary.builder("elasticsearch.bulk.bytes")
+                .description("Estimated size of the documents per _bulk request")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public static BulkOperation indexOperation(String index, String id, String routing, Map<String, Object> document) {
+        return BulkOperation.of(b -> b.index(i -> i.index(index).id(id).routing(routing).document(document)));
+    }
+
+    /**
+     * Indexes the document unless the stored one has the same or a higher external
+     * version, in which case the operation fails with 409.
+     */
+    public static BulkOperation indexOperation(String index, String id, String routing, Map<String, Object> document, long version) {
+        return BulkOperation.of(b -> b.index(i -> i.index(index).id(id).routing(routing).document(document)
+                .version(version).versionType(VersionType.External)));
+    }
+
+    /**
+     * Indexes the document only if no document with this id exists yet.
+     */
+    public static BulkOperation createOperation(String index, String id, String routing, Map<String, Object> document) {
+        return BulkOperation.of(b -> b.create(c -> c.index(index).id(id).routing(routing).document(document)));
+    }
+
+    public static BulkOperation deleteOperation(String index, String id, String routing) {
+        return BulkOperation.of(b -> b.delete(d -> d.index(index).id(id).routing(routing)));
+    }
+
+    /**
+     * Deletes the document unless the stored one has the same or a higher external
+     * version (409). The delete is remembered with its version for
+     * {@code index.gc_deletes} ({@code indexing.gc-deletes-ms} on the plan indices), so
+     * older writes arriving in that time do not bring the document back.
+     */
+    public static BulkOperation deleteOperation(String index, String id, String routing, long version) {
+        return BulkOperation.of(b -> b.delete(d -> d.index(index).id(id).routing(routing)
+                .version(version).versionType(VersionType.External)));
+    }
+
+    /**
+     * Executes the operations in order and returns the failed ones, keyed by their
+     * position in {@code operations}.
+     *
+     * @throws IOException if a request could not be sent; operations of earlier
+     *                     requests may already have been applied
+     */
+    public Map<Integer, BulkResponseItem> execute(List<BulkOperation> operations) throws IOException {
+        Map<Integer, BulkResponseItem> failures = new HashMap<>();
+        List<BulkOperation> request = new ArrayList<>();
+        int requestStart = 0;
+        long requestBytes = 0;
+
+        for (int i = 0; i < operations.size(); i++) {
+            BulkOperation operation = operations.get(i);
+            long size = estimateSize(operation);
+            if (!request.isEmpty() && (request.size() >= maxActions || requestBytes + size > maxBytes)) {
+                send(request, requestBytes, requestStart, failures);
+                request = new ArrayList<>();
+                requestStart = i;
+                requestBytes = 0;
+            }
+            request.add(operation);
+            requestBytes += size;
+        }
+        if (!request.isEmpty())
+            send(request, requestBytes, requestStart, failures);
+        return failures;
+    }
+
+    private void send(List<BulkOperation> request, long bytes, int offset, Map<Integer, BulkResponseItem> failures) throws IOException {
+        requestOperations.record(request.size());
+        requestBytes.record(bytes);
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        BulkResponse response;
+        try {
+            response = elasticsearchClient.bulk(b -> b.operations(request));
+            outcome = response.errors() ? "partial" : "success";
+        } finally {
+            sample.stop(Timer.builder("elasticsearch.bulk")
+                    .description("_bulk request latency")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+        if (!response.errors())
+            return;
+
+        List<BulkResponseItem> items = response.items();
+        int failed = 0;
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i).error() != null) {
+                failures.put(offset + i, items.get(i));
+                failed++;
+            }
+        }
+        meterRegistry.counter("elasticsearch.bulk.failed.operations").increment(failed);
+    }
+
+    /**
+     * Rough size of the operation on the wire: action metadata plus flattened documents.
+     */
+    private long estimateSize(BulkOperation operation) {
+        long size = 100;
+        Object source = operation.isIndex() ? operation.index().document()
+                : operation.isCreate() ? operation.create().document() : null;
+        if (source instanceof Map<?, ?> document) {
+            for (Map.Entry<?, ?> entry : document.entrySet()) {
+                size += String.valueOf(entry.getKey()).length() + String.valueOf(entry.getValue()).length() + 6;
+            }
+        }
+        return size;
+    }
+}
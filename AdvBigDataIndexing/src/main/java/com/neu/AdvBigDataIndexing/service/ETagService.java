@@ -1,25 +1,57 @@
 package com.neu.AdvBigDataIndexing.service;
 
+import com.neu.AdvBigDataIndexing.util.CanonicalJson;
 import org.json.JSONObject;
 import org.springframework.stereotype.Service;
 
-import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
 
 @Service
 public class ETagService {
-    public String getETag( JSONObject json) {
-
-        String encoded=null;
+    // Digests are reused per thread; digest() resets them for the next call
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(json.toString().getBytes(StandardCharsets.UTF_8));
-            encoded = Base64.getEncoder().encodeToString(hash);
+            return MessageDigest.getInstance("SHA-256");
         } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
+            throw new IllegalStateException(e);
+        }
+    });
+
+    /**
+     * Hashes the canonical serialization, so equal plans have equal ETags regardless of
+     * property order.
+     */
+    public String getETag(JSONObject json) {
+        return getETag(CanonicalJson.toBytes(json));
+    }
+
+    public String getETag(byte[] content) {
+        return Base64.getEncoder().encodeToString(SHA_256.get().digest(content));
+    }
+
+    /**
+     * Splits If-Match / If-None-Match header values into bare ETags, dropping
+     * surrounding quotes and weak (W/) prefixes.
+     */
+    public List<String> parseETags(List<String> headerValues) {
+        List<String> eTags = new ArrayList<>();
+        if (headerValues == null)
+            return eTags;
+        for (String headerValue : headerValues) {
+            for (String value : headerValue.split(",")) {
+                String eTag = value.trim();
+                if (eTag.startsWith("W/"))
+                    eTag = eTag.substring(2);
+                if (eTag.length() >= 2 && eTag.startsWith("\"") && eTag.endsWith("\""))
+                    eTag = eTag.substring(1, eTag.length() - 1);
+                if (!eTag.isEmpty())
+                    eTags.add(eTag);
+            }
         }
-        return encoded;
+        return eTags;
     }
-}
\ No newline at end of file
+}
@@ -1,152 +1,245 @@
 package com.neu.AdvBigDataIndexing.service;
 
-import co.elastic.clients.elasticsearch.ElasticsearchClient;
-import co.elastic.clients.elasticsearch.core.DeleteRequest;
-import co.elastic.clients.elasticsearch.core.IndexRequest;
-import co.elastic.clients.elasticsearch.indices.CreateIndexRequest;
-import co.elastic.clients.elasticsearch.indices.IndexSettings;
-import co.elastic.clients.elasticsearch._types.mapping.*;
-import com.neu.AdvBigDataIndexing.AdvBigDataIndexingApplication;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import com.neu.AdvBigDataIndexing.model.IndexingMessage;
+import com.neu.AdvBigDataIndexing.model.IndexingMessage.Document;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
-import org.json.JSONArray;
-import org.json.JSONObject;
-import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareBatchMessageListener;
+import org.springframework.amqp.rabbit.support.RabbitExceptionTranslator;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @Component
 @RequiredArgsConstructor
-public class IndexingListener {
-
-    private static final String INDEX_NAME = "plan-index";
-
-    private final ElasticsearchClient elasticsearchClient;
-    private final Map<String, Map<String, Object>> documentMap = new HashMap<>();
-
-    @RabbitListener(queues = AdvBigDataIndexingApplication.queueName)
-    public void receiveMessage(Map<String, String> message) {
-        System.out.println("Received message from RabbitMQ: " + message);
-
-        if (message == null || message.isEmpty()) {
-            System.out.println("Received empty message");
-            return;
+public class IndexingListener implements ChannelAwareBatchMessageListener {
+
+    private final PlanIndex planIndex;
+    private final BulkIndexer bulkIndexer;
+    private final IndexingMessageCodec codec;
+    private final IndexingRetrier indexingRetrier;
+    private final PlanSearchCache planSearchCache;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Receives up to {@code indexing.batch.size} messages of one lane at a time and
+     * applies all of their operations through _bulk. All state is local to the call,
+     * so lanes can be processed concurrently. A message is acknowledged only once every one
+     * of its operations has been applied. Messages with retryable failures (429/5xx, or
+     * a failed _bulk request) are retried after a delay through {@link IndexingRetrier},
+     * and acknowledged once the retry was published, so the lane goes on meanwhile;
+     * messages that ran out of retries and the ones that cannot be applied are rejected
+     * to the dead-letter queue. Messages are only requeued directly when the retry
+     * could not be published.
+     * <p>
+     * The batch is the coalescing window: of the operations on one document only the
+     * one of the newest plan version is sent, so a burst of changes to a plan is
+     * indexed once. Versioned operations use the plan version as external version,
+     * and the 409s of writes that Elasticsearch already has a newer version of are
+     * treated as applied, so redelivered or reordered messages cannot regress the index.
+     * <p>
+     * For every acknowledged message {@code indexing.lag} records the time from the
+     * write to the acknowledged _bulk request; documents become searchable at the
+     * next refresh of the index after that.
+     */
+    @Override
+    public void onMessageBatch(List<Message> messages, Channel channel) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            process(messages, channel);
+        } finally {
+            sample.stop(meterRegistry.timer("indexing.consumer.batch"));
         }
+    }
+
+    private void process(List<Message> messages, Channel channel) {
+        boolean[] rejected = new boolean[messages.size()];
+        boolean[] requeued = new boolean[messages.size()];
+        boolean applied = false;
 
         try {
-            String operation = message.get("operation");
-            JSONObject jsonBody = new JSONObject(message.get("body"));
-
-            switch (operation.toUpperCase()) {
-                case "SAVE" -> {
-                    ensureIndexExists();
-                    documentMap.clear();
-                    flattenAndCollectDocuments(jsonBody, null, jsonBody.getString("objectType"), null);
-                    bulkIndexDocuments();
+            List<Pending> batch = coalesce(messages, rejected);
+            if (!batch.isEmpty()) {
+                List<BulkOperation> operations = new ArrayList<>(batch.size());
+                batch.forEach(operation -> operations.add(operation.operation));
+                planIndex.ensureExists();
+                Map<Integer, BulkResponseItem> failures = bulkIndexer.execute(operations);
+                applied = failures.size() < operations.size();
+                int stale = 0;
+                BulkResponseItem firstFailure = null;
+                for (Map.Entry<Integer, BulkResponseItem> failure : failures.entrySet()) {
+                    Pending operation = batch.get(failure.getKey());
+                    int status = failure.getValue().status();
+                    if (status == 409 && operation.version != null) {
+                        // Elasticsearch already has this or a newer version of the document
+                        stale++;
+                        continue;
+                    }
+                    if (firstFailure == null)
+                        firstFailure = failure.getValue();
+                    if (status == 429 || status >= 500)
+                        requeued[operation.owner] = true;
+                    else
+                        rejected[operation.owner] = true;
                 }
-                case "DELETE" -> deleteDocuments(jsonBody);
-                default -> System.out.println("Unsupported operation: " + operation);
+                meterRegistry.counter("indexing.stale.operations").increment(stale);
+                // One line per batch, however many of its operations failed
+                if (firstFailure != null)
+                    System.err.println("Failed to index " + (failures.size() - stale) + " documents, first "
+                            + firstFailure.id() + ": " + firstFailure.error().reason());
             }
-        } catch (Exception e) {
-            System.err.println("Failed to process message in RabbitMQ: " + message);
-            e.printStackTrace();
+        } catch (IOException | RuntimeException e) {
+            // Every message is settled below, so a failure never leaves the lane waiting
+            System.err.println("Indexing batch failed, retrying " + messages.size() + " messages: " + e);
+            Arrays.fill(requeued, true);
         }
-    }
 
-    private void flattenAndCollectDocuments(JSONObject jsonObject, String parentId, String objectType, String rootPlanId) {
-        String objectId = jsonObject.getString("objectId");
-        String docKey = parentId == null ? objectId : parentId + ":" + objectId;
-        String routingKey = (parentId == null) ? objectId : parentId;
-
-        Map<String, Object> flatMap = new HashMap<>();
-        for (String key : jsonObject.keySet()) {
-            Object val = jsonObject.get(key);
-            if (!(val instanceof JSONObject) && !(val instanceof JSONArray)) {
-                flatMap.put(key, val);
+        List<Message> retries = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            if (requeued[i] && !rejected[i]) {
+                if (indexingRetrier.canRetry(messages.get(i)))
+                    retries.add(messages.get(i));
+                else
+                    rejected[i] = true;
             }
         }
-
-        if (parentId == null) {
-            flatMap.put("plan_join", objectType); // root
-        } else {
-            flatMap.put("plan_join", Map.of(
-                    "name", objectType,
-                    "parent", parentId
-            ));
+        boolean retried = retries.isEmpty();
+        if (!retried) {
+            try {
+                indexingRetrier.retry(retries);
+                retried = true;
+            } catch (RuntimeException e) {
+                System.err.println("Failed to publish " + retries.size() + " retries, requeueing: " + e.getMessage());
+            }
         }
 
-        documentMap.put(docKey, flatMap);
-
-        for (String key : jsonObject.keySet()) {
-            Object val = jsonObject.get(key);
-            if (val instanceof JSONObject subObj && subObj.has("objectId")) {
-                flattenAndCollectDocuments(subObj, objectId, subObj.getString("objectType"), rootPlanId == null ? objectId : rootPlanId);
-            } else if (val instanceof JSONArray arr) {
-                for (Object item : arr) {
-                    if (item instanceof JSONObject subJson && subJson.has("objectId")) {
-                        flattenAndCollectDocuments(subJson, objectId, subJson.getString("objectType"), rootPlanId == null ? objectId : rootPlanId);
-                    }
+        long now = System.currentTimeMillis();
+        try {
+            for (int i = 0; i < messages.size(); i++) {
+                long deliveryTag = messages.get(i).getMessageProperties().getDeliveryTag();
+                if (rejected[i]) {
+                    channel.basicReject(deliveryTag, false);
+                    meterRegistry.counter("indexing.consumed", "outcome", "rejected").increment();
+                } else if (requeued[i] && !retried) {
+                    channel.basicNack(deliveryTag, false, true);
+                    meterRegistry.counter("indexing.consumed", "outcome", "requeued").increment();
+                } else if (requeued[i]) {
+                    channel.basicAck(deliveryTag, false);
+                    meterRegistry.counter("indexing.consumed", "outcome", "retried").increment();
+                } else {
+                    channel.basicAck(deliveryTag, false);
+                    meterRegistry.counter("indexing.consumed", "outcome", "indexed").increment();
+                    Long writtenAt = codec.writtenAt(messages.get(i));
+                    if (writtenAt != null)
+                        lagTimer().record(Math.max(0, now - writtenAt), TimeUnit.MILLISECONDS);
                 }
             }
+        } catch (IOException e) {
+            throw RabbitExceptionTranslator.convertRabbitAccessException(e);
         }
-    }
 
-    private void bulkIndexDocuments() throws IOException {
-        for (Map.Entry<String, Map<String, Object>> entry : documentMap.entrySet()) {
-            String[] keyParts = entry.getKey().split(":");
-            String parentId = keyParts.length == 2 ? keyParts[0] : keyParts[0];
-            String objectId = keyParts.length == 2 ? keyParts[1] : keyParts[0];
-
-            elasticsearchClient.index(IndexRequest.of(i -> i
-                    .index(INDEX_NAME)
-                    .id(objectId)
-                    .routing(parentId)
-                    .document(entry.getValue())
-            ));
+        if (applied) {
+            try {
+                planSearchCache.invalidate();
+            } catch (Exception e) {
+                System.err.println("Failed to invalidate cached search results: " + e.getMessage());
+            }
         }
     }
 
-    private void deleteDocuments(JSONObject jsonObject) throws IOException {
-        List<String> ids = extractAllObjectIds(jsonObject);
-        for (String id : ids) {
-            elasticsearchClient.delete(DeleteRequest.of(d -> d.index(INDEX_NAME).id(id)));
+    private Timer lagTimer() {
+        return Timer.builder("indexing.lag")
+                .description("Time from a plan write until its documents were indexed")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(10))
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the operations of the messages, only the newest one per document, and
+     * marks the messages that cannot be decoded as rejected.
+     */
+    private List<Pending> coalesce(List<Message> messages, boolean[] rejected) {
+        Map<String, Pending> pending = new LinkedHashMap<>();
+        int coalesced = 0;
+        List<String> targets = planIndex.writeTargets();
+        for (int i = 0; i < messages.size(); i++) {
+            try {
+                for (Pending operation : toOperations(messages.get(i), i, targets)) {
+                    Pending previous = pending.get(operation.document);
+                    if (previous != null)
+                        coalesced++;
+                    if (previous == null || !previous.isNewerThan(operation))
+                        pending.put(operation.document, operation);
+                }
+            } catch (Exception e) {
+                // Dead-lettered with its body, so the message itself need not be logged
+                System.err.println("Rejecting undecodable message " + messages.get(i).getMessageProperties().getDeliveryTag()
+                        + ": " + e.getMessage());
+                rejected[i] = true;
+            }
         }
+        meterRegistry.counter("indexing.coalesced.operations").increment(coalesced);
+        return new ArrayList<>(pending.values());
     }
 
-    private void ensureIndexExists() throws IOException {
-        boolean exists = elasticsearchClient.indices().exists(e -> e.index(INDEX_NAME)).value();
-        if (!exists) {
-            elasticsearchClient.indices().create(CreateIndexRequest.of(c -> c
-                    .index(INDEX_NAME)
-                    .settings(IndexSettings.of(s -> s.numberOfShards("1").numberOfReplicas("1")))
-                    .mappings(m -> m
-                            .properties("plan_join", Property.of(p -> p.join(j -> j
-                                    .relations("plan", List.of("membercostshare", "planservice"))
-                                    .relations("planservice", List.of("service", "planserviceCostShare"))
-                            )))
-                    )
-            ));
+    /**
+     * Messages carry pre-flattened documents; deletes are applied before upserts, on
+     * every index in {@code targets}. Messages without a plan version (written before
+     * plans were versioned) are applied unconditionally.
+     */
+    private List<Pending> toOperations(Message message, int owner, List<String> targets) {
+        IndexingMessage indexingMessage = codec.decode(message);
+        Long version = codec.planVersion(message);
+
+        List<Pending> operations = new ArrayList<>();
+        for (String index : targets) {
+            for (Document delete : indexingMessage.getDeletes()) {
+                operations.add(new Pending(index, delete.getId(), owner, version, version == null
+                        ? BulkIndexer.deleteOperation(index, delete.getId(), delete.getRouting())
+                        : BulkIndexer.deleteOperation(index, delete.getId(), delete.getRouting(), version)));
+            }
+            for (Document upsert : indexingMessage.getUpserts()) {
+                operations.add(new Pending(index, upsert.getId(), owner, version, version == null
+                        ? BulkIndexer.indexOperation(index, upsert.getId(), upsert.getRouting(), upsert.getSource())
+                        : BulkIndexer.indexOperation(index, upsert.getId(), upsert.getRouting(), upsert.getSource(), version)));
+            }
         }
+        return operations;
     }
 
-    private List<String> extractAllObjectIds(JSONObject jsonObject) {
-        List<String> ids = new ArrayList<>();
-        if (jsonObject.has("objectId")) {
-            ids.add(jsonObject.getString("objectId"));
+    /**
+     * An operation on one document of one index, and the message it came from.
+     */
+    private static class Pending {
+        private final String document;
+        private final int owner;
+        private final Long version;
+        private final BulkOperation operation;
+
+        private Pending(String index, String id, int owner, Long version, BulkOperation operation) {
+            this.document = index + "/" + id;
+            this.owner = owner;
+            this.version = version;
+            this.operation = operation;
         }
-        for (String key : jsonObject.keySet()) {
-            Object val = jsonObject.get(key);
-            if (val instanceof JSONObject) {
-                ids.addAll(extractAllObjectIds((JSONObject) val));
-            } else if (val instanceof JSONArray arr) {
-                for (Object obj : arr) {
-                    if (obj instanceof JSONObject) {
-                        ids.addAll(extractAllObjectIds((JSONObject) obj));
-                    }
-                }
-            }
+
+        /**
+         * Whether this operation supersedes {@code other}, a later one on the same
+         * document: only when both are versioned and this one is newer, e.g. when
+         * {@code other} was redelivered.
+         */
+        private boolean isNewerThan(Pending other) {
+            return version != null && other.version != null && version > other.version;
         }
-        return ids;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,186 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.neu.AdvBigDataIndexing.model.IndexingMessage;
+import com.neu.AdvBigDataIndexing.model.IndexingMessage.Document;
+import com.neu.AdvBigDataIndexing.model.OutboxEvent;
+import com.neu.AdvBigDataIndexing.util.PlanFlattener;
+import org.json.JSONObject;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes indexing messages for the outbox and decodes them in the consumer. The wire
+ * format is chosen by content type, so producers and consumers of different versions
+ * can share the lanes:
+ * <ul>
+ *     <li>{@code application/cbor} - an {@link IndexingMessage} encoded as CBOR</li>
+ *     <li>{@code application/json} - the original {@code {operation, body}} map, with
+ *     the body holding the plan (SAVE, DELETE) or its changed documents (UPDATE)</li>
+ * </ul>
+ * Consumers accept both. Producers write {@code indexing.message.format}; keep it on
+ * {@code json} until every consumer has been upgraded. The JSON fallback only serves
+ * consumers that apply UPDATE messages, i.e. those that index changed documents
+ * rather than whole plans: every change is sent as an UPDATE, which the first
+ * consumers, that only know SAVE and DELETE, reject. Those have to be replaced
+ * before any producer of this version is deployed.
+ */
+@Component
+public class IndexingMessageCodec {
+    public static final String CBOR_CONTENT_TYPE = "application/cbor";
+    public static final String JSON_CONTENT_TYPE = MessageProperties.CONTENT_TYPE_JSON;
+    // Epoch millisecond of the write; the AMQP timestamp property only has second precision
+    public static final String WRITTEN_AT_HEADER = "x-written-at";
+    // Version of the plan after the change, used as the external Elasticsearch version
+    public static final String PLAN_VERSION_HEADER = "x-plan-version";
+
+    private static final String LEGACY_TYPE_ID = "__TypeId__";
+
+    // String references encode repeated property names and ids once per message
+    private final CBORMapper cborMapper = CBORMapper.builder().enable(CBORGenerator.Feature.STRINGREF).build();
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final boolean cbor;
+
+    public IndexingMessageCodec(@Value("${indexing.message.format}") String format) {
+        this.cbor = "cbor".equalsIgnoreCase(format);
+    }
+
+    /**
+     * Returns the outbox event for the message, or null when there is no message.
+     */
+    public OutboxEvent encode(IndexingMessage message) {
+        if (message == null)
+            return null;
+        try {
+            if (cbor)
+                return new OutboxEvent(message.getPlanId(), CBOR_CONTENT_TYPE, cborMapper.writeValueAsBytes(message));
+            return new OutboxEvent(message.getPlanId(), JSON_CONTENT_TYPE, jsonMapper.writeValueAsBytes(toLegacy(message)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Adds the write time, the plan version and the headers the legacy JSON consumers
+     * need to convert the body.
+     */
+    public void prepare(MessageProperties properties, OutboxEvent event) {
+        properties.setContentType(event.getContentType());
+        properties.setHeader(WRITTEN_AT_HEADER, event.getWrittenAt());
+        if (event.getPlanVersion() != null)
+            properties.setHeader(PLAN_VERSION_HEADER, event.getPlanVersion());
+        if (JSON_CONTENT_TYPE.equals(event.getContentType()))
+            properties.setHeader(LEGACY_TYPE_ID, HashMap.class.getName());
+    }
+
+    /**
+     * Returns when the change carried by the message was written, or null for messages
+     * published before the write time was sent along.
+     */
+    public Long writtenAt(Message message) {
+        Object writtenAt = message.getMessageProperties().getHeader(WRITTEN_AT_HEADER);
+        return writtenAt instanceof Number number ? number.longValue() : null;
+    }
+
+    /**
+     * Returns the version of the plan after the change carried by the message, or null
+     * for messages written before plans were versioned.
+     */
+    public Long planVersion(Message message) {
+        Object planVersion = message.getMessageProperties().getHeader(PLAN_VERSION_HEADER);
+        return planVersion instanceof Number number ? number.longValue() : null;
+    }
+
+    public IndexingMessage decode(Message message) {
+        String contentType = message.getMessageProperties().getContentType();
+        try {
+            if (CBOR_CONTENT_TYPE.equals(contentType)) {
+                IndexingMessage decoded = cborMapper.readValue(message.getBody(), IndexingMessage.class);
+                if (decoded.getVersion() > IndexingMessage.CURRENT_VERSION)
+                    throw new MessageConversionException("Unsupported indexing message version: " + decoded.getVersion());
+                return decoded;
+            }
+            if (contentType == null || contentType.startsWith(JSON_CONTENT_TYPE))
+                return fromLegacy(jsonMapper.readValue(message.getBody(), Map.class));
+        } catch (IOException e) {
+            throw new MessageConversionException("Failed to decode indexing message", e);
+        }
+        throw new MessageConversionException("Unsupported content type: " + contentType);
+    }
+
+    /**
+     * Every message is sent as an UPDATE of flattened documents, which consumers that
+     * index changed documents apply without needing the plan. Messages only carry the
+     * changed documents, not the plan a SAVE or DELETE needs.
+     */
+    private Map<String, String> toLegacy(IndexingMessage message) {
+        List<Map<String, Object>> upserts = new ArrayList<>();
+        for (Document document : message.getUpserts()) {
+            Map<String, Object> upsert = new HashMap<>();
+            upsert.put("id", document.getId());
+            upsert.put("routing", document.getRouting());
+            upsert.put("document", document.getSource());
+            upserts.add(upsert);
+        }
+        List<Map<String, Object>> deletes = new ArrayList<>();
+        for (Document document : message.getDeletes()) {
+            deletes.add(Map.of("id", document.getId(), "routing", document.getRouting()));
+        }
+
+        try {
+            String body = jsonMapper.writeValueAsString(Map.of("upserts", upserts, "deletes", deletes));
+            return Map.of("operation", "UPDATE", "body", body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private IndexingMessage fromLegacy(Map<?, ?> legacy) {
+        String operation = String.valueOf(legacy.get("operation")).toUpperCase();
+        JSONObject body = new JSONObject(String.valueOf(legacy.get("body")));
+        String planId = body.optString("objectId", null);
+
+        List<Document> upserts = new ArrayList<>();
+        List<Document> deletes = new ArrayList<>();
+        switch (operation) {
+            case "SAVE", "DELETE" -> {
+                if (!body.has("objectId"))
+                    break;
+                Map<String, Map<String, Object>> documents = PlanFlattener.flatten(body);
+                for (Map.Entry<String, Map<String, Object>> entry : documents.entrySet()) {
+                    String docKey = entry.getKey();
+                    if (operation.equals("SAVE"))
+                        upserts.add(new Document(PlanFlattener.objectId(docKey), PlanFlattener.routing(docKey),
+                                new JSONObject(entry.getValue()).toMap()));
+                    else
+                        deletes.add(new Document(PlanFlattener.objectId(docKey), PlanFlattener.routing(docKey), null));
+                }
+            }
+            case "UPDATE" -> {
+                for (Object item : body.getJSONArray("deletes")) {
+                    JSONObject delete = (JSONObject) item;
+                    deletes.add(new Document(delete.getString("id"), delete.getString("routing"), null));
+                }
+                for (Object item : body.getJSONArray("upserts")) {
+                    JSONObject upsert = (JSONObject) item;
+                    upserts.add(new Document(upsert.getString("id"), upsert.getString("routing"),
+                            upsert.getJSONObject("document").toMap()));
+                }
+            }
+            default -> throw new MessageConversionException("Unsupported operation: " + operation);
+        }
+        return new IndexingMessage(IndexingMessage.CURRENT_VERSION, operation, planId, upserts, deletes);
+    }
+}
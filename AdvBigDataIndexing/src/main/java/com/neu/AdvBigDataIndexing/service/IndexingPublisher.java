@@ -0,0 +1,68 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import com.neu.AdvBigDataIndexing.config.IndexingLanes;
+import com.neu.AdvBigDataIndexing.model.OutboxEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Publishes outbox events to the indexing lanes.
+ */
+@Service
+@RequiredArgsConstructor
+public class IndexingPublisher {
+    private final RabbitTemplate template;
+    private final IndexingLanes indexingLanes;
+    private final IndexingMessageCodec codec;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${spring.rabbitmq.topic.exchange}")
+    private String exchange;
+
+    @Value("${outbox.relay.confirm-timeout-ms}")
+    private long confirmTimeout;
+
+    /**
+     * Publishes the already encoded events on one channel and waits until the broker has confirmed all
+     * of them. Throws an AmqpException when a message is nacked or the confirms do not
+     * arrive in time, in which case the whole batch has to be published again.
+     */
+    public void publish(List<OutboxEvent> events) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "confirmed";
+        try {
+            send(events);
+        } catch (AmqpException e) {
+            outcome = "failed";
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("indexing.publish")
+                    .description("Time to publish an outbox batch and receive its confirms")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+            meterRegistry.counter("indexing.published", "outcome", outcome).increment(events.size());
+        }
+    }
+
+    private void send(List<OutboxEvent> events) {
+        template.invoke(operations -> {
+            for (OutboxEvent event : events) {
+                MessageProperties properties = new MessageProperties();
+                properties.setMessageId(event.getId());
+                codec.prepare(properties, event);
+                operations.send(exchange, indexingLanes.routingKey(event.getPlanId()), new Message(event.getPayload(), properties));
+            }
+            operations.waitForConfirmsOrDie(confirmTimeout);
+            return null;
+        });
+    }
+}
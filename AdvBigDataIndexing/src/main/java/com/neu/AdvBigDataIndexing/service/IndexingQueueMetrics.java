@@ -0,0 +1,68 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import com.neu.AdvBigDataIndexing.config.IndexingLanes;
+import com.neu.AdvBigDataIndexing.repository.Outbox;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Backlog gauges along the indexing path: events waiting in the Redis outbox, messages
+ * waiting in each lane queue, in the retry queues and in the dead-letter queue. All
+ * are read when the metrics are scraped; a gauge reports NaN while its backend is
+ * unreachable.
+ */
+@Component
+@RequiredArgsConstructor
+public class IndexingQueueMetrics implements MeterBinder {
+    private final Outbox outbox;
+    private final AmqpAdmin amqpAdmin;
+    private final IndexingLanes indexingLanes;
+    private final IndexingRetrier indexingRetrier;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("indexing.outbox.depth", this::outboxDepth)
+                .description("Events in the outbox stream waiting to be published")
+                .register(registry);
+        for (int lane = 0; lane < indexingLanes.getCount(); lane++) {
+            String queue = indexingLanes.queueName(lane);
+            Gauge.builder("indexing.queue.depth", () -> queueDepth(queue))
+                    .description("Messages in the lane queue waiting to be consumed")
+                    .tag("queue", queue)
+                    .register(registry);
+        }
+        for (int retry = 1; retry <= indexingRetrier.getMaxRetries(); retry++) {
+            String queue = indexingLanes.retryQueueName(retry);
+            Gauge.builder("indexing.retry.depth", () -> queueDepth(queue))
+                    .description("Failed messages waiting for their retry")
+                    .tag("queue", queue)
+                    .register(registry);
+        }
+        String deadLetterQueue = indexingLanes.deadLetterQueueName();
+        Gauge.builder("indexing.dead-letter.depth", () -> queueDepth(deadLetterQueue))
+                .description("Messages that could not be indexed, waiting to be replayed")
+                .register(registry);
+    }
+
+    private double outboxDepth() {
+        try {
+            return outbox.size();
+        } catch (Exception e) {
+            return Double.NaN;
+        }
+    }
+
+    private double queueDepth(String queue) {
+        try {
+            QueueInformation information = amqpAdmin.getQueueInfo(queue);
+            return information == null ? Double.NaN : information.getMessageCount();
+        } catch (Exception e) {
+            return Double.NaN;
+        }
+    }
+}
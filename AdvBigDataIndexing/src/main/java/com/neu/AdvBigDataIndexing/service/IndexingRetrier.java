@@ -0,0 +1,171 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import com.neu.AdvBigDataIndexing.config.IndexingLanes;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.GetResponse;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Delayed retries of indexing messages that do not hold up their lane. A failed
+ * message is republished to the retry exchange with its retry number, which routes
+ * it to the queue of that retry; the queue keeps it for
+ * {@code indexing.retry.initial-delay-ms * indexing.retry.multiplier^(n - 1)} and then
+ * dead-letters it back to the lanes exchange under its original routing key. Messages
+ * that failed after {@code indexing.retry.max-retries} retries, or that cannot be
+ * applied at all, are rejected by the listener and dead-lettered to the dead-letter
+ * queue, from where {@link #replay} moves them back to their lanes.
+ * <p>
+ * A retried change can arrive after a newer delete of the same documents. Elasticsearch
+ * only rejects it while it still remembers the delete, for {@code index.gc_deletes}, so
+ * the sum of all retry delays has to stay below {@code indexing.gc-deletes-ms}; this
+ * is checked on startup. Replayed dead letters can be older than that: replaying
+ * changes of plans deleted more than {@code indexing.gc-deletes-ms} ago brings their
+ * documents back, so those are better fixed with a reindex.
+ */
+@Component
+public class IndexingRetrier {
+    public static final String RETRY_HEADER = "x-indexing-retry";
+
+    private static final String DEATH_HEADER = "x-death";
+    private static final int REPLAY_BATCH = 100;
+
+    private final RabbitTemplate template;
+    private final IndexingLanes indexingLanes;
+    private final String exchange;
+    private final int maxRetries;
+    private final long initialDelay;
+    private final double multiplier;
+    private final long confirmTimeout;
+
+    public IndexingRetrier(RabbitTemplate template, IndexingLanes indexingLanes,
+                           @Value("${spring.rabbitmq.topic.exchange}") String exchange,
+                           @Value("${indexing.retry.max-retries}") int maxRetries,
+                           @Value("${indexing.retry.initial-delay-ms}") long initialDelay,
+                           @Value("${indexing.retry.multiplier}") double multiplier,
+                           @Value("${outbox.relay.confirm-timeout-ms}") long confirmTimeout,
+                           @Value("${indexing.gc-deletes-ms}") long gcDeletesMs) {
+        this.template = template;
+        this.indexingLanes = indexingLanes;
+        this.exchange = exchange;
+        this.maxRetries = maxRetries;
+        this.initialDelay = initialDelay;
+        this.multiplier = multiplier;
+        this.confirmTimeout = confirmTimeout;
+        if (totalDelay() >= gcDeletesMs)
+            throw new IllegalArgumentException("The indexing retries take up to " + totalDelay()
+                    + " ms, which has to be less than indexing.gc-deletes-ms (" + gcDeletesMs + ")");
+    }
+
+    public String retryExchange() {
+        return exchange + ".retry";
+    }
+
+    public String deadLetterExchange() {
+        return exchange + ".dead";
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * How long a message waits before its {@code retry}-th retry (1-based).
+     */
+    public long delay(int retry) {
+        return (long) (initialDelay * Math.pow(multiplier, retry - 1));
+    }
+
+    /**
+     * The longest time a message spends waiting for retries, over all of them.
+     */
+    public long totalDelay() {
+        long total = 0;
+        for (int retry = 1; retry <= maxRetries; retry++) {
+            total += delay(retry);
+        }
+        return total;
+    }
+
+    /**
+     * Whether the failed message may be retried once more.
+     */
+    public boolean canRetry(Message message) {
+        return retries(message.getMessageProperties().getHeaders()) < maxRetries;
+    }
+
+    /**
+     * Republishes the failed messages for their next retry and waits for the broker's
+     * confirms, after which the originals can be acknowledged. Throws an AmqpException
+     * when that fails; the originals then have to be requeued.
+     */
+    public void retry(List<Message> messages) {
+        template.invoke(operations -> {
+            for (Message message : messages) {
+                MessageProperties received = message.getMessageProperties();
+                MessageProperties properties = new MessageProperties();
+                properties.setContentType(received.getContentType());
+                properties.setMessageId(received.getMessageId());
+                received.getHeaders().forEach((name, value) -> {
+                    if (!DEATH_HEADER.equals(name))
+                        properties.setHeader(name, value);
+                });
+                properties.setHeader(RETRY_HEADER, String.valueOf(retries(received.getHeaders()) + 1));
+                operations.send(retryExchange(), received.getReceivedRoutingKey(), new Message(message.getBody(), properties));
+            }
+            operations.waitForConfirmsOrDie(confirmTimeout);
+            return null;
+        });
+    }
+
+    /**
+     * Moves up to {@code limit} messages from the dead-letter queue back to their lanes,
+     * with their retries reset, and returns how many were moved. Each batch is only
+     * removed from the dead-letter queue once the broker confirmed its republishing.
+     */
+    public int replay(int limit) {
+        int replayed = 0;
+        while (replayed < limit) {
+            int batch = Math.min(REPLAY_BATCH, limit - replayed);
+            int moved = template.execute(channel -> {
+                long lastTag = -1;
+                int count = 0;
+                for (; count < batch; count++) {
+                    GetResponse response = channel.basicGet(indexingLanes.deadLetterQueueName(), false);
+                    if (response == null)
+                        break;
+                    Map<String, Object> headers = new HashMap<>();
+                    if (response.getProps().getHeaders() != null)
+                        headers.putAll(response.getProps().getHeaders());
+                    headers.remove(RETRY_HEADER);
+                    headers.remove(DEATH_HEADER);
+                    AMQP.BasicProperties properties = response.getProps().builder().headers(headers).build();
+                    // Dead-lettered messages keep the routing key of their lane
+                    channel.basicPublish(exchange, response.getEnvelope().getRoutingKey(), properties, response.getBody());
+                    lastTag = response.getEnvelope().getDeliveryTag();
+                }
+                if (count > 0) {
+                    channel.waitForConfirmsOrDie(confirmTimeout);
+                    channel.basicAck(lastTag, true);
+                }
+                return count;
+            });
+            replayed += moved;
+            if (moved < batch)
+                break;
+        }
+        return replayed;
+    }
+
+    private static int retries(Map<String, Object> headers) {
+        Object retries = headers.get(RETRY_HEADER);
+        return retries == null ? 0 : Integer.parseInt(retries.toString());
+    }
+}
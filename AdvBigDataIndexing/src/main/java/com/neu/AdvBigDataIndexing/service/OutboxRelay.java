@@ -0,0 +1,54 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import com.neu.AdvBigDataIndexing.model.OutboxEvent;
+import com.neu.AdvBigDataIndexing.repository.Outbox;
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.AmqpException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Moves events from the outbox stream to RabbitMQ. Only one instance relays at a time,
+ * so events are published in the order they were written. Events are removed from the
+ * stream once the broker has confirmed them; a failed batch stays in the stream and is
+ * published again on the next run.
+ */
+@Component
+@RequiredArgsConstructor
+public class OutboxRelay {
+    private final String owner = UUID.randomUUID().toString();
+
+    private final Outbox outbox;
+    private final IndexingPublisher indexingPublisher;
+
+    @Value("${outbox.relay.batch-size}")
+    private int batchSize;
+
+    @Value("${outbox.relay.lock-ttl-ms}")
+    private long lockTtl;
+
+    @Scheduled(fixedDelayString = "${outbox.relay.interval-ms}")
+    public void relay() {
+        if (!outbox.acquireRelay(owner, lockTtl))
+            return;
+        try {
+            List<OutboxEvent> events;
+            do {
+                events = outbox.read(batchSize);
+                if (events.isEmpty())
+                    return;
+
+                indexingPublisher.publish(events);
+                outbox.remove(events);
+            } while (events.size() == batchSize && outbox.acquireRelay(owner, lockTtl));
+        } catch (AmqpException e) {
+            System.err.println("Publishing outbox events failed, retrying on the next run: " + e.getMessage());
+        } finally {
+            outbox.releaseRelay(owner);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import com.neu.AdvBigDataIndexing.util.JsonValidator;
+import lombok.RequiredArgsConstructor;
+import org.everit.json.schema.ValidationException;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Creates plans from an NDJSON stream, one plan per line. Lines are read and validated
+ * as they arrive and written in batches of {@code bulk.batch-size}: one pipelined
+ * existence check and one transaction per batch, with the indexing events in the same
+ * transaction. A result line is written for every input line after each batch, so the
+ * client sees progress while the upload is still running.
+ */
+@Service
+@RequiredArgsConstructor
+public class PlanBulkImporter {
+    private final JsonValidator validator;
+    private final PlanService planService;
+
+    @Value("${bulk.batch-size}")
+    private int batchSize;
+
+    /**
+     * Reads plans from {@code in} and writes {@code {"line", "status", ...}} results to
+     * {@code out}. Lines are numbered from 1; blank lines are skipped.
+     */
+    public void importPlans(InputStream in, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        Batch batch = new Batch();
+
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank())
+                continue;
+
+            try {
+                JSONObject plan = new JSONObject(line);
+                validator.validateJson(plan);
+                batch.add(lineNumber, plan);
+            } catch (ValidationException e) {
+                batch.results.add(error(lineNumber, 400, e.getErrorMessage()));
+            } catch (JSONException e) {
+                batch.results.add(error(lineNumber, 400, e.getMessage()));
+            }
+
+            if (batch.plans.size() >= batchSize || batch.results.size() >= batchSize)
+                flush(batch, writer);
+        }
+        flush(batch, writer);
+    }
+
+    private void flush(Batch batch, Writer writer) throws IOException {
+        try {
+            write(batch);
+        } catch (RuntimeException e) {
+            // The status is already committed, so the failure is reported per line
+            System.err.println("Bulk import batch failed: " + e.getMessage());
+            batch.results.removeIf(result -> result.getInt("status") != 400);
+            for (int line : batch.lines) {
+                batch.results.add(error(line, 500, "Failed to store plan: " + e.getMessage()));
+            }
+        }
+
+        batch.results.sort((a, b) -> Integer.compare(a.getInt("line"), b.getInt("line")));
+        for (JSONObject result : batch.results) {
+            writer.write(result.toString());
+            writer.write('\n');
+        }
+        writer.flush();
+        batch.clear();
+    }
+
+    private void write(Batch batch) {
+        if (!batch.plans.isEmpty()) {
+            Set<String> existing = planService.existingPlans(batch.keys);
+            Set<String> seen = new HashSet<>();
+            List<String> keys = new ArrayList<>();
+            List<JSONObject> plans = new ArrayList<>();
+            List<Integer> lines = new ArrayList<>();
+            for (int i = 0; i < batch.keys.size(); i++) {
+                String key = batch.keys.get(i);
+                if (existing.contains(key) || !seen.add(key)) {
+                    batch.results.add(error(batch.lines.get(i), 409, "Plan already exist"));
+                    continue;
+                }
+                keys.add(key);
+                plans.add(batch.plans.get(i));
+                lines.add(batch.lines.get(i));
+            }
+
+            if (!keys.isEmpty()) {
+                List<String> eTags = planService.createPlans(keys, plans);
+                for (int i = 0; i < keys.size(); i++) {
+                    batch.results.add(new JSONObject()
+                            .put("line", lines.get(i))
+                            .put("status", 201)
+                            .put("objectId", plans.get(i).getString("objectId"))
+                            .put("etag", eTags.get(i)));
+                }
+            }
+        }
+    }
+
+    private JSONObject error(int line, int status, String message) {
+        return new JSONObject().put("line", line).put("status", status).put("error", message);
+    }
+
+    private static class Batch {
+        private final List<Integer> lines = new ArrayList<>();
+        private final List<String> keys = new ArrayList<>();
+        private final List<JSONObject> plans = new ArrayList<>();
+        private final List<JSONObject> results = new ArrayList<>();
+
+        private void add(int line, JSONObject plan) {
+            lines.add(line);
+            keys.add(plan.get("objectType") + "_" + plan.get("objectId"));
+            plans.add(plan);
+        }
+
+        private void clear() {
+            lines.clear();
+            keys.clear();
+            plans.clear();
+            results.clear();
+        }
+    }
+}
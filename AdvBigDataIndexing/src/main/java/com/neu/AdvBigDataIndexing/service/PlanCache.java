@@ -0,0 +1,198 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import com.neu.AdvBigDataIndexing.model.PlanDocument;
+import com.neu.AdvBigDataIndexing.repository.RedisRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process cache of stored plans (serialized bytes and ETag) in front of Redis,
+ * bounded by entry count and total body size and evicted least recently used. Every
+ * write invalidates the plan locally and publishes its key on a Redis channel so the
+ * other instances drop their copy. Nothing is cached while that subscription is down,
+ * and the cache is dropped whenever it is (re)established, since invalidations may
+ * have been missed.
+ */
+@Component
+public class PlanCache {
+    private static final String CHANNEL = "plan-cache:invalidate";
+    private static final String KEY_SEPARATOR = "\n";
+
+    private final RedisRepository redisRepository;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, PlanDocument> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong generation = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private long bytes;
+
+    private volatile boolean running;
+    private volatile boolean subscribed;
+    private volatile JedisPubSub subscription;
+
+    public PlanCache(RedisRepository redisRepository, MeterRegistry meterRegistry,
+                     @Value("${plan.cache.max-entries}") int maxEntries,
+                     @Value("${plan.cache.max-bytes}") long maxBytes) {
+        this.redisRepository = redisRepository;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.hits = meterRegistry.counter("plan.cache", "result", "hit");
+        this.misses = meterRegistry.counter("plan.cache", "result", "miss");
+        this.evictions = meterRegistry.counter("plan.cache.evictions");
+        Gauge.builder("plan.cache.size", this, PlanCache::size)
+                .description("Plans held in the near cache")
+                .register(meterRegistry);
+        Gauge.builder("plan.cache.bytes", this, PlanCache::bytes)
+                .baseUnit("bytes")
+                .description("Serialized plan bytes held in the near cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached version of the plan, or null when it is not cached.
+     */
+    public PlanDocument get(String key) {
+        PlanDocument document;
+        synchronized (entries) {
+            document = entries.get(key);
+        }
+        (document == null ? misses : hits).increment();
+        return document;
+    }
+
+    /**
+     * Returns the generation to pass to {@link #put}; documents read from Redis before
+     * an invalidation are not cached.
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    public void put(String key, PlanDocument document, long generation) {
+        long size = document.getBody().length;
+        if (size > maxBytes || !subscribed)
+            return;
+        synchronized (entries) {
+            if (generation != this.generation.get())
+                return;
+            PlanDocument previous = entries.put(key, document);
+            bytes += size - (previous == null ? 0 : previous.getBody().length);
+            Iterator<PlanDocument> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries || bytes > maxBytes) {
+                bytes -= eldest.next().getBody().length;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Drops the plans on this instance and notifies the other instances. Called after
+     * the plans were written or deleted.
+     */
+    public void invalidate(Collection<String> keys) {
+        if (keys.isEmpty())
+            return;
+        evict(keys);
+        redisRepository.publish(CHANNEL, String.join(KEY_SEPARATOR, keys));
+    }
+
+    /**
+     * Drops the plans on this instance only, e.g. when a write found the cached
+     * version outdated.
+     */
+    public void evict(Collection<String> keys) {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            for (String key : keys) {
+                PlanDocument removed = entries.remove(key);
+                if (removed != null)
+                    bytes -= removed.getBody().length;
+            }
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        Thread thread = new Thread(this::listen, "plan-cache-invalidation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        JedisPubSub current = subscription;
+        if (current != null && current.isSubscribed())
+            current.unsubscribe();
+    }
+
+    private void listen() {
+        while (running) {
+            subscription = new JedisPubSub() {
+                @Override
+                public void onSubscribe(String channel, int subscribedChannels) {
+                    // Writes published before (re)subscribing were missed
+                    clear();
+                    subscribed = true;
+                }
+
+                @Override
+                public void onMessage(String channel, String message) {
+                    evict(List.of(message.split(KEY_SEPARATOR)));
+                }
+            };
+            try {
+                redisRepository.subscribe(subscription, CHANNEL);
+            } catch (Exception e) {
+                if (running)
+                    System.err.println("Plan cache invalidation subscription failed, retrying: " + e.getMessage());
+            }
+            // Invalidations are missed until the subscription is back
+            subscribed = false;
+            clear();
+            if (!running)
+                return;
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException interrupted) {
+                return;
+            }
+        }
+    }
+
+    private void clear() {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    private int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private long bytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+}
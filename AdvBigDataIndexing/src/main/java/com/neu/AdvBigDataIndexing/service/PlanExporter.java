@@ -0,0 +1,63 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import com.neu.AdvBigDataIndexing.repository.PlanStore;
+import com.neu.AdvBigDataIndexing.repository.RedisRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes every stored plan as NDJSON. Plan keys are walked with SCAN, one page of
+ * {@code scanCount} keys at a time, and each page is read with one pipelined batch and
+ * written before the next page is fetched. Memory use is bounded by one page, and a
+ * slow reader slows down the scan because writes block. SCAN may return a key twice
+ * while Redis resizes its keyspace, so consumers should treat objectId as the identity.
+ */
+@Service
+public class PlanExporter {
+    private static final String PLAN_KEY_PATTERN = "plan_*";
+
+    private final RedisRepository redisRepository;
+    private final PlanStore planStore;
+    private final int scanCount;
+
+    public PlanExporter(RedisRepository redisRepository, PlanStore planStore,
+                        @Value("${export.scan-count}") int scanCount) {
+        this.redisRepository = redisRepository;
+        this.planStore = planStore;
+        this.scanCount = scanCount;
+    }
+
+    /**
+     * Returns the number of plans written.
+     */
+    public long export(OutputStream out) throws IOException {
+        ScanParams params = new ScanParams().match(PLAN_KEY_PATTERN).count(scanCount);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        long count = 0;
+
+        do {
+            String pageCursor = cursor;
+            ScanResult<String> page = redisRepository.execute("scan", jedis -> jedis.scan(pageCursor, params));
+            List<String> keys = page.getResult();
+            if (!keys.isEmpty()) {
+                for (byte[] document : planStore.readDocuments(keys)) {
+                    // Deleted between SCAN and read
+                    if (document == null)
+                        continue;
+                    out.write(document);
+                    out.write('\n');
+                    count++;
+                }
+                out.flush();
+            }
+            cursor = page.getCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        return count;
+    }
+}
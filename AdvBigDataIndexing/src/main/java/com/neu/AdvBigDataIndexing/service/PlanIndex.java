@@ -0,0 +1,181 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.mapping.Property;
+import co.elastic.clients.elasticsearch.indices.update_aliases.Action;
+import com.neu.AdvBigDataIndexing.repository.RedisRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.params.SetParams;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The plan index. Clients read and write through the {@code plan-index} alias, which
+ * points at one versioned index {@code plan-index-v<N>}. While a reindex is running its
+ * target index is published in Redis, and consumers write every change to the target
+ * as well, so the new index does not miss changes made during the rebuild.
+ * <p>
+ * Deleted documents are remembered with their external version for
+ * {@code indexing.gc-deletes-ms} ({@code index.gc_deletes}), which has to exceed the
+ * longest time a retried change can arrive after a newer delete, see
+ * {@link IndexingRetrier}.
+ */
+@Component
+public class PlanIndex {
+    public static final String ALIAS = "plan-index";
+    private static final String VERSION_PREFIX = ALIAS + "-v";
+    private static final String REINDEX_TARGET_KEY = "plan-index:reindex-target";
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final RedisRepository redisRepository;
+    private final long targetRefreshMs;
+    private final long gcDeletesMs;
+
+    private volatile boolean ready;
+    private volatile List<String> writeTargets = List.of(ALIAS);
+    private volatile long writeTargetsLoadedAt;
+
+    public PlanIndex(ElasticsearchClient elasticsearchClient, RedisRepository redisRepository,
+                     @Value("${reindex.target-refresh-ms}") long targetRefreshMs,
+                     @Value("${indexing.gc-deletes-ms}") long gcDeletesMs) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.redisRepository = redisRepository;
+        this.targetRefreshMs = targetRefreshMs;
+        this.gcDeletesMs = gcDeletesMs;
+    }
+
+    /**
+     * Creates {@code plan-index-v1} behind the alias unless the alias, or an index
+     * created before the alias existed, is already there; an existing index gets the
+     * configured {@code index.gc_deletes}.
+     */
+    public synchronized void ensureExists() throws IOException {
+        if (ready)
+            return;
+        boolean exists = elasticsearchClient.indices().exists(e -> e.index(ALIAS)).value();
+        if (!exists) {
+            try {
+                create(VERSION_PREFIX + 1, false);
+            } catch (ElasticsearchException e) {
+                // Another instance created it first
+                if (!"resource_already_exists_exception".equals(e.error().type()))
+                    throw e;
+            }
+        } else {
+            elasticsearchClient.indices().putSettings(p -> p
+                    .index(ALIAS)
+                    .settings(s -> s.gcDeletes(t -> t.time(gcDeletesMs + "ms"))));
+        }
+        ready = true;
+    }
+
+    /**
+     * Creates a versioned index. With {@code bulkLoad} it has no replicas and is never
+     * refreshed until {@link #finishBulkLoad} is called; otherwise it is created behind
+     * the alias.
+     */
+    public void create(String index, boolean bulkLoad) throws IOException {
+        elasticsearchClient.indices().create(c -> {
+            c.index(index)
+                    .settings(s -> {
+                        s.numberOfShards("1").numberOfReplicas(bulkLoad ? "0" : "1")
+                                .gcDeletes(t -> t.time(gcDeletesMs + "ms"));
+                        if (bulkLoad)
+                            s.refreshInterval(t -> t.time("-1"));
+                        return s;
+                    })
+                    .mappings(m -> m
+                            .properties("plan_join", Property.of(p -> p.join(j -> j
+                                    .relations("plan", List.of("membercostshare", "planservice"))
+                                    .relations("planservice", List.of("service", "planserviceCostShare"))
+                            )))
+                    );
+            if (!bulkLoad)
+                c.aliases(ALIAS, a -> a);
+            return c;
+        });
+    }
+
+    public void finishBulkLoad(String index) throws IOException {
+        elasticsearchClient.indices().putSettings(p -> p
+                .index(index)
+                .settings(s -> s.numberOfReplicas("1").refreshInterval(t -> t.time("1s"))));
+        elasticsearchClient.indices().refresh(r -> r.index(index));
+    }
+
+    /**
+     * Returns the name of the next versioned index.
+     */
+    public String nextVersion() throws IOException {
+        int version = 0;
+        for (String index : elasticsearchClient.indices().get(g -> g.index(VERSION_PREFIX + "*")).result().keySet()) {
+            try {
+                version = Math.max(version, Integer.parseInt(index.substring(VERSION_PREFIX.length())));
+            } catch (NumberFormatException ignored) {
+                // Not one of ours
+            }
+        }
+        return VERSION_PREFIX + (version + 1);
+    }
+
+    /**
+     * Points the alias at {@code index} in one atomic update. An index that is still
+     * called {@code plan-index} itself is deleted in the same update.
+     */
+    public void swapAlias(String index) throws IOException {
+        List<Action> actions = new ArrayList<>();
+        boolean aliasExists = elasticsearchClient.indices().existsAlias(e -> e.name(ALIAS)).value();
+        if (aliasExists) {
+            for (String current : elasticsearchClient.indices().getAlias(g -> g.name(ALIAS)).result().keySet()) {
+                actions.add(Action.of(a -> a.remove(r -> r.index(current).alias(ALIAS))));
+            }
+        } else if (elasticsearchClient.indices().exists(e -> e.index(ALIAS)).value()) {
+            actions.add(Action.of(a -> a.removeIndex(r -> r.index(ALIAS))));
+        }
+        actions.add(Action.of(a -> a.add(ad -> ad.index(index).alias(ALIAS))));
+        elasticsearchClient.indices().updateAliases(u -> u.actions(actions));
+    }
+
+    /**
+     * Makes consumers write to {@code index} in addition to the alias, for at most
+     * {@code ttlMs} unless renewed. Returns false when another reindex is running.
+     */
+    public boolean startDualWrite(String index, long ttlMs) {
+        return "OK".equals(redisRepository.execute("set", jedis -> jedis.set(REINDEX_TARGET_KEY, index,
+                SetParams.setParams().nx().px(ttlMs))));
+    }
+
+    public void renewDualWrite(long ttlMs) {
+        redisRepository.execute("pexpire", jedis -> jedis.pexpire(REINDEX_TARGET_KEY, ttlMs));
+    }
+
+    public void stopDualWrite() {
+        redisRepository.delete(REINDEX_TARGET_KEY);
+    }
+
+    public void delete(String index) throws IOException {
+        elasticsearchClient.indices().delete(d -> d.index(index));
+    }
+
+    /**
+     * The indices every change has to be written to: the alias, plus the target of a
+     * running reindex. Re-read from Redis at most every {@code reindex.target-refresh-ms}.
+     */
+    public List<String> writeTargets() {
+        long now = System.currentTimeMillis();
+        if (now - writeTargetsLoadedAt > targetRefreshMs) {
+            String target = redisRepository.get(REINDEX_TARGET_KEY);
+            writeTargets = target == null ? List.of(ALIAS) : List.of(ALIAS, target);
+            writeTargetsLoadedAt = now;
+        }
+        return writeTargets;
+    }
+
+    public long getTargetRefreshMs() {
+        return targetRefreshMs;
+    }
+}
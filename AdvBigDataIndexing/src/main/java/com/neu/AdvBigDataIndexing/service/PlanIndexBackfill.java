@@ -0,0 +1,126 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import com.neu.AdvBigDataIndexing.repository.PlanIndexes;
+import com.neu.AdvBigDataIndexing.repository.PlanStore;
+import com.neu.AdvBigDataIndexing.repository.RedisRepository;
+import jakarta.annotation.PostConstruct;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.params.SetParams;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Adds plans stored before the secondary indexes existed, or before their layout
+ * changed, to {@link PlanIndexes}. After startup one instance SCANs all plans while
+ * holding a lock, and marks the indexes with their version when done so later starts
+ * skip it. Plans written in the meantime are indexed by the write itself; a plan read
+ * here is only indexed if it is still at the ETag read before it, so running this on
+ * two instances at once is harmless. It waits for {@link PlanUpgrade} to convert the
+ * plans stored as strings first.
+ */
+@Component
+public class PlanIndexBackfill {
+    private static final String VERSION_KEY = "plan-index:version";
+    private static final String LOCK_KEY = "plan-index:backfill";
+    private static final String PLAN_KEY_PATTERN = "plan_*";
+    private static final long RETRY_MS = 60000;
+
+    private final RedisRepository redisRepository;
+    private final PlanStore planStore;
+    private final PlanIndexes planIndexes;
+    private final PlanUpgrade planUpgrade;
+    private final int scanCount;
+    private final long lockTtlMs;
+
+    public PlanIndexBackfill(RedisRepository redisRepository, PlanStore planStore, PlanIndexes planIndexes,
+                             PlanUpgrade planUpgrade,
+                             @Value("${export.scan-count}") int scanCount,
+                             @Value("${plan.index.backfill-lock-ms}") long lockTtlMs) {
+        this.redisRepository = redisRepository;
+        this.planStore = planStore;
+        this.planIndexes = planIndexes;
+        this.planUpgrade = planUpgrade;
+        this.scanCount = scanCount;
+        this.lockTtlMs = lockTtlMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        Thread thread = new Thread(this::run, "plan-index-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        while (true) {
+            try {
+                if (backfill())
+                    return;
+            } catch (Exception e) {
+                System.err.println("Plan index backfill failed, retrying: " + e.getMessage());
+            }
+            try {
+                // Another instance is running it, plans are being upgraded, or Redis is unavailable
+                Thread.sleep(RETRY_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns true once the indexes are complete, false when another instance holds
+     * the lock or plans still have to be upgraded.
+     */
+    boolean backfill() {
+        if (PlanIndexes.VERSION.equals(redisRepository.get(VERSION_KEY)))
+            return true;
+        if (!planUpgrade.isComplete())
+            return false;
+        if (!"OK".equals(redisRepository.execute("set", jedis -> jedis.set(LOCK_KEY, "1",
+                SetParams.setParams().nx().px(lockTtlMs)))))
+            return false;
+
+        try {
+            long indexed = 0;
+            ScanParams params = new ScanParams().match(PLAN_KEY_PATTERN).count(scanCount);
+            String cursor = ScanParams.SCAN_POINTER_START;
+            do {
+                String pageCursor = cursor;
+                ScanResult<String> page = redisRepository.execute("scan", jedis -> jedis.scan(pageCursor, params));
+                List<String> keys = page.getResult();
+                if (!keys.isEmpty())
+                    indexed += index(keys);
+                redisRepository.execute("pexpire", jedis -> jedis.pexpire(LOCK_KEY, lockTtlMs));
+                cursor = page.getCursor();
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+
+            redisRepository.set(VERSION_KEY, PlanIndexes.VERSION);
+            System.out.println("Added " + indexed + " plans to the plan indexes");
+            return true;
+        } finally {
+            redisRepository.delete(LOCK_KEY);
+        }
+    }
+
+    private int index(List<String> keys) {
+        // ETags first: a document read after its ETag is at least as new
+        List<Object> eTags = redisRepository.pipelined(p -> keys.forEach(key -> p.hget(key, "etag")));
+        List<byte[]> documents = planStore.readDocuments(keys);
+        int indexed = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            if (eTags.get(i) == null || documents.get(i) == null)
+                continue;
+            String key = keys.get(i);
+            JSONObject plan = new JSONObject(new String(documents.get(i), StandardCharsets.UTF_8));
+            if (planIndexes.updateIfCurrent(key, key.substring(key.indexOf('_') + 1), (String) eTags.get(i), plan))
+                indexed++;
+        }
+        return indexed;
+    }
+}
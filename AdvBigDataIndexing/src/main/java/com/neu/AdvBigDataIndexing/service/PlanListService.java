@@ -0,0 +1,77 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import com.neu.AdvBigDataIndexing.model.PlanListCriteria;
+import com.neu.AdvBigDataIndexing.repository.PlanIndexes;
+import com.neu.AdvBigDataIndexing.repository.PlanStore;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lists plans from the Redis secondary indexes, in creationDate order, so simple
+ * filtered listings need neither Elasticsearch nor an up to date search index. The
+ * cursor handed to clients encodes the creationDate and id of the last plan examined.
+ */
+@Service
+public class PlanListService {
+    private final PlanIndexes planIndexes;
+    private final PlanStore planStore;
+    private final int maxExamined;
+
+    public PlanListService(PlanIndexes planIndexes, PlanStore planStore,
+                           @Value("${plan.list.max-examined}") int maxExamined) {
+        this.planIndexes = planIndexes;
+        this.planStore = planStore;
+        this.maxExamined = maxExamined;
+    }
+
+    /**
+     * Returns {@code {"plans": [...], "next": cursor}} as JSON; next is null on the last
+     * page. A page can hold fewer than {@code size} plans while next is not null.
+     */
+    public byte[] list(PlanListCriteria criteria) {
+        PlanIndexes.Page page = planIndexes.list(criteria, maxExamined);
+        List<String> keys = new ArrayList<>(page.getIds().size());
+        page.getIds().forEach(id -> keys.add("plan_" + id));
+
+        // The stored documents are written out as they are, without parsing them
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes("{\"plans\":[".getBytes(StandardCharsets.UTF_8));
+        boolean first = true;
+        for (byte[] document : keys.isEmpty() ? List.<byte[]>of() : planStore.readDocuments(keys)) {
+            // Deleted since the indexes were read
+            if (document == null)
+                continue;
+            if (!first)
+                out.write(',');
+            out.writeBytes(document);
+            first = false;
+        }
+        String next = page.getNextDay() == null ? null : encodeCursor(page.getNextDay(), page.getNextId());
+        out.writeBytes(("],\"next\":" + (next == null ? "null" : JSONObject.quote(next)) + "}").getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    public static String encodeCursor(long day, String id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((day + ":" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the creationDate day and id a cursor points after; throws
+     * IllegalArgumentException for a malformed cursor.
+     */
+    public static Map.Entry<Long, String> decodeCursor(String cursor) {
+        String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        int separator = position.indexOf(':');
+        if (separator < 0)
+            throw new IllegalArgumentException("Invalid cursor");
+        return Map.entry(Long.parseLong(position.substring(0, separator)), position.substring(separator + 1));
+    }
+}
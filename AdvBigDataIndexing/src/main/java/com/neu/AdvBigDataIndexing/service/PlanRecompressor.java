@@ -0,0 +1,153 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import com.neu.AdvBigDataIndexing.repository.PlanCodec;
+import com.neu.AdvBigDataIndexing.repository.PlanStore;
+import com.neu.AdvBigDataIndexing.repository.RedisRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Migrates stored plans to the encoding configured with {@code plan.codec}. When asked
+ * to, it first trains a dictionary from a sample of the stored plans and publishes it
+ * to every instance; it then SCANs all plans and rewrites the documents that are not
+ * in the current encoding, one page at a time. Plans are served normally throughout,
+ * since every encoding stays readable, and running it again only touches documents
+ * written in the meantime with an older dictionary.
+ */
+@Service
+public class PlanRecompressor {
+    public enum State { IDLE, RUNNING, COMPLETED, FAILED }
+
+    private static final String PLAN_KEY_PATTERN = "plan_*";
+
+    private final RedisRepository redisRepository;
+    private final PlanStore planStore;
+    private final PlanCodec planCodec;
+    private final int scanCount;
+    private final int samples;
+    private final int dictionarySize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong rewritten = new AtomicLong();
+    private volatile State state = State.IDLE;
+    private volatile Integer dictionary;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    public PlanRecompressor(RedisRepository redisRepository, PlanStore planStore, PlanCodec planCodec,
+                            @Value("${export.scan-count}") int scanCount,
+                            @Value("${plan.codec.dictionary.samples}") int samples,
+                            @Value("${plan.codec.dictionary.size}") int dictionarySize) {
+        this.redisRepository = redisRepository;
+        this.planStore = planStore;
+        this.planCodec = planCodec;
+        this.scanCount = scanCount;
+        this.samples = samples;
+        this.dictionarySize = dictionarySize;
+    }
+
+    /**
+     * Starts the migration in the background, training a new dictionary first when
+     * {@code train} is set. Returns false when one is already running on this instance.
+     */
+    public boolean start(boolean train) {
+        if (!running.compareAndSet(false, true))
+            return false;
+
+        scanned.set(0);
+        rewritten.set(0);
+        dictionary = null;
+        error = null;
+        finishedAt = null;
+        startedAt = Instant.now();
+        state = State.RUNNING;
+
+        Thread thread = new Thread(() -> run(train), "plan-recompress");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    public Map<String, Object> getProgress() {
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("state", state);
+        progress.put("dictionary", dictionary);
+        progress.put("scanned", scanned.get());
+        progress.put("rewritten", rewritten.get());
+        if (startedAt != null) {
+            Duration elapsed = Duration.between(startedAt, finishedAt == null ? Instant.now() : finishedAt);
+            progress.put("startedAt", startedAt.toString());
+            progress.put("elapsedSeconds", elapsed.toSeconds());
+        }
+        progress.put("finishedAt", finishedAt == null ? null : finishedAt.toString());
+        progress.put("error", error);
+        return progress;
+    }
+
+    private void run(boolean train) {
+        try {
+            if (train) {
+                byte[] trained = PlanCodec.train(sample(), dictionarySize);
+                dictionary = planCodec.publishDictionary(trained);
+                System.out.println("Published plan compression dictionary " + dictionary + " (" + trained.length + " bytes)");
+            }
+
+            ScanParams params = new ScanParams().match(PLAN_KEY_PATTERN).count(scanCount);
+            String cursor = ScanParams.SCAN_POINTER_START;
+            do {
+                String pageCursor = cursor;
+                ScanResult<String> page = redisRepository.execute("scan", jedis -> jedis.scan(pageCursor, params));
+                List<String> keys = page.getResult();
+                if (!keys.isEmpty()) {
+                    rewritten.addAndGet(planStore.recompress(keys));
+                    scanned.addAndGet(keys.size());
+                }
+                cursor = page.getCursor();
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+
+            state = State.COMPLETED;
+            System.out.println("Recompressed " + rewritten.get() + " of " + scanned.get() + " plans");
+        } catch (Exception e) {
+            System.err.println("Recompression failed: " + e.getMessage());
+            error = e.getMessage();
+            state = State.FAILED;
+        } finally {
+            finishedAt = Instant.now();
+            running.set(false);
+        }
+    }
+
+    /**
+     * Reads up to {@code samples} plans, taken from the start of the keyspace.
+     */
+    private List<byte[]> sample() {
+        List<byte[]> documents = new ArrayList<>(samples);
+        ScanParams params = new ScanParams().match(PLAN_KEY_PATTERN).count(scanCount);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            String pageCursor = cursor;
+            ScanResult<String> page = redisRepository.execute("scan", jedis -> jedis.scan(pageCursor, params));
+            if (!page.getResult().isEmpty()) {
+                for (byte[] document : planStore.readDocuments(page.getResult())) {
+                    if (document != null && documents.size() < samples)
+                        documents.add(document);
+                }
+            }
+            cursor = page.getCursor();
+        } while (documents.size() < samples && !ScanParams.SCAN_POINTER_START.equals(cursor));
+        return documents;
+    }
+}
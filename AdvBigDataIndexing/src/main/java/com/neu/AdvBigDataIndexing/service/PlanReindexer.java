@@ -0,0 +1,236 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import com.neu.AdvBigDataIndexing.model.IndexingMessage.Document;
+import com.neu.AdvBigDataIndexing.repository.Outbox;
+import com.neu.AdvBigDataIndexing.repository.PlanStore;
+import com.neu.AdvBigDataIndexing.repository.RedisRepository;
+import com.neu.AdvBigDataIndexing.util.IndexingEvents;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Rebuilds the plan index from Redis without downtime:
+ * <ol>
+ *     <li>creates the next {@code plan-index-v<N>} without replicas and refreshes</li>
+ *     <li>makes consumers write every change to it as well as to the alias</li>
+ *     <li>SCANs all plans and indexes them on {@code reindex.workers} threads, one SCAN
+ *     page per task. Documents of versioned plans are indexed with the plan version as
+ *     external version, and those of plans without a version are only created when
+ *     missing, so a change a consumer already wrote is never overwritten by an older
+ *     copy</li>
+ *     <li>restores replicas and refreshes, then moves the alias in one update</li>
+ * </ol>
+ * Searches keep using the old index until the alias moves. A reindex that failed to
+ * write any document fails and deletes the new index instead of moving the alias.
+ */
+@Service
+public class PlanReindexer {
+    public enum State { IDLE, RUNNING, COMPLETED, FAILED }
+
+    private final RedisRepository redisRepository;
+    private final PlanStore planStore;
+    private final Outbox outbox;
+    private final PlanIndex planIndex;
+    private final BulkIndexer bulkIndexer;
+    private final int workers;
+    private final int scanCount;
+    private final long claimTtlMs;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong plans = new AtomicLong();
+    private final AtomicLong documents = new AtomicLong();
+    private final AtomicLong failedDocuments = new AtomicLong();
+    private volatile State state = State.IDLE;
+    private volatile String index;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    public PlanReindexer(RedisRepository redisRepository, PlanStore planStore, Outbox outbox, PlanIndex planIndex, BulkIndexer bulkIndexer,
+                         @Value("${reindex.workers}") int workers,
+                         @Value("${export.scan-count}") int scanCount,
+                         @Value("${reindex.claim-ttl-ms}") long claimTtlMs) {
+        this.redisRepository = redisRepository;
+        this.planStore = planStore;
+        this.outbox = outbox;
+        this.planIndex = planIndex;
+        this.bulkIndexer = bulkIndexer;
+        this.workers = workers;
+        this.scanCount = scanCount;
+        this.claimTtlMs = claimTtlMs;
+    }
+
+    /**
+     * Starts a reindex in the background. Returns false when one is already running
+     * on this instance.
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true))
+            return false;
+
+        plans.set(0);
+        documents.set(0);
+        failedDocuments.set(0);
+        index = null;
+        error = null;
+        finishedAt = null;
+        startedAt = Instant.now();
+        state = State.RUNNING;
+
+        Thread thread = new Thread(this::run, "plan-reindex");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    public Map<String, Object> getProgress() {
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("state", state);
+        progress.put("index", index);
+        progress.put("plans", plans.get());
+        progress.put("documents", documents.get());
+        progress.put("failedDocuments", failedDocuments.get());
+        if (startedAt != null) {
+            Duration elapsed = Duration.between(startedAt, finishedAt == null ? Instant.now() : finishedAt);
+            progress.put("startedAt", startedAt.toString());
+            progress.put("elapsedSeconds", elapsed.toSeconds());
+            progress.put("plansPerSecond", elapsed.toMillis() == 0 ? 0 : plans.get() * 1000 / elapsed.toMillis());
+        }
+        progress.put("finishedAt", finishedAt == null ? null : finishedAt.toString());
+        progress.put("error", error);
+        return progress;
+    }
+
+    private void run() {
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        Semaphore pagesInFlight = new Semaphore(workers * 2);
+        AtomicReference<Exception> workerError = new AtomicReference<>();
+        String target = null;
+        boolean claimed = false;
+
+        try {
+            target = planIndex.nextVersion();
+            index = target;
+            if (!planIndex.startDualWrite(target, claimTtlMs))
+                throw new IllegalStateException("Another reindex is running");
+            claimed = true;
+            planIndex.create(target, true);
+
+            // Give every consumer time to pick up the new write target
+            Thread.sleep(planIndex.getTargetRefreshMs() * 2);
+
+            ScanParams params = new ScanParams().match("plan_*").count(scanCount);
+            String cursor = ScanParams.SCAN_POINTER_START;
+            String targetIndex = target;
+            do {
+                String pageCursor = cursor;
+                ScanResult<String> page = redisRepository.execute("scan", jedis -> jedis.scan(pageCursor, params));
+                List<String> keys = page.getResult();
+                if (!keys.isEmpty()) {
+                    // Bounds the pages held in memory when the workers fall behind
+                    pagesInFlight.acquire();
+                    pool.execute(() -> {
+                        try {
+                            load(targetIndex, keys);
+                        } catch (Exception e) {
+                            workerError.compareAndSet(null, e);
+                        } finally {
+                            pagesInFlight.release();
+                        }
+                    });
+                }
+                if (workerError.get() != null)
+                    throw workerError.get();
+                planIndex.renewDualWrite(claimTtlMs);
+                cursor = page.getCursor();
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+
+            pool.shutdown();
+            while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                planIndex.renewDualWrite(claimTtlMs);
+            }
+            if (workerError.get() != null)
+                throw workerError.get();
+            // Going live would drop the failed documents from search
+            if (failedDocuments.get() > 0)
+                throw new IllegalStateException(failedDocuments.get() + " documents failed to index into " + target);
+
+            planIndex.finishBulkLoad(target);
+            planIndex.swapAlias(target);
+            state = State.COMPLETED;
+            System.out.println("Reindexed " + plans.get() + " plans into " + target);
+        } catch (Exception e) {
+            System.err.println("Reindex failed: " + e.getMessage());
+            error = e.getMessage();
+            state = State.FAILED;
+            if (claimed) {
+                try {
+                    planIndex.delete(target);
+                } catch (Exception deleteFailure) {
+                    System.err.println("Failed to delete " + target + ": " + deleteFailure.getMessage());
+                }
+            }
+            if (e instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+            if (claimed)
+                planIndex.stopDualWrite();
+            finishedAt = Instant.now();
+            running.set(false);
+        }
+    }
+
+    private void load(String index, List<String> keys) throws Exception {
+        List<String> planIds = new ArrayList<>(keys.size());
+        keys.forEach(key -> planIds.add(key.substring(key.indexOf('_') + 1)));
+        // Read first, so the documents are at least as new as their version
+        List<Long> versions = outbox.versions(planIds);
+        List<byte[]> stored = planStore.readDocuments(keys);
+
+        List<BulkOperation> operations = new ArrayList<>();
+        for (int i = 0; i < stored.size(); i++) {
+            byte[] document = stored.get(i);
+            if (document == null)
+                continue;
+            JSONObject plan = new JSONObject(new String(document, StandardCharsets.UTF_8));
+            Long version = versions.get(i);
+            for (Document upsert : IndexingEvents.save(plan.getString("objectId"), plan).getUpserts()) {
+                operations.add(version == null
+                        ? BulkIndexer.createOperation(index, upsert.getId(), upsert.getRouting(), upsert.getSource())
+                        : BulkIndexer.indexOperation(index, upsert.getId(), upsert.getRouting(), upsert.getSource(), version));
+            }
+            plans.incrementAndGet();
+        }
+
+        Map<Integer, BulkResponseItem> failures = bulkIndexer.execute(operations);
+        long failed = 0;
+        for (BulkResponseItem failure : failures.values()) {
+            // 409: a consumer already wrote this or a newer version of the document
+            if (failure.status() != 409)
+                failed++;
+        }
+        documents.addAndGet(operations.size() - failed);
+        failedDocuments.addAndGet(failed);
+    }
+}
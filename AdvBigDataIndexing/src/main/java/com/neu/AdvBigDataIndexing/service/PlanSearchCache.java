@@ -0,0 +1,139 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import com.neu.AdvBigDataIndexing.model.PlanSearchCriteria;
+import com.neu.AdvBigDataIndexing.repository.RedisRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-lived cache of serialized search results. Whenever a consumer has applied
+ * index changes it publishes an invalidation on a Redis channel, and every instance
+ * drops its cached results; the TTL bounds how long a result that was cached before
+ * Elasticsearch refreshed can be served.
+ */
+@Component
+public class PlanSearchCache {
+    private static final String CHANNEL = "plan-search:invalidate";
+
+    private final RedisRepository redisRepository;
+    private final long ttlMs;
+    private final Map<PlanSearchCriteria, Entry> entries;
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile JedisPubSub subscription;
+
+    public PlanSearchCache(RedisRepository redisRepository,
+                           @Value("${search.cache.ttl-ms}") long ttlMs,
+                           @Value("${search.cache.max-entries}") int maxEntries) {
+        this.redisRepository = redisRepository;
+        this.ttlMs = ttlMs;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PlanSearchCriteria, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public String get(PlanSearchCriteria criteria) {
+        synchronized (entries) {
+            Entry entry = entries.get(criteria);
+            if (entry == null)
+                return null;
+            if (entry.expiresAt < System.currentTimeMillis()) {
+                entries.remove(criteria);
+                return null;
+            }
+            return entry.result;
+        }
+    }
+
+    /**
+     * Returns the generation to pass to {@link #put}; results computed before an
+     * invalidation are not cached.
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    public void put(PlanSearchCriteria criteria, String result, long generation) {
+        synchronized (entries) {
+            if (generation == this.generation.get())
+                entries.put(criteria, new Entry(result, System.currentTimeMillis() + ttlMs));
+        }
+    }
+
+    /**
+     * Drops the cached results of this instance and notifies the other instances.
+     */
+    public void invalidate() {
+        clear();
+        redisRepository.publish(CHANNEL, "indexed");
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        Thread thread = new Thread(this::listen, "plan-search-cache-invalidation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        JedisPubSub current = subscription;
+        if (current != null && current.isSubscribed())
+            current.unsubscribe();
+    }
+
+    private void listen() {
+        while (running) {
+            subscription = new JedisPubSub() {
+                @Override
+                public void onMessage(String channel, String message) {
+                    clear();
+                }
+            };
+            try {
+                redisRepository.subscribe(subscription, CHANNEL);
+            } catch (Exception e) {
+                if (!running)
+                    return;
+                System.err.println("Search cache invalidation subscription failed, retrying: " + e.getMessage());
+                // Results may have been missed while disconnected
+                clear();
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void clear() {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+    private static class Entry {
+        private final String result;
+        private final long expiresAt;
+
+        private Entry(String result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
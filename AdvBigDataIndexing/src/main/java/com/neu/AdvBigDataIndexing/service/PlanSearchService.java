@@ -0,0 +1,130 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.Operator;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch._types.query_dsl.RangeQuery;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.json.JsonData;
+import com.neu.AdvBigDataIndexing.model.PlanSearchCriteria;
+import lombok.RequiredArgsConstructor;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translates plan search criteria into join queries against the plan index. Results
+ * are sorted by objectId and paged with search_after; the cursor handed to clients is
+ * the encoded objectId of the last plan of the previous page.
+ */
+@Service
+@RequiredArgsConstructor
+public class PlanSearchService {
+    private static final String SORT_FIELD = "objectId.keyword";
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final PlanSearchCache cache;
+
+    /**
+     * Returns {@code {"plans": [...], "next": cursor}} as JSON; next is null on the last page.
+     */
+    public String search(PlanSearchCriteria criteria) throws IOException {
+        String cached = cache.get(criteria);
+        if (cached != null)
+            return cached;
+
+        long generation = cache.generation();
+        SearchRequest.Builder request = new SearchRequest.Builder()
+                .index(PlanIndex.ALIAS)
+                .query(toQuery(criteria))
+                .size(criteria.getSize())
+                .sort(s -> s.field(f -> f.field(SORT_FIELD).order(SortOrder.Asc)))
+                .trackTotalHits(t -> t.enabled(false));
+        if (criteria.getAfter() != null)
+            request.searchAfter(FieldValue.of(criteria.getAfter()));
+
+        SearchResponse<Map> response = elasticsearchClient.search(request.build(), Map.class);
+        List<Hit<Map>> hits = response.hits().hits();
+
+        JSONArray plans = new JSONArray();
+        for (Hit<Map> hit : hits) {
+            Map<?, ?> source = hit.source();
+            source.remove("plan_join");
+            plans.put(source);
+        }
+        String next = hits.size() < criteria.getSize() ? null
+                : encodeCursor(hits.get(hits.size() - 1).sort().get(0).stringValue());
+
+        String result = new JSONObject().put("plans", plans).put("next", next == null ? JSONObject.NULL : next).toString();
+        cache.put(criteria, result, generation);
+        return result;
+    }
+
+    /**
+     * Only plan documents are returned; every other filter is a has_child join:
+     * plan -> membercostshare for the cost share ranges and
+     * plan -> planservice -> service for the service names.
+     */
+    private Query toQuery(PlanSearchCriteria criteria) {
+        BoolQuery.Builder bool = new BoolQuery.Builder()
+                .filter(f -> f.term(t -> t.field("plan_join").value("plan")));
+
+        if (criteria.getOrg() != null)
+            bool.filter(f -> f.term(t -> t.field("_org.keyword").value(criteria.getOrg())));
+        if (criteria.getPlanType() != null)
+            bool.filter(f -> f.term(t -> t.field("planType.keyword").value(criteria.getPlanType())));
+
+        BoolQuery.Builder costShares = new BoolQuery.Builder();
+        boolean hasCostShareFilter = addRange(costShares, "copay", criteria.getMinCopay(), criteria.getMaxCopay());
+        hasCostShareFilter |= addRange(costShares, "deductible", criteria.getMinDeductible(), criteria.getMaxDeductible());
+        if (hasCostShareFilter) {
+            Query costShareQuery = Query.of(q -> q.bool(costShares.build()));
+            bool.filter(f -> f.hasChild(h -> h.type("membercostshare").query(costShareQuery)));
+        }
+
+        if (criteria.getServices() != null) {
+            for (String service : criteria.getServices()) {
+                bool.filter(f -> f.hasChild(h -> h.type("planservice").query(q -> q.hasChild(c -> c
+                        .type("service")
+                        .query(s -> s.match(m -> m.field("name").query(service).operator(Operator.And)))))));
+            }
+        }
+        return Query.of(q -> q.bool(bool.build()));
+    }
+
+    private boolean addRange(BoolQuery.Builder bool, String field, Integer min, Integer max) {
+        if (min == null && max == null)
+            return false;
+        RangeQuery.Builder range = new RangeQuery.Builder().field(field);
+        if (min != null)
+            range.gte(JsonData.of(min));
+        if (max != null)
+            range.lte(JsonData.of(max));
+        RangeQuery rangeQuery = range.build();
+        bool.filter(f -> f.range(rangeQuery));
+        return true;
+    }
+
+    public static String encodeCursor(String objectId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(objectId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the objectId a cursor points after; throws IllegalArgumentException for
+     * a malformed cursor.
+     */
+    public static String decodeCursor(String cursor) {
+        return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    }
+}
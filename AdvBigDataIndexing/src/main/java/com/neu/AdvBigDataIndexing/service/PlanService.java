@@ -1,122 +1,172 @@
 package com.neu.AdvBigDataIndexing.service;
 
+import com.neu.AdvBigDataIndexing.model.OutboxEvent;
+import com.neu.AdvBigDataIndexing.model.PlanDocument;
+import com.neu.AdvBigDataIndexing.repository.PlanStore;
+import com.neu.AdvBigDataIndexing.util.CanonicalJson;
+import com.neu.AdvBigDataIndexing.util.IndexingEvents;
+import com.neu.AdvBigDataIndexing.util.JsonMerger;
+import com.neu.AdvBigDataIndexing.util.JsonValidator;
 import lombok.RequiredArgsConstructor;
-import org.json.JSONArray;
 import org.json.JSONObject;
 import org.springframework.stereotype.Service;
-import redis.clients.jedis.Jedis;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
 public class PlanService {
-    private final Jedis jedis;
+    private final PlanStore planStore;
     private final ETagService eTagService;
+    private final IndexingMessageCodec codec;
+    private final PlanCache planCache;
+    private final JsonValidator validator;
 
     public boolean isKeyPresent(String key) {
-        String value = jedis.get(key);
-        return !(value == null || value.isEmpty());
+        return planCache.get(key) != null || planStore.exists(key);
     }
 
     public String getETag(String key) {
-        JSONObject response = getPlan(key);
-        return eTagService.getETag(response);
+        PlanDocument cached = planCache.get(key);
+        return cached != null ? cached.getETag() : planStore.getETag(key);
     }
 
     public String createPlan(JSONObject plan, String key) {
-        jedis.set(key, String.valueOf(plan));
-        return eTagService.getETag(plan);
+        String eTag = planStore.save(key, plan, codec.encode(IndexingEvents.save(planId(key), plan)));
+        planCache.invalidate(List.of(key));
+        return eTag;
     }
 
-    public String patchPlan(JSONObject jsonObject) {
-        String id = "plan_" + jsonObject.getString("objectId");  // Fetch ID
-        JSONObject oldPlan = getPlan(id);  // Retrieve existing object
-
-        // Recursively update the JSON
-        mergeJson(oldPlan, jsonObject);
+    /**
+     * Returns which of the plan keys already exist.
+     */
+    public Set<String> existingPlans(List<String> keys) {
+        return planStore.existing(keys);
+    }
 
-        // Save the updated plan
-        jedis.set(id, oldPlan.toString());
+    /**
+     * Creates several plans in one Redis transaction, each queued for indexing, and
+     * returns their ETags in order.
+     */
+    public List<String> createPlans(List<String> keys, List<JSONObject> plans) {
+        List<OutboxEvent> events = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            events.add(codec.encode(IndexingEvents.save(planId(keys.get(i)), plans.get(i))));
+        }
+        List<String> eTags = planStore.saveAll(keys, plans, events);
+        planCache.invalidate(keys);
+        return eTags;
+    }
 
-        return eTagService.getETag(oldPlan);
+    /**
+     * Replaces the plan if it is still at the version of {@code current}; only the
+     * documents that were added, changed or removed are queued for indexing. Returns
+     * the new ETag, or null when the plan was changed or deleted since {@code current}
+     * was read.
+     */
+    public String replacePlan(String key, JSONObject plan, PlanDocument current) {
+        JSONObject oldPlan = parse(current);
+        String eTag = planStore.replace(key, plan, current.getETag(), codec.encode(IndexingEvents.changes(planId(key), oldPlan, plan)));
+        afterWrite(key, eTag != null);
+        return eTag;
     }
 
     /**
-     * Recursively merge new JSON into existing JSON
+     * Reads the stored ETag and, unless it is one of {@code ifNoneMatch}, the stored
+     * bytes, from the near cache when the plan is held there. Returns null if the plan
+     * does not exist.
      */
-    private void mergeJson(JSONObject existing, JSONObject updates) {
-        for (String key : updates.keySet()) {
-            Object newValue = updates.get(key);
-
-            if (!existing.has(key)) {
-                // If the key doesn't exist in old data, add it
-                existing.put(key, newValue);
-            } else {
-                Object existingValue = existing.get(key);
-
-                if (newValue instanceof JSONObject && existingValue instanceof JSONObject) {
-                    // Recursively merge JSON objects
-                    mergeJson((JSONObject) existingValue, (JSONObject) newValue);
-                } else if (newValue instanceof JSONArray && existingValue instanceof JSONArray) {
-                    // Merge JSON arrays intelligently
-                    mergeJsonArray((JSONArray) existingValue, (JSONArray) newValue);
-                } else {
-                    // For simple key-value pairs, update only if different
-                    if (!existingValue.equals(newValue)) {
-                        existing.put(key, newValue);
-                    }
-                }
-            }
+    public PlanDocument getPlanDocument(String key, List<String> ifNoneMatch) {
+        PlanDocument cached = planCache.get(key);
+        if (cached == null) {
+            long generation = planCache.generation();
+            cached = planStore.read(key, List.of());
+            if (cached == null)
+                return null;
+            planCache.put(key, cached, generation);
         }
+        return ifNoneMatch.contains(cached.getETag()) ? new PlanDocument(cached.getETag(), null) : cached;
     }
 
     /**
-     * Merge JSONArray:
-     * - Append new elements if objectId doesn't exist
-     * - Update existing elements based on objectId
+     * Reads the stored ETag and bytes from Redis, dropping the near cache's copy, which
+     * may be outdated, e.g. when an invalidation has not arrived yet. Conditional writes
+     * check a mismatching If-Match against this before failing. Returns null if the
+     * plan does not exist.
      */
-    private void mergeJsonArray(JSONArray existingArray, JSONArray newArray) {
-        Map<String, JSONObject> existingMap = new HashMap<>();
-
-        // Convert existing array to map for easy lookup
-        for (int i = 0; i < existingArray.length(); i++) {
-            JSONObject obj = existingArray.getJSONObject(i);
-            if (obj.has("objectId")) {
-                existingMap.put(obj.getString("objectId"), obj);
-            }
-        }
+    public PlanDocument getStoredPlanDocument(String key) {
+        planCache.evict(List.of(key));
+        return getPlanDocument(key, List.of());
+    }
 
-        for (int i = 0; i < newArray.length(); i++) {
-            JSONObject newObj = newArray.getJSONObject(i);
-            if (newObj.has("objectId")) {
-                String objectId = newObj.getString("objectId");
-
-                if (existingMap.containsKey(objectId)) {
-                    // Update existing object in the array
-                    mergeJson(existingMap.get(objectId), newObj);
-                } else {
-                    // Append new object to array
-                    existingArray.put(newObj);
-                }
-            }
-        }
+    /**
+     * Reads one object of the plan, optionally limited to {@code fields}, and tags it
+     * with an ETag computed from its serialized bytes. Returns null if the object
+     * does not exist.
+     */
+    public PlanDocument getPlanObject(String key, String objectId, Set<String> fields, List<String> ifNoneMatch) {
+        JSONObject object = planStore.readObject(key, objectId, fields);
+        if (object == null)
+            return null;
+
+        byte[] body = CanonicalJson.toBytes(object);
+        String eTag = eTagService.getETag(body);
+        return new PlanDocument(eTag, ifNoneMatch.contains(eTag) ? null : body);
     }
 
+    /**
+     * Merges the patch into {@code current} and stores the result if the plan is still
+     * at that version. The documents changed by the merge are queued for indexing.
+     * Returns the new ETag with the merged plan, or null when the plan was changed or
+     * deleted since {@code current} was read. Throws a ValidationException when the
+     * merged plan is not a valid plan.
+     */
+    public PlanDocument patchPlan(String key, JSONObject patch, PlanDocument current) {
+        JSONObject oldPlan = parse(current);
+        JSONObject merged = JsonMerger.deepCopy(oldPlan);
+        JsonMerger.mergeJson(merged, patch);
+        validator.validateJson(merged);
+
+        PlanDocument patched = planStore.patch(key, patch, merged, current.getETag(), codec.encode(IndexingEvents.changes(planId(key), oldPlan, merged)));
+        afterWrite(key, patched != null);
+        return patched;
+    }
 
     public JSONObject getPlan(String key) {
-        String jsonString = jedis.get(key);
+        PlanDocument document = getPlanDocument(key, List.of());
+        return document == null ? new JSONObject() : parse(document);
+    }
 
-        // Convert the string back to a JSONObject
-        if (jsonString != null && !jsonString.isEmpty()) {
-            return new JSONObject(jsonString);
-        }
-        // Return an empty JSONObject if the key does not exist
-        return new JSONObject();
+    /**
+     * Deletes the plan if it is still at the version of {@code current}, which must
+     * have been read from Redis: the delete event names every document of that
+     * version. Returns false when the plan was changed or deleted since.
+     */
+    public boolean deletePlan(String key, PlanDocument current) {
+        boolean deleted = planStore.delete(key, current.getETag(), codec.encode(IndexingEvents.delete(planId(key), parse(current))));
+        afterWrite(key, deleted);
+        return deleted;
+    }
+
+    /**
+     * A successful write is published to every instance; a conflicting one means this
+     * instance read an outdated version, which is dropped so that a retry reads Redis.
+     */
+    private void afterWrite(String key, boolean written) {
+        if (written)
+            planCache.invalidate(List.of(key));
+        else
+            planCache.evict(List.of(key));
+    }
+
+    private static JSONObject parse(PlanDocument document) {
+        return new JSONObject(new String(document.getBody(), StandardCharsets.UTF_8));
     }
 
-    public void deletePlan(String key) {
-        jedis.del(key);
+    private String planId(String key) {
+        return key.substring(key.indexOf('_') + 1);
     }
 }
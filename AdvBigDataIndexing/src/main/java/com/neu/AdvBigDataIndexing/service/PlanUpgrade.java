@@ -0,0 +1,108 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import com.neu.AdvBigDataIndexing.repository.PlanStore;
+import com.neu.AdvBigDataIndexing.repository.RedisRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.params.SetParams;
+
+import java.util.List;
+
+/**
+ * Converts plans that are still stored as plain JSON strings, as they were before
+ * plans were stored with their ETag, with {@link PlanStore#upgrade}; every other
+ * plan command fails on them with WRONGTYPE. After startup one instance SCANs all
+ * plans while holding a lock, and marks the conversion done so later starts skip it.
+ * Each plan is converted only if it is unchanged, so running this on two instances
+ * at once is harmless.
+ */
+@Component
+public class PlanUpgrade {
+    private static final String DONE_KEY = "plan-upgrade:done";
+    private static final String LOCK_KEY = "plan-upgrade:lock";
+    private static final String PLAN_KEY_PATTERN = "plan_*";
+    private static final long RETRY_MS = 60000;
+
+    private final RedisRepository redisRepository;
+    private final PlanStore planStore;
+    private final int scanCount;
+    private final long lockTtlMs;
+
+    public PlanUpgrade(RedisRepository redisRepository, PlanStore planStore,
+                       @Value("${export.scan-count}") int scanCount,
+                       @Value("${plan.upgrade-lock-ms}") long lockTtlMs) {
+        this.redisRepository = redisRepository;
+        this.planStore = planStore;
+        this.scanCount = scanCount;
+        this.lockTtlMs = lockTtlMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        Thread thread = new Thread(this::run, "plan-upgrade");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Whether every plan is stored in the current layout.
+     */
+    public boolean isComplete() {
+        return redisRepository.exists(DONE_KEY);
+    }
+
+    private void run() {
+        while (true) {
+            try {
+                if (upgrade())
+                    return;
+            } catch (Exception e) {
+                System.err.println("Plan upgrade failed, retrying: " + e.getMessage());
+            }
+            try {
+                // Another instance is running it, or Redis is unavailable
+                Thread.sleep(RETRY_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns true once every plan is converted, false when another instance holds
+     * the lock.
+     */
+    boolean upgrade() {
+        if (isComplete())
+            return true;
+        if (!"OK".equals(redisRepository.execute("set", jedis -> jedis.set(LOCK_KEY, "1",
+                SetParams.setParams().nx().px(lockTtlMs)))))
+            return false;
+
+        try {
+            long upgraded = 0;
+            long scanned = 0;
+            ScanParams params = new ScanParams().match(PLAN_KEY_PATTERN).count(scanCount);
+            String cursor = ScanParams.SCAN_POINTER_START;
+            do {
+                String pageCursor = cursor;
+                ScanResult<String> page = redisRepository.execute("scan", jedis -> jedis.scan(pageCursor, params));
+                List<String> keys = page.getResult();
+                if (!keys.isEmpty())
+                    upgraded += planStore.upgrade(keys);
+                scanned += keys.size();
+                redisRepository.execute("pexpire", jedis -> jedis.pexpire(LOCK_KEY, lockTtlMs));
+                cursor = page.getCursor();
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+
+            redisRepository.set(DONE_KEY, "1");
+            System.out.println("Converted " + upgraded + " of " + scanned + " plans from strings");
+            return true;
+        } finally {
+            redisRepository.delete(LOCK_KEY);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.neu.AdvBigDataIndexing.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Serializes a parsed plan straight to UTF-8 bytes in canonical form: compact, with
+ * the properties of every object sorted by name. Equal plans always produce the same
+ * bytes, so the ETag can be hashed from exactly the bytes that are stored and sent,
+ * and no intermediate String is built.
+ */
+public final class CanonicalJson {
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private CanonicalJson() {
+    }
+
+    public static byte[] toBytes(JSONObject object) {
+        try (ByteArrayBuilder buffer = new ByteArrayBuilder(INITIAL_CAPACITY);
+             JsonGenerator generator = FACTORY.createGenerator(buffer)) {
+            writeObject(generator, object);
+            generator.flush();
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeObject(JsonGenerator generator, JSONObject object) throws IOException {
+        String[] keys = object.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        generator.writeStartObject();
+        for (String key : keys) {
+            generator.writeFieldName(key);
+            writeValue(generator, object.opt(key));
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeValue(JsonGenerator generator, Object value) throws IOException {
+        if (value instanceof JSONObject object) {
+            writeObject(generator, object);
+        } else if (value instanceof JSONArray array) {
+            generator.writeStartArray();
+            for (int i = 0; i < array.length(); i++) {
+                writeValue(generator, array.opt(i));
+            }
+            generator.writeEndArray();
+        } else if (value instanceof String string) {
+            generator.writeString(string);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            generator.writeNumber(((Number) value).longValue());
+        } else if (value instanceof BigInteger integer) {
+            generator.writeNumber(integer);
+        } else if (value instanceof Number number) {
+            // Same textual form as org.json, e.g. 2.0 becomes 2
+            generator.writeNumber(JSONObject.numberToString(number));
+        } else if (value instanceof Boolean bool) {
+            generator.writeBoolean(bool);
+        } else if (value == null || JSONObject.NULL.equals(value)) {
+            generator.writeNull();
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
+}
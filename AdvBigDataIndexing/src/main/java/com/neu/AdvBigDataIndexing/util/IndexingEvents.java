@@ -0,0 +1,68 @@
+package com.neu.AdvBigDataIndexing.util;
+
+import com.neu.AdvBigDataIndexing.model.IndexingMessage;
+import com.neu.AdvBigDataIndexing.model.IndexingMessage.Document;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the indexing messages that are written to the outbox together with a plan
+ * change. Plans are flattened here, once, instead of in every consumer.
+ */
+public final class IndexingEvents {
+
+    private IndexingEvents() {
+    }
+
+    public static IndexingMessage save(String planId, JSONObject plan) {
+        List<Document> upserts = new ArrayList<>();
+        PlanFlattener.flatten(plan).forEach((docKey, document) -> upserts.add(upsert(docKey, document)));
+        return new IndexingMessage(IndexingMessage.CURRENT_VERSION, "SAVE", planId, upserts, List.of());
+    }
+
+    public static IndexingMessage delete(String planId, JSONObject plan) {
+        List<Document> deletes = new ArrayList<>();
+        if (plan.has("objectId"))
+            PlanFlattener.flatten(plan).keySet().forEach(docKey -> deletes.add(delete(docKey)));
+        return new IndexingMessage(IndexingMessage.CURRENT_VERSION, "DELETE", planId, List.of(), deletes);
+    }
+
+    /**
+     * Compares the flattened documents of both versions by objectId and content, and
+     * returns index operations only for new or changed documents and deletes for
+     * removed ones. Returns null when the plan did not change.
+     */
+    public static IndexingMessage changes(String planId, JSONObject oldPlan, JSONObject newPlan) {
+        Map<String, Map<String, Object>> oldDocuments = oldPlan.has("objectId") ? PlanFlattener.flatten(oldPlan) : Map.of();
+        Map<String, Map<String, Object>> newDocuments = PlanFlattener.flatten(newPlan);
+
+        List<Document> upserts = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Object>> entry : newDocuments.entrySet()) {
+            if (!entry.getValue().equals(oldDocuments.get(entry.getKey())))
+                upserts.add(upsert(entry.getKey(), entry.getValue()));
+        }
+
+        List<Document> deletes = new ArrayList<>();
+        for (String docKey : oldDocuments.keySet()) {
+            if (!newDocuments.containsKey(docKey))
+                deletes.add(delete(docKey));
+        }
+
+        if (upserts.isEmpty() && deletes.isEmpty())
+            return null;
+        return new IndexingMessage(IndexingMessage.CURRENT_VERSION, "UPDATE", planId, upserts, deletes);
+    }
+
+    private static Document upsert(String docKey, Map<String, Object> document) {
+        // JSON nulls become plain nulls so the document can be serialized by any codec
+        document.replaceAll((property, value) -> JSONObject.NULL.equals(value) ? null : value);
+        return new Document(PlanFlattener.objectId(docKey), PlanFlattener.routing(docKey), document);
+    }
+
+    private static Document delete(String docKey) {
+        return new Document(PlanFlattener.objectId(docKey), PlanFlattener.routing(docKey), null);
+    }
+}
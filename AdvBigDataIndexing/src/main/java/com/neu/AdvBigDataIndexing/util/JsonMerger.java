@@ -0,0 +1,99 @@
+package com.neu.AdvBigDataIndexing.util;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public final class JsonMerger {
+
+    private JsonMerger() {
+    }
+
+    /**
+     * Copies the tree without serializing and parsing it again. Scalar values are
+     * immutable and shared.
+     */
+    public static JSONObject deepCopy(JSONObject object) {
+        JSONObject copy = new JSONObject();
+        for (String key : object.keySet()) {
+            copy.put(key, copyValue(object.opt(key)));
+        }
+        return copy;
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof JSONObject object)
+            return deepCopy(object);
+        if (value instanceof JSONArray array) {
+            JSONArray copy = new JSONArray();
+            for (int i = 0; i < array.length(); i++) {
+                copy.put(copyValue(array.opt(i)));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    /**
+     * Recursively merge new JSON into existing JSON
+     */
+    public static void mergeJson(JSONObject existing, JSONObject updates) {
+        for (String key : updates.keySet()) {
+            Object newValue = updates.get(key);
+
+            if (!existing.has(key)) {
+                // If the key doesn't exist in old data, add it
+                existing.put(key, newValue);
+            } else {
+                Object existingValue = existing.get(key);
+
+                if (newValue instanceof JSONObject && existingValue instanceof JSONObject) {
+                    // Recursively merge JSON objects
+                    mergeJson((JSONObject) existingValue, (JSONObject) newValue);
+                } else if (newValue instanceof JSONArray && existingValue instanceof JSONArray) {
+                    // Merge JSON arrays intelligently
+                    mergeJsonArray((JSONArray) existingValue, (JSONArray) newValue);
+                } else {
+                    // For simple key-value pairs, update only if different
+                    if (!existingValue.equals(newValue)) {
+                        existing.put(key, newValue);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Merge JSONArray:
+     * - Append new elements if objectId doesn't exist
+     * - Update existing elements based on objectId
+     */
+    public static void mergeJsonArray(JSONArray existingArray, JSONArray newArray) {
+        Map<String, JSONObject> existingMap = new HashMap<>();
+
+        // Convert existing array to map for easy lookup
+        for (int i = 0; i < existingArray.length(); i++) {
+            JSONObject obj = existingArray.getJSONObject(i);
+            if (obj.has("objectId")) {
+                existingMap.put(obj.getString("objectId"), obj);
+            }
+        }
+
+        for (int i = 0; i < newArray.length(); i++) {
+            JSONObject newObj = newArray.getJSONObject(i);
+            if (newObj.has("objectId")) {
+                String objectId = newObj.getString("objectId");
+
+                if (existingMap.containsKey(objectId)) {
+                    // Update existing object in the array
+                    mergeJson(existingMap.get(objectId), newObj);
+                } else {
+                    // Append new object to array
+                    existingArray.put(newObj);
+                }
+            }
+        }
+    }
+}
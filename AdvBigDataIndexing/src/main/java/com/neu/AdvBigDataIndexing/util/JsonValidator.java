@@ -1,22 +1,139 @@
 package com.neu.AdvBigDataIndexing.util;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.everit.json.schema.ArraySchema;
+import org.everit.json.schema.ObjectSchema;
 import org.everit.json.schema.Schema;
-import org.everit.json.schema.loader.SchemaLoader;
+import org.everit.json.schema.ValidationException;
+import org.json.JSONArray;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
-import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
 
 @Service
+@RequiredArgsConstructor
 public class JsonValidator {
-    public void validateJson(JSONObject object) throws IOException {
-        try(InputStream inputStream = getClass().getResourceAsStream("/JsonSchema.json")){
-            assert inputStream != null;
-            JSONObject rawSchema = new JSONObject(new JSONTokener(inputStream));
-            Schema schema = SchemaLoader.load(rawSchema);
+    private final SchemaRegistry schemaRegistry;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Validates a complete plan against the plan schema. Objects are identified by
+     * their objectId, so no two objects of a plan may share one.
+     */
+    public void validateJson(JSONObject object) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "valid";
+        try {
+            ObjectSchema schema = schemaRegistry.getSchema(SchemaRegistry.ROOT_TYPE);
             schema.validate(object);
+            requireUniqueObjectIds(schema, object, new HashSet<>());
+        } catch (ValidationException ex) {
+            outcome = "invalid";
+            throw ex;
+        } finally {
+            sample.stop(timer(SchemaRegistry.ROOT_TYPE, outcome));
+        }
+    }
+
+    /**
+     * Validates a PATCH body. The fragment must be a plan, and every object in it must
+     * carry objectId and objectType; each object must be of the objectType its property
+     * holds, and the properties it does carry are checked against the schema registered
+     * for that type, but properties it leaves out are not required. The merged plan
+     * is validated again as a whole before it is stored.
+     */
+    public void validateFragment(JSONObject object) {
+        String type = object.optString("objectType");
+        String objectType = schemaRegistry.getSchema(type) != null ? type : "unknown";
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "valid";
+        try {
+            validateFragmentObject(object, SchemaRegistry.ROOT_TYPE);
+        } catch (ValidationException ex) {
+            outcome = "invalid";
+            throw ex;
+        } finally {
+            sample.stop(timer(objectType + "-fragment", outcome));
+        }
+    }
+
+    private void validateFragmentObject(JSONObject object, String expectedType) {
+        ObjectSchema root = schemaRegistry.getSchema(SchemaRegistry.ROOT_TYPE);
+        if (!object.has("objectId") || !object.has("objectType"))
+            throw new ValidationException(root, "objectId and objectType are required", "required", "#");
+
+        String objectType = object.optString("objectType");
+        ObjectSchema schema = schemaRegistry.getSchema(objectType);
+        if (schema == null)
+            throw new ValidationException(root, "unknown objectType " + objectType, "objectType", "#");
+        if (!objectType.equals(expectedType))
+            throw new ValidationException(root, "expected " + expectedType + ", found " + objectType, "objectType", "#").prepend("objectType");
+
+        for (String key : object.keySet()) {
+            Object value = object.get(key);
+            Schema propertySchema = schema.getPropertySchemas().get(key);
+            String childType = schemaRegistry.getPropertyType(objectType, key);
+
+            if (childType == null) {
+                // Not a property of objects, so a nested object fails its schema here
+                validateProperty(propertySchema, key, value);
+            } else if (propertySchema instanceof ArraySchema) {
+                if (!(value instanceof JSONArray array))
+                    throw new ValidationException(root, "expected an array of " + childType, "type", "#").prepend(key);
+                for (int i = 0; i < array.length(); i++) {
+                    if (!(array.get(i) instanceof JSONObject nested))
+                        throw new ValidationException(root, "expected a " + childType, "type", "#").prepend(String.valueOf(i)).prepend(key);
+                    try {
+                        validateFragmentObject(nested, childType);
+                    } catch (ValidationException ex) {
+                        throw ex.prepend(String.valueOf(i)).prepend(key);
+                    }
+                }
+            } else {
+                if (!(value instanceof JSONObject nested))
+                    throw new ValidationException(root, "expected a " + childType, "type", "#").prepend(key);
+                try {
+                    validateFragmentObject(nested, childType);
+                } catch (ValidationException ex) {
+                    throw ex.prepend(key);
+                }
+            }
         }
     }
+
+    private void requireUniqueObjectIds(ObjectSchema root, Object value, Set<Object> objectIds) {
+        if (value instanceof JSONObject object) {
+            if (object.has("objectId") && !objectIds.add(object.get("objectId")))
+                throw new ValidationException(root, "duplicate objectId " + object.get("objectId"), "objectId", "#");
+            for (String key : object.keySet()) {
+                requireUniqueObjectIds(root, object.get(key), objectIds);
+            }
+        } else if (value instanceof JSONArray array) {
+            for (Object item : array) {
+                requireUniqueObjectIds(root, item, objectIds);
+            }
+        }
+    }
+
+    private void validateProperty(Schema propertySchema, String key, Object value) {
+        if (propertySchema == null)
+            return;
+        try {
+            propertySchema.validate(value);
+        } catch (ValidationException ex) {
+            throw ex.prepend(key);
+        }
+    }
+
+    private Timer timer(String objectType, String outcome) {
+        return Timer.builder("plan.schema.validation")
+                .description("JSON schema validation time")
+                .tag("objectType", objectType)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
 }
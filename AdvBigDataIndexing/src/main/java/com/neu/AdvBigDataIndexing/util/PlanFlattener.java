@@ -0,0 +1,75 @@
+package com.neu.AdvBigDataIndexing.util;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Flattens a plan into one search document per object that has an objectId. Documents
+ * are keyed by {@code objectId} for the plan and {@code parentId:objectId} for its
+ * descendants, and carry the plan_join relation to their parent.
+ */
+public final class PlanFlattener {
+
+    private PlanFlattener() {
+    }
+
+    public static Map<String, Map<String, Object>> flatten(JSONObject plan) {
+        Map<String, Map<String, Object>> documentMap = new LinkedHashMap<>();
+        flattenAndCollectDocuments(documentMap, plan, null, plan.getString("objectType"), null);
+        return documentMap;
+    }
+
+    public static String objectId(String docKey) {
+        return docKey.substring(docKey.indexOf(':') + 1);
+    }
+
+    /**
+     * Children are routed by their parent id, the plan by its own id.
+     */
+    public static String routing(String docKey) {
+        int separator = docKey.indexOf(':');
+        return separator < 0 ? docKey : docKey.substring(0, separator);
+    }
+
+    public static void flattenAndCollectDocuments(Map<String, Map<String, Object>> documentMap, JSONObject jsonObject, String parentId, String objectType, String rootPlanId) {
+        String objectId = jsonObject.getString("objectId");
+        String docKey = parentId == null ? objectId : parentId + ":" + objectId;
+        String routingKey = (parentId == null) ? objectId : parentId;
+
+        Map<String, Object> flatMap = new HashMap<>();
+        for (String key : jsonObject.keySet()) {
+            Object val = jsonObject.get(key);
+            if (!(val instanceof JSONObject) && !(val instanceof JSONArray)) {
+                flatMap.put(key, val);
+            }
+        }
+
+        if (parentId == null) {
+            flatMap.put("plan_join", objectType); // root
+        } else {
+            flatMap.put("plan_join", Map.of(
+                    "name", objectType,
+                    "parent", parentId
+            ));
+        }
+
+        documentMap.put(docKey, flatMap);
+
+        for (String key : jsonObject.keySet()) {
+            Object val = jsonObject.get(key);
+            if (val instanceof JSONObject subObj && subObj.has("objectId")) {
+                flattenAndCollectDocuments(documentMap, subObj, objectId, subObj.getString("objectType"), rootPlanId == null ? objectId : rootPlanId);
+            } else if (val instanceof JSONArray arr) {
+                for (Object item : arr) {
+                    if (item instanceof JSONObject subJson && subJson.has("objectId")) {
+                        flattenAndCollectDocuments(documentMap, subJson, objectId, subJson.getString("objectType"), rootPlanId == null ? objectId : rootPlanId);
+                    }
+                }
+            }
+        }
+    }
+}
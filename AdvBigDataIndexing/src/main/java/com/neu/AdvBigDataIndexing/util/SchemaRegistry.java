@@ -0,0 +1,125 @@
+package com.neu.AdvBigDataIndexing.util;
+
+import jakarta.annotation.PostConstruct;
+import org.everit.json.schema.ObjectSchema;
+import org.everit.json.schema.Schema;
+import org.everit.json.schema.loader.SchemaLoader;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled JSON schemas keyed by objectType. The plan schema is loaded once and every
+ * nested object schema that declares an objectType (membercostshare, planservice,
+ * service) is registered under that type as well, along with the objectType each
+ * object-valued property holds. The schema file is polled for
+ * changes and recompiled in place, so schema updates do not need a restart.
+ */
+@Component
+public class SchemaRegistry {
+
+    public static final String ROOT_TYPE = "plan";
+
+    private final Resource schemaLocation;
+    private volatile Map<String, ObjectSchema> schemas = Map.of();
+    private volatile Map<String, String> propertyTypes = Map.of();
+    private volatile long lastModified;
+
+    public SchemaRegistry(@Value("${schema.location}") Resource schemaLocation) {
+        this.schemaLocation = schemaLocation;
+    }
+
+    @PostConstruct
+    public void load() throws IOException {
+        long modified = lastModified();
+        try (InputStream inputStream = schemaLocation.getInputStream()) {
+            JSONObject rawSchema = new JSONObject(new JSONTokener(inputStream));
+
+            Map<String, ObjectSchema> compiled = new HashMap<>();
+            Map<String, String> types = new HashMap<>();
+            compiled.put(ROOT_TYPE, (ObjectSchema) SchemaLoader.load(rawSchema));
+            collectNestedSchemas(ROOT_TYPE, rawSchema.optJSONObject("properties"), compiled, types);
+
+            schemas = Map.copyOf(compiled);
+            propertyTypes = Map.copyOf(types);
+            lastModified = modified;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${schema.reload-interval-ms}")
+    public void reloadIfChanged() {
+        long modified = lastModified();
+        if (modified == 0 || modified == lastModified)
+            return;
+        try {
+            load();
+            System.out.println("Reloaded JSON schemas from " + schemaLocation + ": " + schemas.keySet());
+        } catch (Exception e) {
+            // Keep serving the previously compiled schemas
+            lastModified = modified;
+            System.err.println("Failed to reload JSON schemas from " + schemaLocation + ": " + e.getMessage());
+        }
+    }
+
+    public ObjectSchema getSchema(String objectType) {
+        return schemas.get(objectType);
+    }
+
+    /**
+     * The objectType of the objects that {@code property} of an {@code objectType}
+     * object holds, or null when it does not hold objects.
+     */
+    public String getPropertyType(String objectType, String property) {
+        return propertyTypes.get(objectType + "." + property);
+    }
+
+    private void collectNestedSchemas(String parentType, JSONObject properties, Map<String, ObjectSchema> compiled,
+                                      Map<String, String> types) {
+        if (properties == null)
+            return;
+        for (String key : properties.keySet()) {
+            JSONObject property = properties.optJSONObject(key);
+            if (property == null)
+                continue;
+
+            JSONObject objectSchema = "array".equals(property.optString("type")) ? property.optJSONObject("items") : property;
+            if (objectSchema == null || !objectSchema.has("properties"))
+                continue;
+
+            String objectType = exampleObjectType(objectSchema);
+            if (objectType != null)
+                types.put(parentType + "." + key, objectType);
+            if (objectType != null && !compiled.containsKey(objectType)) {
+                Schema schema = SchemaLoader.load(objectSchema);
+                if (schema instanceof ObjectSchema nested)
+                    compiled.put(objectType, nested);
+            }
+            collectNestedSchemas(objectType, objectSchema.getJSONObject("properties"), compiled, types);
+        }
+    }
+
+    private String exampleObjectType(JSONObject objectSchema) {
+        JSONObject objectTypeSchema = objectSchema.getJSONObject("properties").optJSONObject("objectType");
+        if (objectTypeSchema == null)
+            return null;
+        JSONArray examples = objectTypeSchema.optJSONArray("examples");
+        return examples == null || examples.isEmpty() ? null : examples.getString(0);
+    }
+
+    private long lastModified() {
+        try {
+            return schemaLocation.lastModified();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
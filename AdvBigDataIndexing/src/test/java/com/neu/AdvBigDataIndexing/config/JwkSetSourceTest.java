@@ -0,0 +1,72 @@
+package com.neu.AdvBigDataIndexing.config;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JwkSetSourceTest {
+    @TempDir
+    Path directory;
+
+    private JwkSetSource source;
+
+    @AfterEach
+    void stop() {
+        if (source != null)
+            source.stop();
+    }
+
+    @Test
+    void reloadsInTheBackgroundForUnknownKeyIds() throws Exception {
+        Path file = directory.resolve("jwks.json");
+        write(file, key("old"));
+        source = new JwkSetSource(new DefaultResourceLoader(), file.toUri().toString(), "", false, 0);
+        source.init();
+
+        write(file, key("old"), key("rotated"));
+
+        // The request that saw the unknown key id is checked against the current keys
+        List<JWK> keys = source.get(selector("rotated"), null);
+        assertTrue(keys.isEmpty());
+        for (int i = 0; i < 100 && keys.isEmpty(); i++) {
+            Thread.sleep(20);
+            keys = source.get(selector("rotated"), null);
+        }
+        assertEquals(1, keys.size());
+        assertEquals(1, source.get(selector("old"), null).size());
+    }
+
+    @Test
+    void requiresTheFallbackToBeAllowed() {
+        assertThrows(IllegalStateException.class, () -> new JwkSetSource(new DefaultResourceLoader(),
+                "http://localhost:1/jwks", "classpath:test-jwks.json", false, 0));
+    }
+
+    private static JWK key(String keyId) throws JOSEException {
+        return new RSAKeyGenerator(2048).keyID(keyId).generate();
+    }
+
+    private static void write(Path file, JWK... keys) throws IOException {
+        Files.writeString(file, new JWKSet(List.of(keys)).toString(false));
+    }
+
+    private static JWKSelector selector(String keyId) {
+        return new JWKSelector(new JWKMatcher.Builder().keyID(keyId).build());
+    }
+}
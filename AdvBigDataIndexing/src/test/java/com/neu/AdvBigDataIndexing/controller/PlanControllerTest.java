@@ -0,0 +1,179 @@
+package com.neu.AdvBigDataIndexing.controller;
+
+import com.neu.AdvBigDataIndexing.model.PlanDocument;
+import com.neu.AdvBigDataIndexing.repository.BlobPlanStore;
+import com.neu.AdvBigDataIndexing.repository.Outbox;
+import com.neu.AdvBigDataIndexing.repository.PlanCodec;
+import com.neu.AdvBigDataIndexing.repository.PlanIndexes;
+import com.neu.AdvBigDataIndexing.repository.RedisTestSupport;
+import com.neu.AdvBigDataIndexing.service.ETagService;
+import com.neu.AdvBigDataIndexing.service.IndexingMessageCodec;
+import com.neu.AdvBigDataIndexing.service.PlanCache;
+import com.neu.AdvBigDataIndexing.service.PlanService;
+import com.neu.AdvBigDataIndexing.util.JsonValidator;
+import com.neu.AdvBigDataIndexing.util.SchemaRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.coyote.BadRequestException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The If-Match compare-and-set of PUT and PATCH against a real Redis, with the near
+ * cache disabled.
+ */
+class PlanControllerTest extends RedisTestSupport {
+    private static final String PLAN_ID = "p1";
+    private static final String KEY = "plan_" + PLAN_ID;
+
+    private PlanService planService;
+    private PlanController controller;
+    private String eTag;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        SchemaRegistry schemaRegistry = new SchemaRegistry(new ClassPathResource("JsonSchema.json"));
+        schemaRegistry.load();
+        JsonValidator validator = new JsonValidator(schemaRegistry, new SimpleMeterRegistry());
+        ETagService eTagService = new ETagService();
+        BlobPlanStore planStore = new BlobPlanStore(redisRepository, eTagService, new Outbox(redisRepository),
+                new PlanCodec(redisRepository, PlanCodec.NONE, 3), new PlanIndexes(redisRepository));
+        PlanCache planCache = new PlanCache(null, new SimpleMeterRegistry(), 0, 0) {
+            @Override
+            public void invalidate(Collection<String> keys) {
+                evict(keys);
+            }
+        };
+        planService = new PlanService(planStore, eTagService, new IndexingMessageCodec("cbor"), planCache, validator);
+        controller = new PlanController(validator, planService, eTagService);
+        eTag = controller.createPlan(plan(10).toString()).getHeaders().getETag();
+    }
+
+    @Test
+    void putWithStaleETagFails() throws Exception {
+        assertEquals(HttpStatus.OK, controller.putPlan(plan(20).toString(), PLAN_ID, ifMatch(eTag)).getStatusCode());
+
+        ResponseEntity<?> response = controller.putPlan(plan(30).toString(), PLAN_ID, ifMatch(eTag));
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, response.getStatusCode());
+        assertEquals(20, copay());
+    }
+
+    @Test
+    void putWithCurrentETagReplacesThePlan() throws Exception {
+        ResponseEntity<?> response = controller.putPlan(plan(20).toString(), PLAN_ID, ifMatch(eTag));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getHeaders().getETag());
+        assertNotEquals(eTag, response.getHeaders().getETag());
+        assertEquals(20, copay());
+    }
+
+    @Test
+    void putWithoutETagFails() throws Exception {
+        assertEquals(HttpStatus.PRECONDITION_FAILED,
+                controller.putPlan(plan(20).toString(), PLAN_ID, new HttpHeaders()).getStatusCode());
+    }
+
+    @Test
+    void putWithAnotherObjectIdIsRejected() throws Exception {
+        JSONObject other = plan(20).put("objectId", "p2");
+
+        assertThrows(BadRequestException.class, () -> controller.putPlan(other.toString(), PLAN_ID, ifMatch(eTag)));
+        assertEquals(10, copay());
+        assertEquals(eTag, controller.getPlan(PLAN_ID, null, new HttpHeaders()).getHeaders().getETag());
+    }
+
+    @Test
+    void patchWithStaleETagFails() throws Exception {
+        controller.putPlan(plan(20).toString(), PLAN_ID, ifMatch(eTag));
+
+        ResponseEntity<?> response = controller.patchPlan(patch(30).toString(), PLAN_ID, ifMatch(eTag));
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, response.getStatusCode());
+        assertEquals(20, copay());
+    }
+
+    @Test
+    void patchWithAnyETagMergesIntoTheCurrentPlan() throws Exception {
+        controller.putPlan(plan(20).toString(), PLAN_ID, ifMatch(eTag));
+
+        ResponseEntity<?> response = controller.patchPlan(patch(30).toString(), PLAN_ID, ifMatch("*"));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(30, copay());
+    }
+
+    @Test
+    void writeAtAVersionThatWasReplacedMeanwhileIsRejected() {
+        PlanDocument read = planService.getStoredPlanDocument(KEY);
+        planService.replacePlan(KEY, plan(20), read);
+
+        assertNull(planService.replacePlan(KEY, plan(30), read));
+        assertNull(planService.patchPlan(KEY, patch(30), read));
+        assertEquals(20, copay());
+    }
+
+    private int copay() {
+        return planService.getPlan(KEY).getJSONObject("planCostShares").getInt("copay");
+    }
+
+    private static HttpHeaders ifMatch(String eTag) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfMatch(eTag);
+        return headers;
+    }
+
+    private static JSONObject plan(int copay) {
+        JSONObject service = new JSONObject()
+                .put("linkedService", new JSONObject()
+                        .put("_org", "example.com")
+                        .put("objectId", PLAN_ID + "-s")
+                        .put("objectType", "service")
+                        .put("name", "Yearly physical"))
+                .put("planserviceCostShares", costShare(PLAN_ID + "-pscs", 10))
+                .put("_org", "example.com")
+                .put("objectId", PLAN_ID + "-ps")
+                .put("objectType", "planservice");
+        return new JSONObject()
+                .put("planCostShares", costShare(PLAN_ID + "-pcs", copay))
+                .put("linkedPlanServices", new JSONArray().put(service))
+                .put("_org", "example.com")
+                .put("objectId", PLAN_ID)
+                .put("objectType", "plan")
+                .put("planType", "inNetwork")
+                .put("creationDate", "12-12-2017");
+    }
+
+    private static JSONObject patch(int copay) {
+        return new JSONObject()
+                .put("objectId", PLAN_ID)
+                .put("objectType", "plan")
+                .put("planCostShares", new JSONObject()
+                        .put("objectId", PLAN_ID + "-pcs")
+                        .put("objectType", "membercostshare")
+                        .put("copay", copay));
+    }
+
+    private static JSONObject costShare(String objectId, int copay) {
+        return new JSONObject()
+                .put("deductible", 2000)
+                .put("_org", "example.com")
+                .put("copay", copay)
+                .put("objectId", objectId)
+                .put("objectType", "membercostshare");
+    }
+}
@@ -0,0 +1,187 @@
+package com.neu.AdvBigDataIndexing.controller;
+
+import com.neu.AdvBigDataIndexing.repository.BlobPlanStore;
+import com.neu.AdvBigDataIndexing.repository.GraphPlanStore;
+import com.neu.AdvBigDataIndexing.repository.Outbox;
+import com.neu.AdvBigDataIndexing.repository.PlanCodec;
+import com.neu.AdvBigDataIndexing.repository.PlanIndexes;
+import com.neu.AdvBigDataIndexing.repository.PlanStore;
+import com.neu.AdvBigDataIndexing.repository.RedisTestSupport;
+import com.neu.AdvBigDataIndexing.service.ETagService;
+import com.neu.AdvBigDataIndexing.service.IndexingMessageCodec;
+import com.neu.AdvBigDataIndexing.service.PlanCache;
+import com.neu.AdvBigDataIndexing.service.PlanService;
+import com.neu.AdvBigDataIndexing.util.JsonValidator;
+import com.neu.AdvBigDataIndexing.util.SchemaRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sub-resource reads and ?fields= projections, for both storage modes.
+ */
+class PlanObjectReadTest extends RedisTestSupport {
+    private static final String PLAN_ID = "p1";
+    private static final HttpHeaders NO_HEADERS = new HttpHeaders();
+
+    private PlanController controller;
+    private String eTag;
+
+    private void setUp(String mode) throws Exception {
+        SchemaRegistry schemaRegistry = new SchemaRegistry(new ClassPathResource("JsonSchema.json"));
+        schemaRegistry.load();
+        JsonValidator validator = new JsonValidator(schemaRegistry, new SimpleMeterRegistry());
+        ETagService eTagService = new ETagService();
+        PlanStore planStore = "graph".equals(mode)
+                ? new GraphPlanStore(redisRepository, eTagService, new Outbox(redisRepository), new PlanIndexes(redisRepository))
+                : new BlobPlanStore(redisRepository, eTagService, new Outbox(redisRepository),
+                        new PlanCodec(redisRepository, PlanCodec.NONE, 3), new PlanIndexes(redisRepository));
+        PlanCache planCache = new PlanCache(null, new SimpleMeterRegistry(), 0, 0) {
+            @Override
+            public void invalidate(Collection<String> keys) {
+                evict(keys);
+            }
+        };
+        PlanService planService = new PlanService(planStore, eTagService, new IndexingMessageCodec("cbor"), planCache, validator);
+        controller = new PlanController(validator, planService, eTagService);
+        eTag = controller.createPlan(plan().toString()).getHeaders().getETag();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"blob", "graph"})
+    void getsAChildObjectWithItsSubtree(String mode) throws Exception {
+        setUp(mode);
+
+        ResponseEntity<?> response = controller.getPlanObject(PLAN_ID, "p1-ps", null, NO_HEADERS);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertTrue(planService().similar(body(response)), body(response).toString());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"blob", "graph"})
+    void projectsThePlanToTheRequestedFields(String mode) throws Exception {
+        setUp(mode);
+
+        JSONObject projection = body(controller.getPlan(PLAN_ID, Set.of("planType", "planCostShares"), NO_HEADERS));
+
+        assertEquals(Set.of("objectId", "objectType", "planType", "planCostShares"), projection.keySet());
+        assertEquals(23, projection.getJSONObject("planCostShares").getInt("copay"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"blob", "graph"})
+    void projectsAChildObjectToTheRequestedFields(String mode) throws Exception {
+        setUp(mode);
+
+        JSONObject projection = body(controller.getPlanObject(PLAN_ID, "p1-ps", Set.of("linkedService"), NO_HEADERS));
+
+        assertEquals(Set.of("objectId", "objectType", "linkedService"), projection.keySet());
+        assertEquals("Yearly physical", projection.getJSONObject("linkedService").getString("name"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"blob", "graph"})
+    void answersUnknownObjectsWithNotFound(String mode) throws Exception {
+        setUp(mode);
+
+        assertEquals(HttpStatus.NOT_FOUND, controller.getPlanObject(PLAN_ID, "nothing", null, NO_HEADERS).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, controller.getPlanObject("p2", "p1-ps", null, NO_HEADERS).getStatusCode());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"blob", "graph"})
+    void answersAMatchingIfNoneMatchWithNotModified(String mode) throws Exception {
+        setUp(mode);
+        String objectETag = controller.getPlanObject(PLAN_ID, "p1-ps", null, NO_HEADERS).getHeaders().getETag();
+
+        ResponseEntity<?> response = controller.getPlanObject(PLAN_ID, "p1-ps", null, ifNoneMatch(objectETag));
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals(objectETag, response.getHeaders().getETag());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"blob", "graph"})
+    void readsAPatchedChildObject(String mode) throws Exception {
+        setUp(mode);
+        String objectETag = controller.getPlanObject(PLAN_ID, "p1-pscs", null, NO_HEADERS).getHeaders().getETag();
+        JSONObject patch = new JSONObject()
+                .put("objectId", PLAN_ID)
+                .put("objectType", "plan")
+                .put("linkedPlanServices", new JSONArray().put(new JSONObject()
+                        .put("objectId", "p1-ps")
+                        .put("objectType", "planservice")
+                        .put("planserviceCostShares", new JSONObject()
+                                .put("objectId", "p1-pscs")
+                                .put("objectType", "membercostshare")
+                                .put("copay", 50))));
+        HttpHeaders ifMatch = new HttpHeaders();
+        ifMatch.setIfMatch(eTag);
+        assertEquals(HttpStatus.OK, controller.patchPlan(patch.toString(), PLAN_ID, ifMatch).getStatusCode());
+
+        ResponseEntity<?> response = controller.getPlanObject(PLAN_ID, "p1-pscs", null, ifNoneMatch(objectETag));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotEquals(objectETag, response.getHeaders().getETag());
+        assertEquals(50, body(response).getInt("copay"));
+        assertEquals(10, body(response).getInt("deductible"));
+    }
+
+    private static JSONObject body(ResponseEntity<?> response) {
+        return new JSONObject(new String((byte[]) response.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private static HttpHeaders ifNoneMatch(String eTag) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(eTag);
+        return headers;
+    }
+
+    private static JSONObject plan() {
+        return new JSONObject()
+                .put("planCostShares", costShare(PLAN_ID + "-pcs", 2000, 23))
+                .put("linkedPlanServices", new JSONArray().put(planService()))
+                .put("_org", "example.com")
+                .put("objectId", PLAN_ID)
+                .put("objectType", "plan")
+                .put("planType", "inNetwork")
+                .put("creationDate", "12-12-2017");
+    }
+
+    private static JSONObject planService() {
+        return new JSONObject()
+                .put("linkedService", new JSONObject()
+                        .put("_org", "example.com")
+                        .put("objectId", PLAN_ID + "-s")
+                        .put("objectType", "service")
+                        .put("name", "Yearly physical"))
+                .put("planserviceCostShares", costShare(PLAN_ID + "-pscs", 10, 0))
+                .put("_org", "example.com")
+                .put("objectId", PLAN_ID + "-ps")
+                .put("objectType", "planservice");
+    }
+
+    private static JSONObject costShare(String objectId, int deductible, int copay) {
+        return new JSONObject()
+                .put("deductible", deductible)
+                .put("_org", "example.com")
+                .put("copay", copay)
+                .put("objectId", objectId)
+                .put("objectType", "membercostshare");
+    }
+}
@@ -0,0 +1,74 @@
+package com.neu.AdvBigDataIndexing.repository;
+
+import com.neu.AdvBigDataIndexing.model.PlanDocument;
+import com.neu.AdvBigDataIndexing.service.ETagService;
+import com.neu.AdvBigDataIndexing.util.CanonicalJson;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlobPlanStoreTest extends RedisTestSupport {
+    private final ETagService eTagService = new ETagService();
+    private BlobPlanStore planStore;
+
+    @BeforeEach
+    void setUp() {
+        planStore = new BlobPlanStore(redisRepository, eTagService, new Outbox(redisRepository),
+                new PlanCodec(redisRepository, PlanCodec.NONE, 3), new PlanIndexes(redisRepository));
+    }
+
+    @Test
+    void upgradesPlansStoredAsStrings() {
+        JSONObject legacy = plan("legacy", "inNetwork");
+        redisRepository.set("plan_legacy", legacy.toString());
+        planStore.save("plan_current", plan("current", "inNetwork"), null);
+        String currentETag = planStore.getETag("plan_current");
+
+        assertEquals(1, planStore.upgrade(List.of("plan_legacy", "plan_current")));
+
+        PlanDocument document = planStore.read("plan_legacy", List.of());
+        assertNotNull(document);
+        assertArrayEquals(CanonicalJson.toBytes(legacy), document.getBody());
+        assertEquals(eTagService.getETag(document.getBody()), document.getETag());
+        assertEquals(currentETag, planStore.getETag("plan_current"));
+        assertEquals(0, planStore.upgrade(List.of("plan_legacy", "plan_current")));
+    }
+
+    @Test
+    void savesOverPlansStoredAsStrings() {
+        redisRepository.set("plan_legacy", plan("legacy", "inNetwork").toString());
+
+        String eTag = planStore.save("plan_legacy", plan("legacy", "outOfNetwork"), null);
+
+        assertEquals(eTag, planStore.getETag("plan_legacy"));
+        assertEquals("outOfNetwork", planStore.readPlan("plan_legacy").getString("planType"));
+    }
+
+    @Test
+    void deletesOnlyTheVersionThatWasRead() {
+        String read = planStore.save("plan_p", plan("p", "inNetwork"), null);
+        planStore.save("plan_p", plan("p", "outOfNetwork"), null);
+
+        assertFalse(planStore.delete("plan_p", read, null));
+        assertTrue(planStore.exists("plan_p"));
+
+        assertTrue(planStore.delete("plan_p", planStore.getETag("plan_p"), null));
+        assertFalse(planStore.exists("plan_p"));
+    }
+
+    private static JSONObject plan(String id, String planType) {
+        return new JSONObject()
+                .put("objectId", id)
+                .put("objectType", "plan")
+                .put("planType", planType)
+                .put("creationDate", "12-12-2017");
+    }
+}
@@ -0,0 +1,158 @@
+package com.neu.AdvBigDataIndexing.repository;
+
+import com.neu.AdvBigDataIndexing.model.PlanDocument;
+import com.neu.AdvBigDataIndexing.service.ETagService;
+import com.neu.AdvBigDataIndexing.util.CanonicalJson;
+import com.neu.AdvBigDataIndexing.util.JsonMerger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GraphPlanStoreTest extends RedisTestSupport {
+    private final ETagService eTagService = new ETagService();
+    private GraphPlanStore planStore;
+
+    @BeforeEach
+    void setUp() {
+        planStore = new GraphPlanStore(redisRepository, eTagService, new Outbox(redisRepository),
+                new PlanIndexes(redisRepository));
+    }
+
+    @Test
+    void rejectsDuplicateObjectIds() {
+        JSONObject plan = plan("p", "s1", "s1");
+
+        assertThrows(IllegalArgumentException.class, () -> planStore.save("plan_p", plan, null));
+        assertFalse(planStore.exists("plan_p"));
+    }
+
+    @Test
+    void replaceRemovesTheNodesOfThePreviousVersion() {
+        String eTag = planStore.save("plan_p", plan("p", "s1", "s2"), null);
+
+        JSONObject replacement = plan("p", "s3");
+        assertNull(planStore.replace("plan_p", replacement, "stale", null));
+        planStore.replace("plan_p", replacement, eTag, null);
+
+        assertArrayEquals(CanonicalJson.toBytes(replacement), CanonicalJson.toBytes(planStore.readPlan("plan_p")));
+        assertEquals(List.of(), nodeKeys("*:s1"));
+    }
+
+    @Test
+    void deleteRemovesEveryNodeOfTheVersionThatWasRead() {
+        String read = planStore.save("plan_p", plan("p", "s1"), null);
+        planStore.save("plan_p", plan("p", "s2"), null);
+
+        assertFalse(planStore.delete("plan_p", read, null));
+        assertTrue(planStore.delete("plan_p", planStore.getETag("plan_p"), null));
+
+        assertEquals(List.of(), nodeKeys("*"));
+        assertFalse(planStore.exists("plan_p"));
+    }
+
+    @Test
+    void patchThatRenamesAChildObjectStoresTheMergedChild() {
+        String eTag = planStore.save("plan_p", plan("p", "s1"), null);
+        JSONObject patch = new JSONObject()
+                .put("objectId", "p")
+                .put("objectType", "plan")
+                .put("planCostShares", new JSONObject()
+                        .put("objectId", "pcs2")
+                        .put("objectType", "membercostshare")
+                        .put("copay", 5));
+
+        PlanDocument patched = patch("plan_p", patch, eTag);
+
+        assertStoredAs(patched);
+        JSONObject costShares = planStore.readPlan("plan_p").getJSONObject("planCostShares");
+        assertEquals("pcs2", costShares.getString("objectId"));
+        assertEquals(5, costShares.getInt("copay"));
+        assertEquals(2000, costShares.getInt("deductible"));
+        assertEquals(List.of(), nodeKeys(":pcs1"));
+    }
+
+    @Test
+    void patchMergesArraysByObjectId() {
+        String eTag = planStore.save("plan_p", plan("p", "s1", "s2"), null);
+        JSONObject patch = new JSONObject()
+                .put("objectId", "p")
+                .put("objectType", "plan")
+                .put("linkedPlanServices", new JSONArray()
+                        .put(new JSONObject().put("objectId", "s2").put("objectType", "planservice").put("_org", "other.com"))
+                        .put(new JSONObject().put("objectId", "s3").put("objectType", "planservice")));
+
+        PlanDocument patched = patch("plan_p", patch, eTag);
+
+        assertStoredAs(patched);
+        JSONArray services = planStore.readPlan("plan_p").getJSONArray("linkedPlanServices");
+        assertEquals(3, services.length());
+        assertEquals("other.com", services.getJSONObject(1).getString("_org"));
+    }
+
+    @Test
+    void patchWithAnEmptyArrayKeepsTheChildren() {
+        String eTag = planStore.save("plan_p", plan("p", "s1", "s2"), null);
+        JSONObject patch = new JSONObject()
+                .put("objectId", "p")
+                .put("objectType", "plan")
+                .put("linkedPlanServices", new JSONArray());
+
+        PlanDocument patched = patch("plan_p", patch, eTag);
+
+        assertStoredAs(patched);
+        assertEquals(2, planStore.readPlan("plan_p").getJSONArray("linkedPlanServices").length());
+    }
+
+    private PlanDocument patch(String key, JSONObject patch, String eTag) {
+        JSONObject merged = JsonMerger.deepCopy(planStore.readPlan(key));
+        JsonMerger.mergeJson(merged, patch);
+        PlanDocument patched = planStore.patch(key, patch, merged, eTag, null);
+        assertNotNull(patched);
+        return patched;
+    }
+
+    /**
+     * The stored nodes read back as the patch result, and match its ETag.
+     */
+    private void assertStoredAs(PlanDocument patched) {
+        PlanDocument stored = planStore.read("plan_p", List.of());
+        assertEquals(patched.getETag(), stored.getETag());
+        assertArrayEquals(patched.getBody(), stored.getBody());
+        assertEquals(eTagService.getETag(stored.getBody()), stored.getETag());
+    }
+
+    private List<String> nodeKeys(String pattern) {
+        return List.copyOf(redisRepository.execute("keys", jedis -> jedis.keys("node*_p" + pattern)));
+    }
+
+    private static JSONObject plan(String id, String... serviceIds) {
+        JSONArray services = new JSONArray();
+        for (String serviceId : serviceIds) {
+            services.put(new JSONObject()
+                    .put("objectId", serviceId)
+                    .put("objectType", "planservice")
+                    .put("_org", "example.com"));
+        }
+        return new JSONObject()
+                .put("objectId", id)
+                .put("objectType", "plan")
+                .put("creationDate", "12-12-2017")
+                .put("planCostShares", new JSONObject()
+                        .put("objectId", "pcs1")
+                        .put("objectType", "membercostshare")
+                        .put("deductible", 2000)
+                        .put("copay", 23))
+                .put("linkedPlanServices", services);
+    }
+}
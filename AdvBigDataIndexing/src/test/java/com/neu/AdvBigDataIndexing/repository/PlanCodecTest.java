@@ -0,0 +1,53 @@
+package com.neu.AdvBigDataIndexing.repository;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlanCodecTest {
+    private static final byte[] JSON = "{\"objectId\":\"p\",\"objectType\":\"plan\",\"planType\":\"inNetwork\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final PlanCodec planCodec = new PlanCodec(null, PlanCodec.ZSTD, 3);
+
+    @Test
+    void decodesWhatItEncodes() {
+        assertArrayEquals(JSON, planCodec.decode(planCodec.encode(JSON)));
+        assertArrayEquals(JSON, planCodec.decode(JSON));
+    }
+
+    @Test
+    void decodesFramesWithoutContentSize() throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        try (ZstdOutputStream out = new ZstdOutputStream(frame)) {
+            out.write(JSON);
+        }
+
+        assertArrayEquals(JSON, planCodec.decode(stored(frame.toByteArray())));
+    }
+
+    @Test
+    void rejectsCorruptFrames() {
+        assertThrows(IllegalStateException.class, () -> planCodec.decode(stored(new byte[]{1, 2, 3, 4, 5, 6, 7, 8})));
+    }
+
+    @Test
+    void emptyValuesAreNotCurrent() {
+        assertFalse(planCodec.isCurrent(new byte[0]));
+        assertFalse(new PlanCodec(null, PlanCodec.NONE, 3).isCurrent(new byte[0]));
+        assertTrue(planCodec.isCurrent(planCodec.encode(JSON)));
+    }
+
+    private static byte[] stored(byte[] frame) {
+        return ByteBuffer.allocate(6 + frame.length).put((byte) 0).put((byte) 1).putInt(0).put(frame).array();
+    }
+}
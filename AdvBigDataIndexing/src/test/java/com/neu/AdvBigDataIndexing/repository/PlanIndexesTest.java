@@ -0,0 +1,122 @@
+package com.neu.AdvBigDataIndexing.repository;
+
+import com.neu.AdvBigDataIndexing.model.PlanListCriteria;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlanIndexesTest extends RedisTestSupport {
+    private PlanIndexes planIndexes;
+
+    @BeforeEach
+    void setUp() {
+        planIndexes = new PlanIndexes(redisRepository);
+    }
+
+    @Test
+    void pagesThroughMorePlansOfOneDayThanExaminedPerPage() {
+        index(3000, "12-12-2017");
+
+        List<String> listed = listAll(null, 20, 1000);
+
+        assertEquals(ids(3000), listed);
+    }
+
+    @Test
+    void pagesThroughPlansWithoutParsableDate() {
+        index(1500, "not a date");
+
+        assertEquals(ids(1500), listAll(null, 50, 100));
+    }
+
+    @Test
+    void pagesThroughSparseMatchesWithEmptyPages() {
+        index(3000, "12-12-2017");
+
+        // Every third plan is inNetwork, so most budget-limited pages are short or empty
+        List<String> listed = listAll("inNetwork", 20, 25);
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 3000; i += 3) {
+            expected.add(id(i));
+        }
+        assertEquals(expected, listed);
+    }
+
+    @Test
+    void continuesAfterTheCursorPlanWasDeleted() {
+        index(10, "12-12-2017");
+        PlanIndexes.Page first = planIndexes.list(criteria(null, 3, null, null), 1000);
+        assertEquals(List.of(id(0), id(1), id(2)), first.getIds());
+
+        redisRepository.transaction(t -> planIndexes.remove(t, id(2)));
+        PlanIndexes.Page second = planIndexes.list(criteria(null, 3, first.getNextDay(), first.getNextId()), 1000);
+
+        assertEquals(List.of(id(3), id(4), id(5)), second.getIds());
+    }
+
+    @Test
+    void cursorAlwaysMovesForward() {
+        index(500, "12-12-2017");
+
+        Long day = null;
+        String id = null;
+        do {
+            PlanIndexes.Page page = planIndexes.list(criteria("nothing matches", 10, day, id), 7);
+            assertTrue(page.getIds().isEmpty());
+            if (page.getNextDay() != null)
+                assertTrue(id == null || page.getNextId().compareTo(id) > 0, page.getNextId() + " after " + id);
+            day = page.getNextDay();
+            id = page.getNextId();
+        } while (day != null);
+    }
+
+    private List<String> listAll(String planType, int size, int maxExamined) {
+        List<String> listed = new ArrayList<>();
+        Long day = null;
+        String id = null;
+        for (int pages = 0; pages < 10_000; pages++) {
+            PlanIndexes.Page page = planIndexes.list(criteria(planType, size, day, id), maxExamined);
+            listed.addAll(page.getIds());
+            if (page.getNextDay() == null)
+                return listed;
+            day = page.getNextDay();
+            id = page.getNextId();
+        }
+        throw new AssertionError("Listing did not end");
+    }
+
+    private void index(int count, String creationDate) {
+        redisRepository.transaction(t -> {
+            for (int i = 0; i < count; i++) {
+                JSONObject plan = new JSONObject()
+                        .put("objectId", id(i))
+                        .put("creationDate", creationDate)
+                        .put("planType", i % 3 == 0 ? "inNetwork" : "outOfNetwork");
+                planIndexes.update(t, id(i), plan);
+            }
+        });
+    }
+
+    private static PlanListCriteria criteria(String planType, int size, Long afterDay, String afterId) {
+        return new PlanListCriteria(null, planType, null, null, null, null, null, null, size, afterDay, afterId);
+    }
+
+    private static List<String> ids(int count) {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(id(i));
+        }
+        return ids;
+    }
+
+    private static String id(int i) {
+        return String.format("p%05d", i);
+    }
+}
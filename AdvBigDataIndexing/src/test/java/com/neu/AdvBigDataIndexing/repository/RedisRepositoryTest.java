@@ -0,0 +1,47 @@
+package com.neu.AdvBigDataIndexing.repository;
+
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RedisRepositoryTest extends RedisTestSupport {
+
+    @Test
+    void transactionWatchingAbortsWhenAWatchedKeyChangedAfterTheRead() {
+        redisRepository.execute("sadd", jedis -> jedis.sadd("members", "a"));
+
+        List<Object> written = redisRepository.transactionWatching(List.of("members"), jedis -> {
+            String read = jedis.srandmember("members");
+            try (Jedis other = jedisPool.getResource()) {
+                other.sadd("members", "b");
+            }
+            return read;
+        }, (t, read) -> t.set("copy", read));
+
+        assertNull(written);
+        assertNull(redisRepository.get("copy"));
+    }
+
+    @Test
+    void transactionWatchingRunsTheCommandsBuiltFromTheRead() {
+        redisRepository.set("source", "value");
+
+        List<Object> written = redisRepository.transactionWatching(List.of("source"),
+                jedis -> jedis.get("source"), (t, read) -> t.set("copy", read));
+
+        assertNotNull(written);
+        assertEquals("value", redisRepository.get("copy"));
+    }
+
+    @Test
+    void transactionWatchingSkipsTheCommandsWhenNothingWasRead() {
+        assertNull(redisRepository.transactionWatching(List.of("missing"),
+                jedis -> jedis.get("missing"), (t, read) -> t.set("copy", read)));
+        assertNull(redisRepository.get("copy"));
+    }
+}
@@ -0,0 +1,40 @@
+package com.neu.AdvBigDataIndexing.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+/**
+ * Base of the tests that run against a local Redis (localhost:6379, or REDIS_TEST_HOST
+ * and REDIS_TEST_PORT). They use database 15, which is flushed before every test,
+ * and are skipped when no Redis is reachable.
+ */
+public abstract class RedisTestSupport {
+    private static final int DATABASE = 15;
+
+    protected JedisPool jedisPool;
+    protected RedisRepository redisRepository;
+
+    @BeforeEach
+    void connect() {
+        String host = System.getenv().getOrDefault("REDIS_TEST_HOST", "localhost");
+        int port = Integer.parseInt(System.getenv().getOrDefault("REDIS_TEST_PORT", "6379"));
+        jedisPool = new JedisPool(new JedisPoolConfig(), host, port, 2000, null, DATABASE);
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.flushDB();
+        } catch (Exception e) {
+            jedisPool.close();
+            Assumptions.abort("No Redis at " + host + ":" + port + ": " + e.getMessage());
+        }
+        redisRepository = new RedisRepository(jedisPool, new SimpleMeterRegistry(), 8, 2000);
+    }
+
+    @AfterEach
+    void disconnect() {
+        jedisPool.close();
+    }
+}
@@ -0,0 +1,175 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.bulk.OperationType;
+import com.neu.AdvBigDataIndexing.model.IndexingMessage;
+import com.neu.AdvBigDataIndexing.model.IndexingMessage.Document;
+import com.neu.AdvBigDataIndexing.model.OutboxEvent;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IndexingListenerTest {
+    private static final String INDEX = "plans";
+
+    private final IndexingMessageCodec codec = new IndexingMessageCodec("cbor");
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private PlanIndex planIndex;
+    private BulkIndexer bulkIndexer;
+    private IndexingRetrier indexingRetrier;
+    private Channel channel;
+    private IndexingListener listener;
+
+    @BeforeEach
+    void setUp() {
+        planIndex = mock(PlanIndex.class);
+        bulkIndexer = mock(BulkIndexer.class);
+        indexingRetrier = mock(IndexingRetrier.class);
+        channel = mock(Channel.class);
+        when(planIndex.writeTargets()).thenReturn(List.of(INDEX));
+        when(indexingRetrier.canRetry(any())).thenReturn(true);
+        listener = new IndexingListener(planIndex, bulkIndexer, codec, indexingRetrier,
+                mock(PlanSearchCache.class), meterRegistry);
+    }
+
+    @Test
+    void sendsOnlyTheNewestVersionOfADocument() throws Exception {
+        when(bulkIndexer.execute(anyList())).thenReturn(Map.of());
+
+        listener.onMessageBatch(List.of(message(1, 2, "p1"), message(2, 3, "p1"), message(3, 1, "p1")), channel);
+
+        List<BulkOperation> operations = executed();
+        assertEquals(1, operations.size());
+        assertEquals(3L, operations.get(0).index().version());
+        assertEquals(2.0, meterRegistry.counter("indexing.coalesced.operations").count());
+        verify(channel).basicAck(1, false);
+        verify(channel).basicAck(2, false);
+        verify(channel).basicAck(3, false);
+    }
+
+    @Test
+    void keepsOperationsOnDifferentDocuments() throws Exception {
+        when(bulkIndexer.execute(anyList())).thenReturn(Map.of());
+
+        listener.onMessageBatch(List.of(message(1, 1, "p1"), message(2, 1, "p2")), channel);
+
+        assertEquals(2, executed().size());
+        assertEquals(0.0, meterRegistry.counter("indexing.coalesced.operations").count());
+    }
+
+    @Test
+    void acknowledgesVersionConflictsAsStale() throws Exception {
+        when(bulkIndexer.execute(anyList())).thenReturn(Map.of(0, failure(409)));
+
+        listener.onMessageBatch(List.of(message(1, 1, "p1")), channel);
+
+        verify(channel).basicAck(1, false);
+        verify(indexingRetrier, never()).retry(anyList());
+        assertEquals(1.0, meterRegistry.counter("indexing.stale.operations").count());
+        assertEquals(1.0, meterRegistry.counter("indexing.consumed", "outcome", "indexed").count());
+    }
+
+    @Test
+    void rejectsVersionConflictsOfUnversionedMessages() throws Exception {
+        when(bulkIndexer.execute(anyList())).thenReturn(Map.of(0, failure(409)));
+
+        listener.onMessageBatch(List.of(message(1, null, "p1")), channel);
+
+        verify(channel).basicReject(1, false);
+        assertEquals(0.0, meterRegistry.counter("indexing.stale.operations").count());
+    }
+
+    @Test
+    void retriesUnavailableAndRejectsInvalidOperations() throws Exception {
+        when(bulkIndexer.execute(anyList())).thenReturn(Map.of(0, failure(503), 1, failure(400)));
+        Message unavailable = message(1, 1, "p1");
+        Message invalid = message(2, 1, "p2");
+
+        listener.onMessageBatch(List.of(unavailable, invalid), channel);
+
+        verify(indexingRetrier).retry(List.of(unavailable));
+        verify(channel).basicAck(1, false);
+        verify(channel).basicReject(2, false);
+    }
+
+    @Test
+    void rejectsFailedMessagesOutOfRetries() throws Exception {
+        when(bulkIndexer.execute(anyList())).thenReturn(Map.of(0, failure(503)));
+        when(indexingRetrier.canRetry(any())).thenReturn(false);
+
+        listener.onMessageBatch(List.of(message(1, 1, "p1")), channel);
+
+        verify(indexingRetrier, never()).retry(anyList());
+        verify(channel).basicReject(1, false);
+    }
+
+    @Test
+    void requeuesWhenTheRetryCannotBePublished() throws Exception {
+        when(bulkIndexer.execute(anyList())).thenReturn(Map.of(0, failure(503)));
+        doThrow(new IllegalStateException("no broker")).when(indexingRetrier).retry(anyList());
+
+        listener.onMessageBatch(List.of(message(1, 1, "p1")), channel);
+
+        verify(channel).basicNack(1, false, true);
+    }
+
+    @Test
+    void rejectsUndecodableMessagesAndIndexesTheRest() throws Exception {
+        when(bulkIndexer.execute(anyList())).thenReturn(Map.of());
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(IndexingMessageCodec.CBOR_CONTENT_TYPE);
+        properties.setDeliveryTag(1);
+        Message undecodable = new Message(new byte[]{(byte) 0xff, 0x00}, properties);
+
+        listener.onMessageBatch(List.of(undecodable, message(2, 1, "p1")), channel);
+
+        verify(channel).basicReject(1, false);
+        verify(channel).basicAck(2, false);
+        assertEquals(1, executed().size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<BulkOperation> executed() throws Exception {
+        ArgumentCaptor<List<BulkOperation>> operations = ArgumentCaptor.forClass(List.class);
+        verify(bulkIndexer).execute(operations.capture());
+        return operations.getValue();
+    }
+
+    private Message message(long deliveryTag, Integer planVersion, String documentId) {
+        IndexingMessage indexingMessage = new IndexingMessage(IndexingMessage.CURRENT_VERSION, "UPDATE", "p",
+                List.of(new Document(documentId, "p", Map.of("objectId", documentId))), List.of());
+        OutboxEvent event = codec.encode(indexingMessage);
+        MessageProperties properties = new MessageProperties();
+        codec.prepare(properties, event);
+        if (planVersion != null)
+            properties.setHeader(IndexingMessageCodec.PLAN_VERSION_HEADER, planVersion.longValue());
+        properties.setDeliveryTag(deliveryTag);
+        return new Message(event.getPayload(), properties);
+    }
+
+    private static BulkResponseItem failure(int status) {
+        return BulkResponseItem.of(item -> item
+                .operationType(OperationType.Index)
+                .index(INDEX)
+                .id("p1")
+                .status(status)
+                .error(error -> error.type("failure").reason("status " + status)));
+    }
+}
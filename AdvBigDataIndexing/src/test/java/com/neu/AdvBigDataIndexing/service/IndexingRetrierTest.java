@@ -0,0 +1,98 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IndexingRetrierTest {
+    private static final String EXCHANGE = "plans";
+    private static final long CONFIRM_TIMEOUT = 5000;
+
+    private RabbitOperations operations;
+    private IndexingRetrier retrier;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RabbitTemplate template = mock(RabbitTemplate.class);
+        operations = mock(RabbitOperations.class);
+        when(template.invoke(any(RabbitOperations.OperationsCallback.class))).thenAnswer(invocation ->
+                invocation.<RabbitOperations.OperationsCallback<Object>>getArgument(0).doInRabbit(operations));
+        retrier = new IndexingRetrier(template, null, EXCHANGE, 3, 1000, 4, CONFIRM_TIMEOUT, 60_000);
+    }
+
+    @Test
+    void delaysGrowByTheMultiplier() {
+        assertEquals(1000, retrier.delay(1));
+        assertEquals(4000, retrier.delay(2));
+        assertEquals(16000, retrier.delay(3));
+        assertEquals(21000, retrier.totalDelay());
+    }
+
+    @Test
+    void retriesDeletedDocumentsOnlyWhileElasticsearchRemembersTheDelete() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new IndexingRetrier(null, null, EXCHANGE, 3, 1000, 4, CONFIRM_TIMEOUT, 21000));
+    }
+
+    @Test
+    void retriesUpToMaxRetries() {
+        assertTrue(retrier.canRetry(received(null)));
+        assertTrue(retrier.canRetry(received("2")));
+        assertFalse(retrier.canRetry(received("3")));
+    }
+
+    @Test
+    void routesRetriesToTheRetryExchangeUnderTheLaneRoutingKey() {
+        Message first = received(null);
+        Message second = received("2");
+
+        retrier.retry(List.of(first, second));
+
+        ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+        verify(operations, times(2)).send(eq(EXCHANGE + ".retry"), eq("lane.3"), sent.capture());
+        verify(operations).waitForConfirmsOrDie(CONFIRM_TIMEOUT);
+
+        MessageProperties firstRetry = sent.getAllValues().get(0).getMessageProperties();
+        assertEquals("1", firstRetry.getHeader(IndexingRetrier.RETRY_HEADER));
+        assertEquals("application/cbor", firstRetry.getContentType());
+        assertEquals("m1", firstRetry.getMessageId());
+        assertEquals(42L, (Long) firstRetry.getHeader(IndexingMessageCodec.PLAN_VERSION_HEADER));
+        assertNull(firstRetry.getHeader("x-death"));
+        assertArrayEquals(first.getBody(), sent.getAllValues().get(0).getBody());
+
+        assertEquals("3", sent.getAllValues().get(1).getMessageProperties().getHeader(IndexingRetrier.RETRY_HEADER));
+    }
+
+    private static Message received(String retries) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType("application/cbor");
+        properties.setMessageId("m1");
+        properties.setReceivedRoutingKey("lane.3");
+        properties.setHeader(IndexingMessageCodec.PLAN_VERSION_HEADER, 42L);
+        properties.setHeader("x-death", List.of(Map.of("queue", "plans.retry.1")));
+        if (retries != null)
+            properties.setHeader(IndexingRetrier.RETRY_HEADER, retries);
+        return new Message(new byte[]{1, 2, 3}, properties);
+    }
+}
@@ -0,0 +1,158 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import com.neu.AdvBigDataIndexing.repository.BlobPlanStore;
+import com.neu.AdvBigDataIndexing.repository.Outbox;
+import com.neu.AdvBigDataIndexing.repository.PlanCodec;
+import com.neu.AdvBigDataIndexing.repository.PlanIndexes;
+import com.neu.AdvBigDataIndexing.repository.RedisTestSupport;
+import com.neu.AdvBigDataIndexing.util.JsonValidator;
+import com.neu.AdvBigDataIndexing.util.SchemaRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Per-line results of the NDJSON import against a real Redis, with the near cache
+ * disabled.
+ */
+class PlanBulkImporterTest extends RedisTestSupport {
+    private PlanService planService;
+    private PlanBulkImporter importer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        SchemaRegistry schemaRegistry = new SchemaRegistry(new ClassPathResource("JsonSchema.json"));
+        schemaRegistry.load();
+        JsonValidator validator = new JsonValidator(schemaRegistry, new SimpleMeterRegistry());
+        ETagService eTagService = new ETagService();
+        BlobPlanStore planStore = new BlobPlanStore(redisRepository, eTagService, new Outbox(redisRepository),
+                new PlanCodec(redisRepository, PlanCodec.NONE, 3), new PlanIndexes(redisRepository));
+        PlanCache planCache = new PlanCache(null, new SimpleMeterRegistry(), 0, 0) {
+            @Override
+            public void invalidate(Collection<String> keys) {
+                evict(keys);
+            }
+        };
+        planService = new PlanService(planStore, eTagService, new IndexingMessageCodec("cbor"), planCache, validator);
+        importer = new PlanBulkImporter(validator, planService);
+        ReflectionTestUtils.setField(importer, "batchSize", 10);
+    }
+
+    @Test
+    void reportsEveryLineOfABatch() throws Exception {
+        List<JSONObject> results = importPlans(
+                plan("p1").toString(),
+                "",
+                "{not json",
+                plan("p2").toString(),
+                plan("p1").put("planType", "outOfNetwork").toString(),
+                plan("p3").put("planCostShares", new JSONObject().put("objectType", "membercostshare")).toString());
+
+        assertEquals(List.of(1, 3, 4, 5, 6), lines(results));
+        assertResult(results.get(0), 1, 201);
+        assertEquals("p1", results.get(0).getString("objectId"));
+        assertNotNull(results.get(0).getString("etag"));
+        assertResult(results.get(1), 3, 400);
+        assertResult(results.get(2), 4, 201);
+        assertResult(results.get(3), 5, 409);
+        assertResult(results.get(4), 6, 400);
+        assertFalse(results.get(4).getString("error").isEmpty());
+
+        assertEquals("inNetwork", planService.getPlan("plan_p1").getString("planType"));
+        assertTrue(planService.isKeyPresent("plan_p2"));
+        assertFalse(planService.isKeyPresent("plan_p3"));
+    }
+
+    @Test
+    void rejectsPlansThatAlreadyExist() throws Exception {
+        importPlans(plan("p1").toString());
+
+        List<JSONObject> results = importPlans(plan("p2").toString(), plan("p1").toString());
+
+        assertResult(results.get(0), 1, 201);
+        assertResult(results.get(1), 2, 409);
+    }
+
+    @Test
+    void reportsLinesInOrderAcrossBatches() throws Exception {
+        ReflectionTestUtils.setField(importer, "batchSize", 2);
+
+        List<JSONObject> results = importPlans(
+                plan("p1").toString(),
+                "[]",
+                plan("p2").toString(),
+                plan("p3").toString(),
+                plan("p2").toString());
+
+        assertEquals(List.of(1, 2, 3, 4, 5), lines(results));
+        assertResult(results.get(1), 2, 400);
+        assertResult(results.get(3), 4, 201);
+        // The duplicate arrives after its batch was written
+        assertResult(results.get(4), 5, 409);
+    }
+
+    private List<JSONObject> importPlans(String... lines) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        importer.importPlans(new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8)), out);
+        List<JSONObject> results = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            results.add(new JSONObject(line));
+        }
+        return results;
+    }
+
+    private static List<Integer> lines(List<JSONObject> results) {
+        return results.stream().map(result -> result.getInt("line")).toList();
+    }
+
+    private static void assertResult(JSONObject result, int line, int status) {
+        assertEquals(line, result.getInt("line"), result.toString());
+        assertEquals(status, result.getInt("status"), result.toString());
+    }
+
+    private static JSONObject plan(String planId) {
+        JSONObject service = new JSONObject()
+                .put("linkedService", new JSONObject()
+                        .put("_org", "example.com")
+                        .put("objectId", planId + "-s")
+                        .put("objectType", "service")
+                        .put("name", "Yearly physical"))
+                .put("planserviceCostShares", costShare(planId + "-pscs"))
+                .put("_org", "example.com")
+                .put("objectId", planId + "-ps")
+                .put("objectType", "planservice");
+        return new JSONObject()
+                .put("planCostShares", costShare(planId + "-pcs"))
+                .put("linkedPlanServices", new JSONArray().put(service))
+                .put("_org", "example.com")
+                .put("objectId", planId)
+                .put("objectType", "plan")
+                .put("planType", "inNetwork")
+                .put("creationDate", "12-12-2017");
+    }
+
+    private static JSONObject costShare(String objectId) {
+        return new JSONObject()
+                .put("deductible", 2000)
+                .put("_org", "example.com")
+                .put("copay", 23)
+                .put("objectId", objectId)
+                .put("objectType", "membercostshare");
+    }
+}
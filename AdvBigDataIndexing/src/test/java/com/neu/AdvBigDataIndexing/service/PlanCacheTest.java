@@ -0,0 +1,125 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import com.neu.AdvBigDataIndexing.model.PlanDocument;
+import com.neu.AdvBigDataIndexing.repository.RedisTestSupport;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Generation checks, LRU bounds and the invalidation channel of the near cache
+ * against a real Redis.
+ */
+class PlanCacheTest extends RedisTestSupport {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<PlanCache> caches = new ArrayList<>();
+
+    @AfterEach
+    void stopCaches() {
+        caches.forEach(PlanCache::stop);
+    }
+
+    @Test
+    void cachesNothingUntilSubscribed() {
+        PlanCache cache = new PlanCache(redisRepository, meterRegistry, 10, 1000);
+
+        cache.put("plan_1", document("1"), cache.generation());
+
+        assertNull(cache.get("plan_1"));
+    }
+
+    @Test
+    void dropsDocumentsReadBeforeAnInvalidation() throws Exception {
+        PlanCache cache = start(10, 1000);
+        long generation = cache.generation();
+
+        cache.evict(List.of("plan_2"));
+        cache.put("plan_1", document("1"), generation);
+
+        assertNull(cache.get("plan_1"));
+
+        cache.put("plan_1", document("1"), cache.generation());
+
+        assertEquals("1", cache.get("plan_1").getETag());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedPlanBeyondMaxEntries() throws Exception {
+        PlanCache cache = start(2, 1000);
+        cache.put("plan_1", document("1"), cache.generation());
+        cache.put("plan_2", document("2"), cache.generation());
+        cache.get("plan_1");
+
+        cache.put("plan_3", document("3"), cache.generation());
+
+        assertNotNull(cache.get("plan_1"));
+        assertNull(cache.get("plan_2"));
+        assertNotNull(cache.get("plan_3"));
+        assertEquals(1.0, meterRegistry.counter("plan.cache.evictions").count());
+    }
+
+    @Test
+    void boundsTheCachedBytes() throws Exception {
+        PlanCache cache = start(10, 10);
+        cache.put("plan_1", document("1234"), cache.generation());
+        cache.put("plan_2", document("1234"), cache.generation());
+
+        cache.put("plan_3", document("1234"), cache.generation());
+
+        assertNull(cache.get("plan_1"));
+        assertNotNull(cache.get("plan_2"));
+        assertNotNull(cache.get("plan_3"));
+
+        cache.put("plan_4", document("12345678901"), cache.generation());
+
+        assertNull(cache.get("plan_4"));
+        assertNotNull(cache.get("plan_3"));
+    }
+
+    @Test
+    void invalidatesThePlanOnOtherInstances() throws Exception {
+        PlanCache writer = start(10, 1000);
+        PlanCache reader = start(10, 1000);
+        long generation = reader.generation();
+        reader.put("plan_1", document("1"), generation);
+
+        writer.invalidate(List.of("plan_1"));
+
+        for (int i = 0; i < 100 && reader.get("plan_1") != null; i++) {
+            Thread.sleep(20);
+        }
+        assertNull(reader.get("plan_1"));
+        // A read that started before the invalidation arrived is not cached
+        reader.put("plan_1", document("1"), generation);
+        assertNull(reader.get("plan_1"));
+    }
+
+    private PlanCache start(int maxEntries, long maxBytes) throws InterruptedException {
+        PlanCache cache = new PlanCache(redisRepository, meterRegistry, maxEntries, maxBytes);
+        caches.add(cache);
+        cache.start();
+        // Puts are ignored until the invalidation channel is subscribed
+        for (int i = 0; i < 100; i++) {
+            cache.put("probe", document("probe"), cache.generation());
+            if (cache.get("probe") != null) {
+                cache.evict(List.of("probe"));
+                return cache;
+            }
+            Thread.sleep(20);
+        }
+        return fail("The plan cache did not subscribe");
+    }
+
+    private static PlanDocument document(String body) {
+        return new PlanDocument(body, body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,110 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import com.neu.AdvBigDataIndexing.model.OutboxEvent;
+import com.neu.AdvBigDataIndexing.repository.BlobPlanStore;
+import com.neu.AdvBigDataIndexing.repository.Outbox;
+import com.neu.AdvBigDataIndexing.repository.PlanCodec;
+import com.neu.AdvBigDataIndexing.repository.PlanIndexes;
+import com.neu.AdvBigDataIndexing.repository.RedisTestSupport;
+import com.neu.AdvBigDataIndexing.util.IndexingEvents;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+class PlanExporterTest extends RedisTestSupport {
+    private final IndexingMessageCodec codec = new IndexingMessageCodec("cbor");
+    private BlobPlanStore planStore;
+
+    @BeforeEach
+    void setUp() {
+        planStore = spy(new BlobPlanStore(redisRepository, new ETagService(), new Outbox(redisRepository),
+                new PlanCodec(redisRepository, PlanCodec.NONE, 3), new PlanIndexes(redisRepository)));
+    }
+
+    @Test
+    void exportsEveryPlanAcrossScanPages() throws Exception {
+        store(25);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long count = new PlanExporter(redisRepository, planStore, 3).export(out);
+
+        assertEquals(25, count);
+        // The index and outbox keys of the plans are not exported
+        assertEquals(ids(25), exportedIds(out));
+        verify(planStore, atLeast(2)).readDocuments(anyList());
+    }
+
+    @Test
+    void exportsNothingWithoutPlans() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(0, new PlanExporter(redisRepository, planStore, 3).export(out));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    void skipsPlansDeletedDuringTheScan() throws Exception {
+        store(5);
+        doAnswer(invocation -> {
+            redisRepository.execute("del", jedis -> jedis.del("plan_p2"));
+            return invocation.callRealMethod();
+        }).when(planStore).readDocuments(anyList());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long count = new PlanExporter(redisRepository, planStore, 100).export(out);
+
+        assertEquals(4, count);
+        assertEquals(List.of("p0", "p1", "p3", "p4"), exportedIds(out));
+    }
+
+    private void store(int count) {
+        List<String> keys = new ArrayList<>();
+        List<JSONObject> plans = new ArrayList<>();
+        for (String planId : ids(count)) {
+            keys.add("plan_" + planId);
+            plans.add(new JSONObject()
+                    .put("objectId", planId)
+                    .put("objectType", "plan")
+                    .put("planType", "inNetwork")
+                    .put("creationDate", "12-12-2017"));
+        }
+        List<OutboxEvent> events = new ArrayList<>();
+        for (JSONObject plan : plans) {
+            events.add(codec.encode(IndexingEvents.save(plan.getString("objectId"), plan)));
+        }
+        planStore.saveAll(keys, plans, events);
+    }
+
+    private static List<String> exportedIds(ByteArrayOutputStream out) {
+        List<String> ids = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty())
+                ids.add(new JSONObject(line).getString("objectId"));
+        }
+        // SCAN returns keys in hash order
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private static List<String> ids(int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add("p" + i);
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+}
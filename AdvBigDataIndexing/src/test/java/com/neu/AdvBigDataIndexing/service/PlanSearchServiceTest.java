@@ -0,0 +1,171 @@
+package com.neu.AdvBigDataIndexing.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.query_dsl.HasChildQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch._types.query_dsl.RangeQuery;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.neu.AdvBigDataIndexing.model.PlanSearchCriteria;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PlanSearchServiceTest {
+    private ElasticsearchClient elasticsearchClient;
+    private PlanSearchCache cache;
+    private PlanSearchService searchService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        elasticsearchClient = mock(ElasticsearchClient.class);
+        cache = mock(PlanSearchCache.class);
+        when(cache.generation()).thenReturn(7L);
+        searchService = new PlanSearchService(elasticsearchClient, cache);
+        respondWith();
+    }
+
+    @Test
+    void onlyReturnsPlansWithoutOtherFilters() throws Exception {
+        SearchRequest request = search(criteria(null, null, null, null, null, 10, null));
+
+        List<Query> filters = request.query().bool().filter();
+        assertEquals(1, filters.size());
+        assertEquals("plan_join", filters.get(0).term().field());
+        assertEquals("plan", filters.get(0).term().value().stringValue());
+        assertEquals(List.of("plan-index"), request.index());
+        assertEquals(10, request.size());
+        assertEquals("objectId.keyword", request.sort().get(0).field().field());
+        assertTrue(request.searchAfter().isEmpty());
+    }
+
+    @Test
+    void filtersPlanFieldsByExactValue() throws Exception {
+        List<Query> filters = search(criteria("example.com", "inNetwork", null, null, null, 10, null))
+                .query().bool().filter();
+
+        assertEquals(3, filters.size());
+        assertEquals("_org.keyword", filters.get(1).term().field());
+        assertEquals("example.com", filters.get(1).term().value().stringValue());
+        assertEquals("planType.keyword", filters.get(2).term().field());
+        assertEquals("inNetwork", filters.get(2).term().value().stringValue());
+    }
+
+    @Test
+    void joinsCostShareRangesInOneChildQuery() throws Exception {
+        List<Query> filters = search(criteria(null, null, 10, 50, 2000, 10, null)).query().bool().filter();
+
+        assertEquals(2, filters.size());
+        HasChildQuery costShares = filters.get(1).hasChild();
+        assertEquals("membercostshare", costShares.type());
+        List<Query> ranges = costShares.query().bool().filter();
+        assertEquals(2, ranges.size());
+        RangeQuery copay = ranges.get(0).range();
+        assertEquals("copay", copay.field());
+        assertEquals(10, copay.gte().to(Integer.class));
+        assertEquals(50, copay.lte().to(Integer.class));
+        RangeQuery deductible = ranges.get(1).range();
+        assertEquals("deductible", deductible.field());
+        assertEquals(2000, deductible.lte().to(Integer.class));
+        assertNull(deductible.gte());
+    }
+
+    @Test
+    void requiresEveryServiceThroughTwoJoins() throws Exception {
+        List<Query> filters = search(new PlanSearchCriteria(null, null, null, null, null, null,
+                List.of("Yearly physical", "Dental"), 10, null)).query().bool().filter();
+
+        assertEquals(3, filters.size());
+        HasChildQuery planService = filters.get(1).hasChild();
+        assertEquals("planservice", planService.type());
+        HasChildQuery service = planService.query().hasChild();
+        assertEquals("service", service.type());
+        assertEquals("name", service.query().match().field());
+        assertEquals("Yearly physical", service.query().match().query().stringValue());
+        assertEquals("Dental", filters.get(2).hasChild().query().hasChild().query().match().query().stringValue());
+    }
+
+    @Test
+    void continuesAfterTheCursor() throws Exception {
+        SearchRequest request = search(criteria(null, null, null, null, null, 10, "p2"));
+
+        assertEquals("p2", request.searchAfter().get(0).stringValue());
+    }
+
+    @Test
+    void returnsACursorOnlyForFullPages() throws Exception {
+        respondWith("p1", "p2");
+        JSONObject full = new JSONObject(searchService.search(criteria(null, null, null, null, null, 2, null)));
+
+        assertEquals(2, full.getJSONArray("plans").length());
+        assertFalse(full.getJSONArray("plans").getJSONObject(0).has("plan_join"));
+        assertEquals("p2", PlanSearchService.decodeCursor(full.getString("next")));
+
+        respondWith("p3");
+        JSONObject last = new JSONObject(searchService.search(criteria(null, null, null, null, null, 2, "p2")));
+
+        assertTrue(last.isNull("next"));
+    }
+
+    @Test
+    void cachesResultsWithTheGenerationReadBeforeSearching() throws Exception {
+        PlanSearchCriteria criteria = criteria(null, "inNetwork", null, null, null, 10, null);
+        String result = searchService.search(criteria);
+
+        verify(cache).put(criteria, result, 7L);
+
+        when(cache.get(criteria)).thenReturn("cached");
+        assertEquals("cached", searchService.search(criteria));
+        verify(elasticsearchClient).search(any(SearchRequest.class), eq(Map.class));
+    }
+
+    @Test
+    void roundTripsCursors() {
+        assertEquals("plan:1/ü", PlanSearchService.decodeCursor(PlanSearchService.encodeCursor("plan:1/ü")));
+    }
+
+    private SearchRequest search(PlanSearchCriteria criteria) throws Exception {
+        searchService.search(criteria);
+        ArgumentCaptor<SearchRequest> request = ArgumentCaptor.forClass(SearchRequest.class);
+        verify(elasticsearchClient).search(request.capture(), eq(Map.class));
+        return request.getValue();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void respondWith(String... planIds) throws Exception {
+        List<Hit<Map>> hits = new ArrayList<>();
+        for (String planId : planIds) {
+            Map<String, Object> source = new HashMap<>(Map.of("objectId", planId, "plan_join", "plan"));
+            hits.add(Hit.of(h -> h.index("plan-index-v1").id(planId).source(source).sort(FieldValue.of(planId))));
+        }
+        SearchResponse<Map> response = SearchResponse.of(r -> r
+                .took(1)
+                .timedOut(false)
+                .shards(s -> s.total(1).successful(1).failed(0))
+                .hits(h -> h.hits(hits)));
+        when(elasticsearchClient.search(any(SearchRequest.class), eq(Map.class))).thenReturn(response);
+    }
+
+    private static PlanSearchCriteria criteria(String org, String planType, Integer minCopay, Integer maxCopay,
+                                               Integer maxDeductible, int size, String after) {
+        return new PlanSearchCriteria(org, planType, minCopay, maxCopay, null, maxDeductible, null, size, after);
+    }
+}
@@ -0,0 +1,121 @@
+package com.neu.AdvBigDataIndexing.util;
+
+import com.neu.AdvBigDataIndexing.model.IndexingMessage;
+import com.neu.AdvBigDataIndexing.model.IndexingMessage.Document;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexingEventsTest {
+
+    @Test
+    void savesEveryObjectRoutedToItsParent() {
+        IndexingMessage message = IndexingEvents.save("p", plan("s1", "s2"));
+
+        assertEquals("SAVE", message.getOperation());
+        assertEquals(Set.of("p", "pcs", "s1", "s1-cs", "s2", "s2-cs"), ids(message.getUpserts()));
+        assertEquals("p", find(message.getUpserts(), "p").getRouting());
+        assertEquals("p", find(message.getUpserts(), "s1").getRouting());
+        assertEquals("s1", find(message.getUpserts(), "s1-cs").getRouting());
+        assertTrue(message.getDeletes().isEmpty());
+    }
+
+    @Test
+    void deletesEveryObject() {
+        IndexingMessage message = IndexingEvents.delete("p", plan("s1"));
+
+        assertEquals("DELETE", message.getOperation());
+        assertEquals(Set.of("p", "pcs", "s1", "s1-cs"), ids(message.getDeletes()));
+        assertTrue(message.getUpserts().isEmpty());
+    }
+
+    @Test
+    void hasNoChangesForAnEqualPlan() {
+        assertNull(IndexingEvents.changes("p", plan("s1", "s2"), plan("s1", "s2")));
+    }
+
+    @Test
+    void upsertsOnlyTheChangedObject() {
+        JSONObject newPlan = plan("s1", "s2");
+        costShare(newPlan, "s2").put("copay", 50);
+
+        IndexingMessage message = IndexingEvents.changes("p", plan("s1", "s2"), newPlan);
+
+        assertEquals("UPDATE", message.getOperation());
+        assertEquals(Set.of("s2-cs"), ids(message.getUpserts()));
+        assertEquals("s2", message.getUpserts().get(0).getRouting());
+        assertEquals(50, message.getUpserts().get(0).getSource().get("copay"));
+        assertTrue(message.getDeletes().isEmpty());
+    }
+
+    @Test
+    void upsertsAddedAndDeletesRemovedSubtrees() {
+        IndexingMessage message = IndexingEvents.changes("p", plan("s1", "s2"), plan("s1", "s3"));
+
+        assertEquals(Set.of("s3", "s3-cs"), ids(message.getUpserts()));
+        assertEquals(Set.of("s2", "s2-cs"), ids(message.getDeletes()));
+    }
+
+    @Test
+    void upsertsTheWholePlanWithoutAPreviousVersion() {
+        IndexingMessage message = IndexingEvents.changes("p", new JSONObject(), plan("s1"));
+
+        assertEquals(Set.of("p", "pcs", "s1", "s1-cs"), ids(message.getUpserts()));
+    }
+
+    @Test
+    void sendsJsonNullsAsPlainNulls() {
+        JSONObject newPlan = plan("s1").put("planType", JSONObject.NULL);
+
+        Document root = find(IndexingEvents.changes("p", plan("s1"), newPlan).getUpserts(), "p");
+
+        assertTrue(root.getSource().containsKey("planType"));
+        assertNull(root.getSource().get("planType"));
+    }
+
+    private static Set<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).collect(Collectors.toSet());
+    }
+
+    private static Document find(List<Document> documents, String id) {
+        return documents.stream().filter(document -> id.equals(document.getId())).findFirst().orElseThrow();
+    }
+
+    private static JSONObject costShare(JSONObject plan, String serviceId) {
+        for (Object service : plan.getJSONArray("linkedPlanServices")) {
+            if (serviceId.equals(((JSONObject) service).getString("objectId")))
+                return ((JSONObject) service).getJSONObject("planserviceCostShares");
+        }
+        throw new AssertionError("No service " + serviceId);
+    }
+
+    private static JSONObject plan(String... serviceIds) {
+        JSONArray services = new JSONArray();
+        for (String serviceId : serviceIds) {
+            services.put(new JSONObject()
+                    .put("objectId", serviceId)
+                    .put("objectType", "planservice")
+                    .put("planserviceCostShares", new JSONObject()
+                            .put("objectId", serviceId + "-cs")
+                            .put("objectType", "membercostshare")
+                            .put("copay", 10)));
+        }
+        return new JSONObject()
+                .put("objectId", "p")
+                .put("objectType", "plan")
+                .put("planType", "inNetwork")
+                .put("planCostShares", new JSONObject()
+                        .put("objectId", "pcs")
+                        .put("objectType", "membercostshare")
+                        .put("copay", 23))
+                .put("linkedPlanServices", services);
+    }
+}
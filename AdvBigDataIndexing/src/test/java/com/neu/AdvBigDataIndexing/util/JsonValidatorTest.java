@@ -0,0 +1,139 @@
+package com.neu.AdvBigDataIndexing.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.everit.json.schema.ValidationException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonValidatorTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private SchemaRegistry schemaRegistry;
+    private JsonValidator validator;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        schemaRegistry = new SchemaRegistry(new ClassPathResource("JsonSchema.json"));
+        schemaRegistry.load();
+        validator = new JsonValidator(schemaRegistry, meterRegistry);
+    }
+
+    @Test
+    void registersNestedSchemasByObjectType() {
+        assertNotNull(schemaRegistry.getSchema("plan"));
+        assertNotNull(schemaRegistry.getSchema("membercostshare"));
+        assertNotNull(schemaRegistry.getSchema("planservice"));
+        assertNotNull(schemaRegistry.getSchema("service"));
+        assertEquals("planservice", schemaRegistry.getPropertyType("plan", "linkedPlanServices"));
+        assertEquals("membercostshare", schemaRegistry.getPropertyType("planservice", "planserviceCostShares"));
+        assertNull(schemaRegistry.getPropertyType("plan", "planType"));
+    }
+
+    @Test
+    void acceptsFragmentsWithoutRequiredProperties() {
+        JSONObject fragment = root()
+                .put("planCostShares", object("pcs", "membercostshare").put("copay", 5))
+                .put("linkedPlanServices", new JSONArray()
+                        .put(object("ps", "planservice")
+                                .put("linkedService", object("s", "service").put("name", "Dental"))));
+
+        assertDoesNotThrow(() -> validator.validateFragment(fragment));
+    }
+
+    @Test
+    void rejectsFragmentsThatAreNoPlan() {
+        ValidationException ex = assertThrows(ValidationException.class,
+                () -> validator.validateFragment(object("s", "service")));
+
+        assertEquals("#/objectType", ex.getPointerToViolation());
+        assertEquals(1.0, meterRegistry.timer("plan.schema.validation",
+                "objectType", "service-fragment", "outcome", "invalid").count());
+    }
+
+    @Test
+    void rejectsObjectsWithoutObjectId() {
+        JSONObject fragment = root().put("planCostShares", new JSONObject().put("objectType", "membercostshare"));
+
+        assertEquals("#/planCostShares", pointer(fragment));
+    }
+
+    @Test
+    void rejectsAnObjectWhereTheSchemaHasAnArray() {
+        JSONObject fragment = root().put("linkedPlanServices", object("ps", "planservice"));
+
+        assertEquals("#/linkedPlanServices", pointer(fragment));
+    }
+
+    @Test
+    void rejectsNestedObjectsOfAnotherType() {
+        JSONObject fragment = root().put("linkedPlanServices", new JSONArray()
+                .put(object("ps", "planservice").put("linkedService", object("s", "membercostshare"))));
+
+        assertEquals("#/linkedPlanServices/0/linkedService/objectType", pointer(fragment));
+    }
+
+    @Test
+    void checksTheValuesOfTheGivenProperties() {
+        JSONObject fragment = root().put("planCostShares", object("pcs", "membercostshare").put("copay", "five"));
+
+        assertEquals("#/planCostShares/copay", pointer(fragment));
+    }
+
+    @Test
+    void tagsUnknownObjectTypesAsUnknown() {
+        assertThrows(ValidationException.class, () -> validator.validateFragment(object("x", "nothing")));
+
+        assertEquals(1.0, meterRegistry.timer("plan.schema.validation",
+                "objectType", "unknown-fragment", "outcome", "invalid").count());
+    }
+
+    @Test
+    void rejectsPlansThatUseAnObjectIdTwice() {
+        JSONObject plan = plan();
+        assertDoesNotThrow(() -> validator.validateJson(plan));
+
+        plan.getJSONObject("planCostShares").put("objectId", "p");
+
+        assertThrows(ValidationException.class, () -> validator.validateJson(plan));
+    }
+
+    private String pointer(JSONObject fragment) {
+        return assertThrows(ValidationException.class, () -> validator.validateFragment(fragment)).getPointerToViolation();
+    }
+
+    private static JSONObject root() {
+        return object("p", "plan");
+    }
+
+    private static JSONObject object(String objectId, String objectType) {
+        return new JSONObject().put("objectId", objectId).put("objectType", objectType);
+    }
+
+    private static JSONObject plan() {
+        JSONObject service = object("ps", "planservice")
+                .put("linkedService", object("s", "service").put("_org", "example.com").put("name", "Dental"))
+                .put("planserviceCostShares", costShare("pscs"))
+                .put("_org", "example.com");
+        return root()
+                .put("planCostShares", costShare("pcs"))
+                .put("linkedPlanServices", new JSONArray().put(service))
+                .put("_org", "example.com")
+                .put("planType", "inNetwork")
+                .put("creationDate", "12-12-2017");
+    }
+
+    private static JSONObject costShare(String objectId) {
+        return object(objectId, "membercostshare")
+                .put("deductible", 2000)
+                .put("_org", "example.com")
+                .put("copay", 23);
+    }
+}